@@ -0,0 +1,155 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.tools.generic.CollectionTool;
+import org.apache.velocity.tools.generic.DateTool;
+import org.apache.velocity.tools.generic.EscapeTool;
+import org.apache.velocity.tools.generic.LinkTool;
+import org.apache.velocity.tools.generic.XmlTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Benchmarks of the most used generic tools methods.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericToolsBenchmark
+{
+    private static final String HTML = "<p class=\"intro\">Fish &amp; chips are \"cheap\" & <b>tasty</b></p>";
+
+    private static final String XML =
+        "<catalog>" +
+        "<book id=\"1\" lang=\"en\"><title>Walden</title><price>12.5</price></book>" +
+        "<book id=\"2\" lang=\"fr\"><title>Candide</title><price>8</price></book>" +
+        "<book id=\"3\" lang=\"en\"><title>Moby Dick</title><price>15</price></book>" +
+        "</catalog>";
+
+    /**
+     * Sortable bean.
+     */
+    public static class Item
+    {
+        private final String name;
+        private final int rank;
+
+        public Item(String name, int rank)
+        {
+            this.name = name;
+            this.rank = rank;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getRank()
+        {
+            return rank;
+        }
+    }
+
+    private EscapeTool escape;
+    private DateTool date;
+    private CollectionTool collection;
+    private XmlTool xml;
+    private LinkTool link;
+    private Date now;
+    private List<Item> items;
+
+    @Setup
+    public void setup()
+    {
+        escape = new EscapeTool();
+        escape.configure(new HashMap<String,Object>());
+        date = new DateTool();
+        date.configure(new HashMap<String,Object>());
+        collection = new CollectionTool();
+        collection.configure(new HashMap<String,Object>());
+        xml = new XmlTool();
+        xml.configure(new HashMap<String,Object>());
+        xml = xml.parse(XML);
+        link = new LinkTool();
+        link.configure(new HashMap<String,Object>());
+        link = link.scheme("http").host("www.example.com").path("/app/");
+        now = new Date(1500000000000L);
+        items = new ArrayList<Item>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100; ++i)
+        {
+            items.add(new Item("item" + random.nextInt(1000), random.nextInt(100)));
+        }
+    }
+
+    @Benchmark
+    public String escapeHtml()
+    {
+        return escape.html(HTML);
+    }
+
+    @Benchmark
+    public String dateFormat()
+    {
+        return date.format("yyyy-MM-dd HH:mm:ss", now);
+    }
+
+    @Benchmark
+    public Collection collectionSort()
+    {
+        return collection.sort(items, "name");
+    }
+
+    @Benchmark
+    public XmlTool xmlFind()
+    {
+        return xml.find("//book[@lang='en']/title");
+    }
+
+    @Benchmark
+    public String linkChaining()
+    {
+        return link.relative("product.vm").param("id", 42).param("ref", "home page").anchor("details").toString();
+    }
+}
@@ -0,0 +1,344 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Minimal servlet API objects for benchmarks.</p>
+ * <p>They are dynamic proxies backed by plain maps rather than mocking
+ * framework objects, so that they do not weigh on the measured figures.
+ * Methods without explicit support return <code>null</code>, <code>false</code>
+ * or zero. Webapp resources are read from the <code>/webapp</code> classpath folder.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+public class ServletMocks
+{
+    /**
+     * Writer discarding its output.
+     */
+    public static final PrintWriter NULL_WRITER = new PrintWriter(new Writer()
+    {
+        @Override
+        public void write(char[] buf, int off, int len) {}
+
+        @Override
+        public void write(String str, int off, int len) {}
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    });
+
+    private static abstract class Handler implements InvocationHandler
+    {
+        protected final Map<String,Object> attributes = new ConcurrentHashMap<String,Object>();
+
+        protected abstract Object handle(String name, Object[] args) throws Exception;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if ("getAttribute".equals(name))
+            {
+                return attributes.get((String)args[0]);
+            }
+            else if ("setAttribute".equals(name))
+            {
+                if (args[1] == null)
+                {
+                    attributes.remove((String)args[0]);
+                }
+                else
+                {
+                    attributes.put((String)args[0], args[1]);
+                }
+                return null;
+            }
+            else if ("removeAttribute".equals(name))
+            {
+                attributes.remove((String)args[0]);
+                return null;
+            }
+            else if ("getAttributeNames".equals(name))
+            {
+                return Collections.enumeration(attributes.keySet());
+            }
+            else if ("hashCode".equals(name))
+            {
+                return System.identityHashCode(proxy);
+            }
+            else if ("equals".equals(name))
+            {
+                return proxy == args[0];
+            }
+            else if ("toString".equals(name))
+            {
+                return getClass().getSimpleName();
+            }
+            Object ret = handle(name, args);
+            if (ret == null)
+            {
+                Class type = method.getReturnType();
+                if (type == boolean.class)
+                {
+                    ret = Boolean.FALSE;
+                }
+                else if (type == int.class)
+                {
+                    ret = 0;
+                }
+                else if (type == long.class)
+                {
+                    ret = 0L;
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Creates a servlet context.
+     * @param initParams context init parameters
+     * @return servlet context
+     */
+    public static ServletContext createServletContext(final Map<String,String> initParams)
+    {
+        return (ServletContext)Proxy.newProxyInstance(ServletMocks.class.getClassLoader(),
+            new Class[] { ServletContext.class },
+            new Handler()
+            {
+                @Override
+                protected Object handle(String name, Object[] args) throws Exception
+                {
+                    if ("getInitParameter".equals(name))
+                    {
+                        return initParams.get((String)args[0]);
+                    }
+                    else if ("getInitParameterNames".equals(name))
+                    {
+                        return Collections.enumeration(initParams.keySet());
+                    }
+                    else if ("getResource".equals(name))
+                    {
+                        return ServletMocks.class.getResource("/webapp" + args[0]);
+                    }
+                    else if ("getResourceAsStream".equals(name))
+                    {
+                        return ServletMocks.class.getResourceAsStream("/webapp" + args[0]);
+                    }
+                    else if ("getServletContextName".equals(name) || "getContextPath".equals(name))
+                    {
+                        return "";
+                    }
+                    else if ("getMajorVersion".equals(name))
+                    {
+                        return 3;
+                    }
+                    else if ("getMinorVersion".equals(name))
+                    {
+                        return 1;
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Creates a servlet configuration.
+     * @param servletContext servlet context
+     * @param initParams servlet init parameters
+     * @return servlet configuration
+     */
+    public static ServletConfig createServletConfig(final ServletContext servletContext, final Map<String,String> initParams)
+    {
+        return (ServletConfig)Proxy.newProxyInstance(ServletMocks.class.getClassLoader(),
+            new Class[] { ServletConfig.class },
+            new Handler()
+            {
+                @Override
+                protected Object handle(String name, Object[] args) throws Exception
+                {
+                    if ("getServletContext".equals(name))
+                    {
+                        return servletContext;
+                    }
+                    else if ("getInitParameter".equals(name))
+                    {
+                        return initParams.get((String)args[0]);
+                    }
+                    else if ("getInitParameterNames".equals(name))
+                    {
+                        return Collections.enumeration(initParams.keySet());
+                    }
+                    else if ("getServletName".equals(name))
+                    {
+                        return "velocity";
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Creates a GET request.
+     * @param servletContext servlet context
+     * @param servletPath requested path
+     * @param parameters request parameters
+     * @return servlet request
+     */
+    public static HttpServletRequest createRequest(final ServletContext servletContext, final String servletPath, final Map<String,String[]> parameters)
+    {
+        return (HttpServletRequest)Proxy.newProxyInstance(ServletMocks.class.getClassLoader(),
+            new Class[] { HttpServletRequest.class },
+            new Handler()
+            {
+                @Override
+                protected Object handle(String name, Object[] args) throws Exception
+                {
+                    if ("getServletContext".equals(name))
+                    {
+                        return servletContext;
+                    }
+                    else if ("getServletPath".equals(name) || "getRequestURI".equals(name))
+                    {
+                        return servletPath;
+                    }
+                    else if ("getRequestURL".equals(name))
+                    {
+                        return new StringBuffer("http://localhost").append(servletPath);
+                    }
+                    else if ("getContextPath".equals(name))
+                    {
+                        return "";
+                    }
+                    else if ("getMethod".equals(name))
+                    {
+                        return "GET";
+                    }
+                    else if ("getScheme".equals(name))
+                    {
+                        return "http";
+                    }
+                    else if ("getServerName".equals(name))
+                    {
+                        return "localhost";
+                    }
+                    else if ("getServerPort".equals(name))
+                    {
+                        return 80;
+                    }
+                    else if ("getCharacterEncoding".equals(name))
+                    {
+                        return "UTF-8";
+                    }
+                    else if ("getLocale".equals(name))
+                    {
+                        return Locale.US;
+                    }
+                    else if ("getParameter".equals(name))
+                    {
+                        String[] values = parameters.get((String)args[0]);
+                        return values == null || values.length == 0 ? null : values[0];
+                    }
+                    else if ("getParameterValues".equals(name))
+                    {
+                        return parameters.get((String)args[0]);
+                    }
+                    else if ("getParameterMap".equals(name))
+                    {
+                        return parameters;
+                    }
+                    else if ("getParameterNames".equals(name))
+                    {
+                        return Collections.enumeration(parameters.keySet());
+                    }
+                    else if ("getHeaderNames".equals(name) || "getHeaders".equals(name))
+                    {
+                        return Collections.emptyEnumeration();
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Creates a response whose output is discarded.
+     * @return servlet response
+     */
+    public static HttpServletResponse createResponse()
+    {
+        return (HttpServletResponse)Proxy.newProxyInstance(ServletMocks.class.getClassLoader(),
+            new Class[] { HttpServletResponse.class },
+            new Handler()
+            {
+                @Override
+                protected Object handle(String name, Object[] args) throws Exception
+                {
+                    if ("getWriter".equals(name))
+                    {
+                        return NULL_WRITER;
+                    }
+                    else if ("getCharacterEncoding".equals(name))
+                    {
+                        return "UTF-8";
+                    }
+                    else if ("encodeURL".equals(name) || "encodeRedirectURL".equals(name))
+                    {
+                        return args[0];
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Convenience method building a parameters map.
+     * @param keysAndValues alternating keys and values
+     * @return parameters map
+     */
+    public static Map<String,String[]> parameters(String... keysAndValues)
+    {
+        Map<String,String[]> parameters = new HashMap<String,String[]>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2)
+        {
+            parameters.put(keysAndValues[i], new String[] { keysAndValues[i + 1] });
+        }
+        return parameters;
+    }
+}
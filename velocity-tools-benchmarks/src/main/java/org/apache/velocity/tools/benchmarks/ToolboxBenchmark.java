@@ -0,0 +1,99 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.tools.ToolContext;
+import org.apache.velocity.tools.ToolManager;
+import org.apache.velocity.tools.Toolbox;
+import org.apache.velocity.tools.config.ConfigurationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>Benchmarks of tools lookup, through a {@link Toolbox} and through a {@link ToolContext},
+ * for already instantiated tools and for the first lookup of a request-scoped tool.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolboxBenchmark
+{
+    private ToolManager manager;
+    private Toolbox toolbox;
+    private ToolContext context;
+
+    @Setup
+    public void setup()
+    {
+        manager = new ToolManager(false, false);
+        manager.configure(ConfigurationUtils.getGenericTools());
+        toolbox = manager.getToolboxFactory().createToolbox(org.apache.velocity.tools.Scope.REQUEST);
+        toolbox.get("link");
+        context = manager.createContext();
+        context.get("esc");
+        context.get("link");
+    }
+
+    @Benchmark
+    public Object toolboxGet()
+    {
+        return toolbox.get("link");
+    }
+
+    @Benchmark
+    public Object toolboxGetNew()
+    {
+        return manager.getToolboxFactory().createToolbox(org.apache.velocity.tools.Scope.REQUEST).get("link");
+    }
+
+    @Benchmark
+    public void toolContextGet(Blackhole blackhole)
+    {
+        blackhole.consume(context.get("esc"));
+        blackhole.consume(context.get("link"));
+        blackhole.consume(context.get("notATool"));
+    }
+
+    @Benchmark
+    public void toolContextGetNew(Blackhole blackhole)
+    {
+        ToolContext ctx = manager.createContext();
+        blackhole.consume(ctx.get("esc"));
+        blackhole.consume(ctx.get("link"));
+        blackhole.consume(ctx.get("notATool"));
+    }
+}
@@ -0,0 +1,84 @@
+package org.apache.velocity.tools.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+import org.apache.velocity.tools.view.VelocityView;
+import org.apache.velocity.tools.view.VelocityViewServlet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>End-to-end rendering benchmarks: a {@link VelocityViewServlet} configured with the
+ * default tools renders webapp templates for requests built by {@link ServletMocks}.
+ * The response output is discarded.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VelocityViewServletBenchmark
+{
+    private ServletContext servletContext;
+    private VelocityViewServlet servlet;
+    private Map<String,String[]> parameters;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Map<String,String> contextParams = new HashMap<String,String>();
+        contextParams.put(VelocityView.LOAD_DEFAULTS_KEY, "true");
+        servletContext = ServletMocks.createServletContext(contextParams);
+        ServletConfig config = ServletMocks.createServletConfig(servletContext, new HashMap<String,String>());
+        servlet = new VelocityViewServlet();
+        servlet.init(config);
+        parameters = ServletMocks.parameters("id", "42", "q", "fish & chips");
+    }
+
+    @Benchmark
+    public void renderStatic() throws Exception
+    {
+        servlet.service(ServletMocks.createRequest(servletContext, "/static.vm", parameters), ServletMocks.createResponse());
+    }
+
+    @Benchmark
+    public void renderTools() throws Exception
+    {
+        servlet.service(ServletMocks.createRequest(servletContext, "/tools.vm", parameters), ServletMocks.createResponse());
+    }
+}
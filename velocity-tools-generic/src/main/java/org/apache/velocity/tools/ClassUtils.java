@@ -21,6 +21,9 @@ package org.apache.velocity.tools;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -30,6 +33,7 @@ import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -37,8 +41,8 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import org.apache.velocity.util.ArrayIterator;
 import org.apache.velocity.util.EnumerationIterator;
 
 /**
@@ -434,6 +438,8 @@ public class ClassUtils
     /**
      * Retrieves an Iterator from or creates and Iterator for the specified object.
      * This method is almost entirely copied from Engine's UberspectImpl class.
+     * The way of iterating over instances of a given class is resolved only
+     * once per class, and primitive arrays are iterated without reflection.
      * @param obj the target obj
      * @return an iterator over the content of obj, or null if not found
      * @throws NoSuchMethodException if no iterator() method
@@ -443,44 +449,337 @@ public class ClassUtils
     public static Iterator getIterator(Object obj)
         throws NoSuchMethodException, IllegalAccessException, InvocationTargetException
     {
-        if (obj.getClass().isArray())
+        return iteratorStrategies.get(obj.getClass()).iterator(obj);
+    }
+
+    /**
+     * Way of getting an iterator for instances of a given class.
+     */
+    private static abstract class IteratorStrategy
+    {
+        abstract Iterator iterator(Object obj)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException;
+    }
+
+    /**
+     * Per-class cache of iterator strategies, so that the iterability of
+     * a class, and its <code>iterator()</code> method if any, are only resolved once.
+     */
+    private static final ClassValue<IteratorStrategy> iteratorStrategies = new ClassValue<IteratorStrategy>()
+    {
+        @Override
+        protected IteratorStrategy computeValue(Class<?> clazz)
         {
-            return new ArrayIterator(obj);
+            if (clazz.isArray())
+            {
+                return getArrayStrategy(clazz.getComponentType());
+            }
+            else if (Collection.class.isAssignableFrom(clazz))
+            {
+                return new IteratorStrategy()
+                {
+                    Iterator iterator(Object obj)
+                    {
+                        return ((Collection)obj).iterator();
+                    }
+                };
+            }
+            else if (Map.class.isAssignableFrom(clazz))
+            {
+                return new IteratorStrategy()
+                {
+                    Iterator iterator(Object obj)
+                    {
+                        return ((Map)obj).values().iterator();
+                    }
+                };
+            }
+            else if (Iterator.class.isAssignableFrom(clazz))
+            {
+                return new IteratorStrategy()
+                {
+                    Iterator iterator(Object obj)
+                    {
+                        return (Iterator)obj;
+                    }
+                };
+            }
+            else if (Iterable.class.isAssignableFrom(clazz))
+            {
+                return new IteratorStrategy()
+                {
+                    Iterator iterator(Object obj)
+                    {
+                        return ((Iterable)obj).iterator();
+                    }
+                };
+            }
+            else if (Enumeration.class.isAssignableFrom(clazz))
+            {
+                return new IteratorStrategy()
+                {
+                    Iterator iterator(Object obj)
+                    {
+                        return new EnumerationIterator((Enumeration)obj);
+                    }
+                };
+            }
+            else
+            {
+                // look for an iterator() method to support
+                // any user tools/DTOs that want to work in
+                // foreach w/o implementing the Collection interface
+                return getMethodStrategy(clazz);
+            }
         }
-        else if (obj instanceof Collection)
+    };
+
+    private static IteratorStrategy getMethodStrategy(final Class clazz)
+    {
+        final Method iter;
+        try
         {
-            return ((Collection) obj).iterator();
+            iter = clazz.getMethod("iterator");
         }
-        else if (obj instanceof Map)
+        catch (final NoSuchMethodException nsme)
         {
-            return ((Map) obj).values().iterator();
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj) throws NoSuchMethodException
+                {
+                    throw new NoSuchMethodException(nsme.getMessage());
+                }
+            };
         }
-        else if (obj instanceof Iterator)
+        if (!Iterator.class.isAssignableFrom(iter.getReturnType()))
         {
-            return ((Iterator) obj);
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    return null;
+                }
+            };
         }
-        else if (obj instanceof Iterable)
+        MethodHandle handle = null;
+        try
         {
-            return ((Iterable)obj).iterator();
+            handle = MethodHandles.publicLookup().unreflect(iter)
+                .asType(MethodType.methodType(Iterator.class, Object.class));
         }
-        else if (obj instanceof Enumeration)
+        catch (IllegalAccessException iae)
         {
-            return new EnumerationIterator((Enumeration) obj);
+            // declaring class is not public, stick to reflection
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                    throws IllegalAccessException, InvocationTargetException
+                {
+                    return (Iterator)iter.invoke(obj);
+                }
+            };
         }
-        else
+        final MethodHandle getter = handle;
+        return new IteratorStrategy()
         {
-            // look for an iterator() method to support
-            // any user tools/DTOs that want to work in
-            // foreach w/o implementing the Collection interface
-            Method iter = obj.getClass().getMethod("iterator");
-            if (Iterator.class.isAssignableFrom(iter.getReturnType()))
+            Iterator iterator(Object obj) throws InvocationTargetException
             {
-                return (Iterator)iter.invoke(obj);
+                try
+                {
+                    return (Iterator)getter.invokeExact(obj);
+                }
+                catch (Throwable t)
+                {
+                    throw new InvocationTargetException(t);
+                }
             }
-            else
+        };
+    }
+
+    private static IteratorStrategy getArrayStrategy(Class componentType)
+    {
+        if (!componentType.isPrimitive())
+        {
+            return new IteratorStrategy()
             {
-                return null;
+                Iterator iterator(Object obj)
+                {
+                    return Arrays.asList((Object[])obj).iterator();
+                }
+            };
+        }
+        else if (componentType == int.class)
+        {
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    final int[] array = (int[])obj;
+                    return new PrimitiveArrayIterator(array.length)
+                    {
+                        Object get(int index)
+                        {
+                            return array[index];
+                        }
+                    };
+                }
+            };
+        }
+        else if (componentType == long.class)
+        {
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    final long[] array = (long[])obj;
+                    return new PrimitiveArrayIterator(array.length)
+                    {
+                        Object get(int index)
+                        {
+                            return array[index];
+                        }
+                    };
+                }
+            };
+        }
+        else if (componentType == double.class)
+        {
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    final double[] array = (double[])obj;
+                    return new PrimitiveArrayIterator(array.length)
+                    {
+                        Object get(int index)
+                        {
+                            return array[index];
+                        }
+                    };
+                }
+            };
+        }
+        else if (componentType == float.class)
+        {
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    final float[] array = (float[])obj;
+                    return new PrimitiveArrayIterator(array.length)
+                    {
+                        Object get(int index)
+                        {
+                            return array[index];
+                        }
+                    };
+                }
+            };
+        }
+        else if (componentType == boolean.class)
+        {
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    final boolean[] array = (boolean[])obj;
+                    return new PrimitiveArrayIterator(array.length)
+                    {
+                        Object get(int index)
+                        {
+                            return array[index];
+                        }
+                    };
+                }
+            };
+        }
+        else if (componentType == char.class)
+        {
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    final char[] array = (char[])obj;
+                    return new PrimitiveArrayIterator(array.length)
+                    {
+                        Object get(int index)
+                        {
+                            return array[index];
+                        }
+                    };
+                }
+            };
+        }
+        else if (componentType == short.class)
+        {
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    final short[] array = (short[])obj;
+                    return new PrimitiveArrayIterator(array.length)
+                    {
+                        Object get(int index)
+                        {
+                            return array[index];
+                        }
+                    };
+                }
+            };
+        }
+        else
+        {
+            return new IteratorStrategy()
+            {
+                Iterator iterator(Object obj)
+                {
+                    final byte[] array = (byte[])obj;
+                    return new PrimitiveArrayIterator(array.length)
+                    {
+                        Object get(int index)
+                        {
+                            return array[index];
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * Base class for primitive array iterators, which read
+     * their elements directly rather than through
+     * {@link java.lang.reflect.Array}.
+     */
+    private static abstract class PrimitiveArrayIterator implements Iterator
+    {
+        private final int length;
+        private int index = 0;
+
+        PrimitiveArrayIterator(int length)
+        {
+            this.length = length;
+        }
+
+        abstract Object get(int index);
+
+        public boolean hasNext()
+        {
+            return index < length;
+        }
+
+        public Object next()
+        {
+            if (index >= length)
+            {
+                throw new NoSuchElementException();
             }
+            return get(index++);
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException("cannot remove elements from an array");
         }
     }
 
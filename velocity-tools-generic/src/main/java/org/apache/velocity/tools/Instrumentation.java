@@ -0,0 +1,185 @@
+package org.apache.velocity.tools;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Optional instrumentation of tools creation and lookup and of templates rendering.</p>
+ * <p>Instrumentation is enabled as soon as a {@link InstrumentationListener} is registered.
+ * When it is disabled, instrumented code only pays for a volatile read.</p>
+ * <p>Setting the <code>org.apache.velocity.tools.instrumentation</code> system property to
+ * <code>true</code> registers the {@link InstrumentationStatistics} listener, which keeps
+ * counters and rendering time histograms, and publishes them as a JMX MBean.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+public final class Instrumentation
+{
+    /**
+     * System property enabling the statistics MBean.
+     */
+    public static final String SYSTEM_PROPERTY_KEY = "org.apache.velocity.tools.instrumentation";
+
+    private static final Logger LOG = LoggerFactory.getLogger(Instrumentation.class);
+
+    private static final InstrumentationListener[] NO_LISTENERS = new InstrumentationListener[0];
+
+    /* copy-on-write array, so that events dispatch does not need any lock */
+    private static volatile InstrumentationListener[] listeners = NO_LISTENERS;
+
+    static
+    {
+        try
+        {
+            for (InstrumentationListener listener : ServiceLoader.load(InstrumentationListener.class))
+            {
+                addListener(listener);
+            }
+        }
+        catch (ServiceConfigurationError sce)
+        {
+            LOG.error("could not load instrumentation listeners", sce);
+        }
+        if (Boolean.getBoolean(SYSTEM_PROPERTY_KEY))
+        {
+            InstrumentationStatistics.getInstance().register();
+            addListener(InstrumentationStatistics.getInstance());
+        }
+    }
+
+    private Instrumentation() {}
+
+    /**
+     * Registers a listener.
+     * @param listener instrumentation listener
+     */
+    public static synchronized void addListener(InstrumentationListener listener)
+    {
+        InstrumentationListener[] current = listeners;
+        for (InstrumentationListener registered : current)
+        {
+            if (registered == listener)
+            {
+                return;
+            }
+        }
+        InstrumentationListener[] updated = new InstrumentationListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Unregisters a listener.
+     * @param listener instrumentation listener
+     */
+    public static synchronized void removeListener(InstrumentationListener listener)
+    {
+        InstrumentationListener[] current = listeners;
+        for (int i = 0; i < current.length; ++i)
+        {
+            if (current[i] == listener)
+            {
+                InstrumentationListener[] updated = new InstrumentationListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks whether instrumentation is enabled, that is whether any listener is registered.
+     * Instrumented code should check it before taking any measure.
+     * @return whether instrumentation is enabled
+     */
+    public static boolean isEnabled()
+    {
+        return listeners.length > 0;
+    }
+
+    /**
+     * Dispatches a tool creation event.
+     * @param key tool key
+     * @param toolClass tool class
+     * @param nanos creation and configuration time, in nanoseconds
+     */
+    public static void toolCreated(String key, Class toolClass, long nanos)
+    {
+        for (InstrumentationListener listener : listeners)
+        {
+            try
+            {
+                listener.toolCreated(key, toolClass, nanos);
+            }
+            catch (RuntimeException re)
+            {
+                LOG.error("instrumentation listener failure", re);
+            }
+        }
+    }
+
+    /**
+     * Dispatches a tool lookup event.
+     * @param key tool key
+     * @param hit whether the tool instance was found in the toolbox cache
+     */
+    public static void toolLookup(String key, boolean hit)
+    {
+        for (InstrumentationListener listener : listeners)
+        {
+            try
+            {
+                listener.toolLookup(key, hit);
+            }
+            catch (RuntimeException re)
+            {
+                LOG.error("instrumentation listener failure", re);
+            }
+        }
+    }
+
+    /**
+     * Dispatches a template rendering event.
+     * @param template template name
+     * @param nanos rendering time, in nanoseconds
+     */
+    public static void templateRendered(String template, long nanos)
+    {
+        for (InstrumentationListener listener : listeners)
+        {
+            try
+            {
+                listener.templateRendered(template, nanos);
+            }
+            catch (RuntimeException re)
+            {
+                LOG.error("instrumentation listener failure", re);
+            }
+        }
+    }
+}
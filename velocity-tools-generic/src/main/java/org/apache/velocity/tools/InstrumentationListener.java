@@ -0,0 +1,56 @@
+package org.apache.velocity.tools;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * <p>Instrumentation events listener.</p>
+ * <p>Listeners are registered with {@link Instrumentation#addListener(InstrumentationListener)},
+ * or declared as services in a <code>META-INF/services/org.apache.velocity.tools.InstrumentationListener</code>
+ * resource, in which case they are instantiated and registered when the {@link Instrumentation}
+ * class is loaded. Listeners are called synchronously from the rendering threads, so they
+ * should be fast and thread-safe.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+public interface InstrumentationListener
+{
+    /**
+     * Called after a tool instance has been created and configured.
+     * @param key tool key
+     * @param toolClass tool class
+     * @param nanos creation and configuration time, in nanoseconds
+     */
+    void toolCreated(String key, Class toolClass, long nanos);
+
+    /**
+     * Called when a configured tool is looked up in a {@link Toolbox}.
+     * @param key tool key
+     * @param hit whether the tool instance was found in the toolbox cache
+     */
+    void toolLookup(String key, boolean hit);
+
+    /**
+     * Called after a template has been merged.
+     * @param template template name
+     * @param nanos rendering time, in nanoseconds
+     */
+    void templateRendered(String template, long nanos);
+}
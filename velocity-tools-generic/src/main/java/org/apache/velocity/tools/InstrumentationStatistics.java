@@ -0,0 +1,324 @@
+package org.apache.velocity.tools;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Instrumentation listener keeping tools creation counts and times, toolbox cache
+ * hits and misses and templates rendering time histograms. It can be published as the
+ * <code>org.apache.velocity.tools:type=Instrumentation</code> JMX MBean.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+public class InstrumentationStatistics implements InstrumentationListener, InstrumentationStatisticsMXBean
+{
+    /**
+     * JMX object name.
+     */
+    public static final String OBJECT_NAME = "org.apache.velocity.tools:type=Instrumentation";
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstrumentationStatistics.class);
+
+    private static final long[] HISTOGRAM_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000 };
+
+    private static final InstrumentationStatistics INSTANCE = new InstrumentationStatistics();
+
+    /**
+     * Tool creation statistics.
+     */
+    public static class ToolStatistics
+    {
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+
+        @ConstructorProperties({ "count", "totalMicros", "maxMicros" })
+        public ToolStatistics(long count, long totalMicros, long maxMicros)
+        {
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        /**
+         * @return number of created instances
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return cumulated creation time, in microseconds
+         */
+        public long getTotalMicros()
+        {
+            return totalMicros;
+        }
+
+        /**
+         * @return maximum creation time, in microseconds
+         */
+        public long getMaxMicros()
+        {
+            return maxMicros;
+        }
+    }
+
+    /**
+     * Template rendering statistics.
+     */
+    public static class TemplateStatistics
+    {
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long[] histogram;
+
+        @ConstructorProperties({ "count", "totalMicros", "maxMicros", "histogram" })
+        public TemplateStatistics(long count, long totalMicros, long maxMicros, long[] histogram)
+        {
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            this.histogram = histogram;
+        }
+
+        /**
+         * @return number of renderings
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return cumulated rendering time, in microseconds
+         */
+        public long getTotalMicros()
+        {
+            return totalMicros;
+        }
+
+        /**
+         * @return maximum rendering time, in microseconds
+         */
+        public long getMaxMicros()
+        {
+            return maxMicros;
+        }
+
+        /**
+         * @return number of renderings per histogram bucket
+         * @see InstrumentationStatisticsMXBean#getHistogramBounds()
+         */
+        public long[] getHistogram()
+        {
+            return histogram.clone();
+        }
+    }
+
+    private static final LongBinaryOperator MAX = new LongBinaryOperator()
+    {
+        @Override
+        public long applyAsLong(long left, long right)
+        {
+            return Math.max(left, right);
+        }
+    };
+
+    private static class Counter
+    {
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+        void add(long nanos)
+        {
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+    }
+
+    private static class Histogram extends Counter
+    {
+        final AtomicLongArray buckets = new AtomicLongArray(HISTOGRAM_BOUNDS.length + 1);
+
+        @Override
+        void add(long nanos)
+        {
+            super.add(nanos);
+            long millis = nanos / 1000000L;
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BOUNDS.length && millis >= HISTOGRAM_BOUNDS[bucket])
+            {
+                ++bucket;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+    }
+
+    private final ConcurrentMap<String,Counter> tools = new ConcurrentHashMap<String,Counter>();
+    private final ConcurrentMap<String,Histogram> templates = new ConcurrentHashMap<String,Histogram>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @return the statistics instance registered by the
+     * <code>org.apache.velocity.tools.instrumentation</code> system property
+     */
+    public static InstrumentationStatistics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Publishes these statistics in the platform MBean server,
+     * under the {@link #OBJECT_NAME} name.
+     */
+    public void register()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+            {
+                server.registerMBean(this, name);
+            }
+        }
+        catch (JMException jme)
+        {
+            LOG.error("could not register instrumentation MBean", jme);
+        }
+    }
+
+    @Override
+    public void toolCreated(String key, Class toolClass, long nanos)
+    {
+        Counter counter = tools.get(key);
+        if (counter == null)
+        {
+            Counter created = new Counter();
+            counter = tools.putIfAbsent(key, created);
+            if (counter == null)
+            {
+                counter = created;
+            }
+        }
+        counter.add(nanos);
+    }
+
+    @Override
+    public void toolLookup(String key, boolean hit)
+    {
+        (hit ? hits : misses).increment();
+    }
+
+    @Override
+    public void templateRendered(String template, long nanos)
+    {
+        Histogram histogram = templates.get(template);
+        if (histogram == null)
+        {
+            Histogram created = new Histogram();
+            histogram = templates.putIfAbsent(template, created);
+            if (histogram == null)
+            {
+                histogram = created;
+            }
+        }
+        histogram.add(nanos);
+    }
+
+    @Override
+    public Map<String,ToolStatistics> getTools()
+    {
+        Map<String,ToolStatistics> result = new TreeMap<String,ToolStatistics>();
+        for (Map.Entry<String,Counter> entry : tools.entrySet())
+        {
+            Counter counter = entry.getValue();
+            result.put(entry.getKey(), new ToolStatistics(counter.count.sum(), counter.total.sum() / 1000L, counter.max.get() / 1000L));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String,TemplateStatistics> getTemplates()
+    {
+        Map<String,TemplateStatistics> result = new TreeMap<String,TemplateStatistics>();
+        for (Map.Entry<String,Histogram> entry : templates.entrySet())
+        {
+            Histogram histogram = entry.getValue();
+            long[] buckets = new long[histogram.buckets.length()];
+            for (int i = 0; i < buckets.length; ++i)
+            {
+                buckets[i] = histogram.buckets.get(i);
+            }
+            result.put(entry.getKey(), new TemplateStatistics(histogram.count.sum(), histogram.total.sum() / 1000L, histogram.max.get() / 1000L, buckets));
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getHistogramBounds()
+    {
+        return HISTOGRAM_BOUNDS.clone();
+    }
+
+    @Override
+    public long getCacheHits()
+    {
+        return hits.sum();
+    }
+
+    @Override
+    public long getCacheMisses()
+    {
+        return misses.sum();
+    }
+
+    @Override
+    public void reset()
+    {
+        tools.clear();
+        templates.clear();
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -0,0 +1,62 @@
+package org.apache.velocity.tools;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Map;
+
+/**
+ * <p>JMX management interface of {@link InstrumentationStatistics}.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+public interface InstrumentationStatisticsMXBean
+{
+    /**
+     * @return tools creation statistics, by tool key
+     */
+    Map<String,InstrumentationStatistics.ToolStatistics> getTools();
+
+    /**
+     * @return templates rendering statistics, by template name
+     */
+    Map<String,InstrumentationStatistics.TemplateStatistics> getTemplates();
+
+    /**
+     * @return upper bounds, in milliseconds, of the rendering time histogram buckets;
+     * the last bucket gathers all the longer renderings
+     */
+    long[] getHistogramBounds();
+
+    /**
+     * @return number of tool lookups satisfied by the toolbox caches
+     */
+    long getCacheHits();
+
+    /**
+     * @return number of tool lookups which required a tool instantiation
+     */
+    long getCacheMisses();
+
+    /**
+     * Resets all statistics.
+     */
+    void reset();
+}
@@ -49,6 +49,9 @@ public class ToolContext implements Context
     public static final String CATCH_EXCEPTIONS_KEY = "catchExceptions";
 
     private List<Toolbox> toolboxes = new ArrayList<Toolbox>();
+    // toolboxes whose tools can be used by several threads
+    private List<Toolbox> sharedToolboxes = new ArrayList<Toolbox>();
+    private List<Runnable> cleanups = null;
     // this is meant solely for tool setup,
     // values in here are not part of the Context
     private Map<String,Object> toolProps = new HashMap<String,Object>(12);
@@ -115,6 +118,78 @@ public class ToolContext implements Context
         toolboxes.add(toolbox);
     }
 
+    /**
+     * Adds a toolbox whose tools can safely be used by several threads at once,
+     * like the application toolbox. Its tools are also made available to the
+     * contexts returned by {@link #createSharedContext()}.
+     * @param toolbox shared toolbox
+     * @since VelocityTools 3.1
+     */
+    public void addSharedToolbox(Toolbox toolbox)
+    {
+        addToolbox(toolbox);
+        sharedToolboxes.add(toolbox);
+    }
+
+    /**
+     * Creates a context holding only the tools of the shared toolboxes of this
+     * context, with the same tool properties, meant for rendering on other threads.
+     * @return new context
+     * @since VelocityTools 3.1
+     */
+    public ToolContext createSharedContext()
+    {
+        // make sure lazily added toolboxes are there
+        getToolboxes();
+        ToolContext shared = new ToolContext(getToolProperties());
+        shared.putToolProperty(CONTEXT_KEY, shared);
+        shared.setUserCanOverwriteTools(userOverwrite);
+        for (Toolbox toolbox : sharedToolboxes)
+        {
+            shared.addSharedToolbox(toolbox);
+        }
+        return shared;
+    }
+
+    /**
+     * Registers a callback to be run once the template merged with this context
+     * has been rendered, typically by tools which have resources to release.
+     * @param cleanup cleanup callback
+     * @see #cleanup()
+     * @since VelocityTools 3.1
+     */
+    public synchronized void addCleanup(Runnable cleanup)
+    {
+        if (cleanups == null)
+        {
+            cleanups = new ArrayList<Runnable>();
+        }
+        cleanups.add(cleanup);
+    }
+
+    /**
+     * Runs and forgets the registered cleanup callbacks. The
+     * {@link org.apache.velocity.tools.view.VelocityView} calls it after each merge;
+     * other callers should call it once rendering is done.
+     * @since VelocityTools 3.1
+     */
+    public void cleanup()
+    {
+        List<Runnable> pending;
+        synchronized (this)
+        {
+            pending = cleanups;
+            cleanups = null;
+        }
+        if (pending != null)
+        {
+            for (Runnable cleanup : pending)
+            {
+                cleanup.run();
+            }
+        }
+    }
+
     /**
      * Returns a {@link Map} of all tools available to this
      * context. NOTE: this is not a cheap operation as it will
@@ -317,6 +317,8 @@ public class ToolInfo implements java.io.Serializable
      */
     public Object create(Map<String,Object> dynamicProperties)
     {
+        long start = Instrumentation.isEnabled() ? System.nanoTime() : 0L;
+
         /* Get the tool instance */
         Object tool = newInstance();
 
@@ -335,6 +337,11 @@ public class ToolInfo implements java.io.Serializable
 
         // perform the actual configuration of the new tool
         configure(tool, props);
+
+        if (start != 0L)
+        {
+            Instrumentation.toolCreated(key, clazz, System.nanoTime() - start);
+        }
         return tool;
     }
 
@@ -19,9 +19,14 @@ package org.apache.velocity.tools;
  * under the License.
  */
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.beanutils.PropertyUtils;
+
 import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.tools.config.ConfigurationSnapshot;
 import org.apache.velocity.tools.config.ConfigurationUtils;
 import org.apache.velocity.tools.config.FactoryConfiguration;
 
@@ -88,12 +93,22 @@ public class ToolManager
     }
 
     /**
-     * Autoconfiguration using the configuration file potentially found
-     * in the <code>org.apache.velocity.tools</code> system property.
+     * Autoconfiguration using the configuration snapshot potentially found
+     * in the <code>org.apache.velocity.tools.snapshot</code> system property,
+     * or else the configuration file potentially found in the
+     * <code>org.apache.velocity.tools</code> system property.
      * @param includeDefaults whether to include default tools
      */
     public void autoConfigure(boolean includeDefaults)
     {
+        // a valid precompiled snapshot spares the configuration lookup and parsing
+        ConfigurationSnapshot snapshot = ConfigurationUtils.findSnapshotFromSystemProperty();
+        if (snapshot != null)
+        {
+            configure(snapshot);
+            return;
+        }
+
         // look for any specified via system property
         FactoryConfiguration sys = ConfigurationUtils.findFromSystemProperty();
         if (sys != null)
@@ -113,6 +128,18 @@ public class ToolManager
         this.factory.configure(config);
     }
 
+    /**
+     * Configure the tool manager with this precompiled toolbox factory config
+     * @param snapshot toolbox factory config snapshot
+     * @since VelocityTools 3.1
+     */
+    public void configure(ConfigurationSnapshot snapshot)
+    {
+        // clear the cached application toolbox
+        this.application = null;
+        this.factory.configure(snapshot);
+    }
+
     /**
      * Configure the tool manager with the provided configuration file
      * @param path path to configuration file
@@ -288,7 +315,7 @@ public class ToolManager
     {
         if (hasApplicationTools())
         {
-            context.addToolbox(getApplicationToolbox());
+            context.addSharedToolbox(getApplicationToolbox());
         }
         if (hasRequestTools())
         {
@@ -358,4 +385,52 @@ public class ToolManager
         return this.application;
     }
 
+    /**
+     * Warms tools up, so that the first requests do not pay for it: application
+     * tools are instantiated, while for tools of other scopes, configuration methods
+     * and writable properties are resolved.
+     * @return number of warmed up tools
+     * @since VelocityTools 3.1
+     */
+    public int warmUpTools()
+    {
+        int count = 0;
+        ToolContext context = null;
+        for (String scope : Scope.values())
+        {
+            if (!hasTools(scope))
+            {
+                continue;
+            }
+            List<ToolInfo> infos = new ArrayList<ToolInfo>(this.factory.getToolInfo(scope).values());
+            for (ToolInfo info : infos)
+            {
+                try
+                {
+                    if (Scope.APPLICATION.equals(scope))
+                    {
+                        if (context == null)
+                        {
+                            context = createContext();
+                        }
+                        context.get(info.getKey());
+                    }
+                    else
+                    {
+                        info.hasConfigure();
+                        if (!info.isSkipSetters())
+                        {
+                            PropertyUtils.getPropertyDescriptors(info.getToolClass());
+                        }
+                    }
+                    ++count;
+                }
+                catch (RuntimeException re)
+                {
+                    getLog().error("could not warm up tool {}", info.getKey(), re);
+                }
+            }
+        }
+        return count;
+    }
 }
@@ -114,9 +114,18 @@ public class Toolbox implements java.io.Serializable
                 if (tool == null)
                 {
                     tool = getFromInfo(key, path, context);
+                    if (tool != null && Instrumentation.isEnabled())
+                    {
+                        Instrumentation.toolLookup(key, false);
+                    }
+                    return tool;
                 }
             }
         }
+        if (Instrumentation.isEnabled())
+        {
+            Instrumentation.toolLookup(key, true);
+        }
         return tool;
     }
 
@@ -21,6 +21,7 @@ package org.apache.velocity.tools;
 
 import java.util.HashMap;
 import java.util.Map;
+import org.apache.velocity.tools.config.ConfigurationSnapshot;
 import org.apache.velocity.tools.config.Data;
 import org.apache.velocity.tools.config.FactoryConfiguration;
 import org.apache.velocity.tools.Scope;
@@ -134,6 +135,46 @@ public class ToolboxFactory
 
 
 
+    /**
+     * Configures this factory from a precompiled configuration, following the same
+     * precedence rules as {@link #configure(FactoryConfiguration)}. The snapshot
+     * has already been validated when it was built, so no tool class is instantiated here.
+     * @param snapshot precompiled configuration
+     * @since VelocityTools 3.1
+     */
+    public synchronized void configure(ConfigurationSnapshot snapshot)
+    {
+        for (Map.Entry<String,Object> datum : snapshot.getData().entrySet())
+        {
+            putData(datum.getKey(), datum.getValue());
+        }
+
+        for (String scope : snapshot.getScopes())
+        {
+            for (ToolInfo info : snapshot.getTools(scope))
+            {
+                addToolInfo(scope, info);
+            }
+
+            Map<String,Object> newToolboxProps = snapshot.getToolboxProperties(scope);
+            putProperties(scope, newToolboxProps);
+            for (ToolInfo info : getToolInfo(scope).values())
+            {
+                info.addProperties(newToolboxProps);
+            }
+        }
+
+        Map<String,Object> newGlobalProps = snapshot.getProperties();
+        putGlobalProperties(newGlobalProps);
+        for (Map<String,ToolInfo> toolbox : scopedToolInfo.values())
+        {
+            for (ToolInfo info : toolbox.values())
+            {
+                info.addProperties(newGlobalProps);
+            }
+        }
+    }
+
     protected synchronized Object putData(String key, Object value)
     {
         if (data == null)
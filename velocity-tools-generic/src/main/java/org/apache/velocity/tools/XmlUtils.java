@@ -22,6 +22,7 @@ import org.apache.velocity.runtime.RuntimeConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -42,6 +43,10 @@ import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -254,6 +259,20 @@ public final class XmlUtils
         builderPool.addLast(new SoftReference<DocumentBuilder>(builder));
     }
 
+    /**
+     * StAX input factory, configured with the same restrictions as the DOM builder factory
+     */
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    static
+    {
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
     private XmlUtils() {}
 
     /**
@@ -384,6 +403,97 @@ public final class XmlUtils
         return parse(new StringReader(xml));
     }
 
+    /**
+     * Creates a StAX stream reader on the given xml input.
+     * @param xml xml stream reader
+     * @return StAX stream reader
+     * @throws XMLStreamException if the reader cannot be created
+     * @since 3.1
+     */
+    public static XMLStreamReader createStreamReader(Reader xml) throws XMLStreamException
+    {
+        return inputFactory.createXMLStreamReader(xml);
+    }
+
+    /**
+     * Reads the element on which the given StAX reader is positioned into a new, detached, document.
+     * Comments and processing instructions are skipped. When this method returns, the reader is positioned
+     * on the end tag of the element.
+     * @param reader StAX stream reader, positioned on a start tag
+     * @return read element
+     * @throws XMLStreamException if the stream cannot be read
+     * @since 3.1
+     */
+    public static Element readElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        Document document;
+        DocumentBuilder builder = getDocumentBuilder();
+        try
+        {
+            document = builder.newDocument();
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+        Node current = document;
+        int depth = 0;
+        int event = reader.getEventType();
+        while (true)
+        {
+            switch (event)
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                {
+                    Element element = document.createElementNS(emptyToNull(reader.getNamespaceURI()), qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                    for (int i = 0; i < reader.getNamespaceCount(); ++i)
+                    {
+                        String prefix = emptyToNull(reader.getNamespacePrefix(i));
+                        element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, prefix == null ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ':' + prefix, reader.getNamespaceURI(i));
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); ++i)
+                    {
+                        element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+                    }
+                    current.appendChild(element);
+                    current = element;
+                    ++depth;
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT:
+                    current = current.getParentNode();
+                    --depth;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    current.appendChild(document.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.CDATA:
+                    current.appendChild(document.createCDATASection(reader.getText()));
+                    break;
+                default:
+                    break;
+            }
+            if (depth == 0)
+            {
+                break;
+            }
+            event = reader.next();
+        }
+        return document.getDocumentElement();
+    }
+
+    private static String emptyToNull(String str)
+    {
+        return str == null || str.length() == 0 ? null : str;
+    }
+
+    private static String qualifiedName(String prefix, String localName)
+    {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ':' + localName;
+    }
+
     public static NodeList search(String xpath, Node context)
     {
         NodeList ret = null;
@@ -0,0 +1,524 @@
+package org.apache.velocity.tools.config;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.velocity.tools.ClassUtils;
+import org.apache.velocity.tools.ToolInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Precompiled form of a {@link FactoryConfiguration}.</p>
+ * <p>A snapshot is built once, typically at build time, from a validated
+ * configuration: it holds the converted data values, the validated settings
+ * of the tools of each toolbox, and the toolbox and factory properties.
+ * It is then serialized, and a {@link org.apache.velocity.tools.ToolboxFactory}
+ * can be configured from it without searching the classpath, parsing
+ * configuration files or instantiating tools for validation.</p>
+ * <p>The snapshot also keeps a checksum of each configuration file it was built
+ * from, keyed by the path under which the file is looked up at runtime, so
+ * that a stale snapshot can be detected and ignored in favor of the
+ * configuration files themselves.</p>
+ * <p>Snapshots can be generated with this class's <code>main</code> method:</p>
+ * <pre>
+ * java org.apache.velocity.tools.config.ConfigurationSnapshot [-defaults] [-clean] &lt;snapshot&gt; &lt;config&gt;...
+ * </pre>
+ * <p>where each <code>config</code> is either a file system or classpath location,
+ * or a <code>path=location</code> pair when the configuration file will be found at
+ * a different path at runtime, as in <code>/WEB-INF/tools.xml=src/main/webapp/WEB-INF/tools.xml</code>.
+ * The <code>-defaults</code> flag includes the default tools first, and the <code>-clean</code>
+ * flag removes invalid tools and data like {@link ConfigurationCleaner} does.</p>
+ * <p>Tools are kept as plain class names and settings, and a new {@link ToolInfo}
+ * is built for each of them whenever the snapshot is applied. When reading a snapshot,
+ * Java deserialization is restricted to the snapshot classes themselves and to strings,
+ * boxed primitives, <code>java.math</code> numbers, dates, locales and common
+ * <code>java.util</code> collections, so data and property values must be of those types.
+ * The tools and factories classes are then loaded by name, like when reading
+ * a configuration file.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+public class ConfigurationSnapshot implements Serializable
+{
+    private static final long serialVersionUID = 4619836023510743563L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationSnapshot.class);
+
+    /**
+     * Classes accepted when reading a snapshot, besides primitive types
+     */
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+        ConfigurationSnapshot.class.getName(), ToolEntry.class.getName(),
+        "java.lang.String", "java.lang.Boolean", "java.lang.Character", "java.lang.Number",
+        "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+        "java.lang.Float", "java.lang.Double",
+        "java.math.BigDecimal", "java.math.BigInteger",
+        "java.util.ArrayList", "java.util.Arrays$ArrayList", "java.util.LinkedList",
+        "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+        "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet",
+        "java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList",
+        "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableSet",
+        "java.util.Collections$UnmodifiableMap", "java.util.Collections$EmptyList",
+        "java.util.Collections$EmptySet", "java.util.Collections$EmptyMap",
+        "java.util.Date", "java.util.Locale"));
+
+    private final Map<String,Object> data = new LinkedHashMap<String,Object>();
+    private final Map<String,List<ToolEntry>> tools = new LinkedHashMap<String,List<ToolEntry>>();
+    private final Map<String,Map<String,Object>> toolboxProperties = new LinkedHashMap<String,Map<String,Object>>();
+    private final Map<String,Object> properties = new LinkedHashMap<String,Object>();
+    private final List<String> sources = new ArrayList<String>();
+    private final Map<String,Long> inputs = new LinkedHashMap<String,Long>();
+
+    /**
+     * Validates and compiles the specified configuration.
+     * @param config factory configuration
+     * @throws ConfigurationException if the configuration is invalid
+     */
+    public ConfigurationSnapshot(FactoryConfiguration config)
+    {
+        config.validate();
+        for (Data datum : config.getData())
+        {
+            data.put(datum.getKey(), datum.getConvertedValue());
+        }
+        for (ToolboxConfiguration toolbox : config.getToolboxes())
+        {
+            List<ToolEntry> entries = new ArrayList<ToolEntry>();
+            for (ToolConfiguration tool : toolbox.getTools())
+            {
+                entries.add(new ToolEntry(tool));
+            }
+            tools.put(toolbox.getScope(), entries);
+            toolboxProperties.put(toolbox.getScope(), toolbox.getPropertyMap());
+        }
+        properties.putAll(config.getPropertyMap());
+        sources.addAll(config.getSources());
+    }
+
+    /**
+     * Records a configuration file this snapshot depends upon.
+     * @param path path under which the file is found at runtime
+     * @param url current location of the file
+     * @throws IOException if the file cannot be read
+     */
+    public void addInput(String path, URL url) throws IOException
+    {
+        inputs.put(path, checksum(url));
+    }
+
+    /**
+     * @return the paths of the configuration files this snapshot depends upon
+     */
+    public Set<String> getInputs()
+    {
+        return Collections.unmodifiableSet(inputs.keySet());
+    }
+
+    /**
+     * @return the sources of the original configuration
+     */
+    public List<String> getSources()
+    {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * @return converted data values
+     */
+    public Map<String,Object> getData()
+    {
+        return Collections.unmodifiableMap(data);
+    }
+
+    /**
+     * @return scopes of the configured toolboxes
+     */
+    public Set<String> getScopes()
+    {
+        return Collections.unmodifiableSet(tools.keySet());
+    }
+
+    /**
+     * @param scope toolbox scope
+     * @return new tools infos of this toolbox
+     */
+    public Collection<ToolInfo> getTools(String scope)
+    {
+        List<ToolEntry> entries = tools.get(scope);
+        if (entries == null)
+        {
+            return Collections.<ToolInfo>emptyList();
+        }
+        List<ToolInfo> infos = new ArrayList<ToolInfo>(entries.size());
+        for (ToolEntry entry : entries)
+        {
+            infos.add(entry.createInfo());
+        }
+        return infos;
+    }
+
+    /**
+     * @param scope toolbox scope
+     * @return properties of this toolbox
+     */
+    public Map<String,Object> getToolboxProperties(String scope)
+    {
+        Map<String,Object> props = toolboxProperties.get(scope);
+        return props == null ? Collections.<String,Object>emptyMap() : Collections.unmodifiableMap(props);
+    }
+
+    /**
+     * @return factory-level properties
+     */
+    public Map<String,Object> getProperties()
+    {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * Checks one input file against its current content.
+     * @param path input path
+     * @param url current location of the input, or <code>null</code> if not found
+     * @return whether this input file is missing or has changed
+     */
+    public boolean isStale(String path, URL url)
+    {
+        Long expected = inputs.get(path);
+        if (expected == null || url == null)
+        {
+            return true;
+        }
+        try
+        {
+            return expected.longValue() != checksum(url);
+        }
+        catch (IOException ioe)
+        {
+            return true;
+        }
+    }
+
+    /**
+     * Checks all input files, looking them up in the file system
+     * and then in the classpath.
+     * @return whether any input file is missing or has changed
+     */
+    public boolean isStale()
+    {
+        for (String path : inputs.keySet())
+        {
+            if (isStale(path, locate(path)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serializes this snapshot.
+     * @param out output stream
+     * @throws IOException if writing fails or if some data
+     * or property value is not serializable
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(this);
+        oos.flush();
+    }
+
+    /**
+     * Reads a snapshot. Tools classes are resolved using
+     * {@link ClassUtils#getClass(String)}.
+     * @param url snapshot location
+     * @return the snapshot, or <code>null</code> if it cannot be read
+     */
+    public static ConfigurationSnapshot read(URL url)
+    {
+        InputStream in = null;
+        try
+        {
+            in = url.openStream();
+            return (ConfigurationSnapshot)new SnapshotInputStream(in).readObject();
+        }
+        catch (Exception e)
+        {
+            LOG.warn("could not read configuration snapshot at {}", url, e);
+            return null;
+        }
+        finally
+        {
+            if (in != null)
+            {
+                try
+                {
+                    in.close();
+                }
+                catch (IOException ioe) {}
+            }
+        }
+    }
+
+    /**
+     * Validated tool settings, holding the tool and factory classes by name.
+     */
+    private static final class ToolEntry implements Serializable
+    {
+        private static final long serialVersionUID = 6218455329617105317L;
+
+        private final String key;
+        private final String classname;
+        private final String factoryClassname;
+        private final String restrictTo;
+        private final Boolean skipSetters;
+        private final Map<String,Object> properties;
+        private transient Class toolClass;
+        private transient Class factory;
+
+        private ToolEntry(ToolConfiguration tool)
+        {
+            ToolInfo info = tool.createInfo();
+            key = info.getKey();
+            toolClass = info.getToolClass();
+            classname = toolClass.getName();
+            factory = info.getFactory();
+            factoryClassname = factory == null ? null : factory.getName();
+            restrictTo = tool.getRestrictTo();
+            skipSetters = tool.getSkipSetters();
+            properties = new LinkedHashMap<String,Object>(info.getProperties());
+        }
+
+        private ToolInfo createInfo()
+        {
+            ToolInfo info = new ToolInfo(key, toolClass, factory);
+            info.restrictTo(restrictTo);
+            if (skipSetters != null)
+            {
+                info.setSkipSetters(skipSetters);
+            }
+            info.addProperties(properties);
+            return info;
+        }
+
+        /**
+         * Loads the tool and factory classes by name.
+         */
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            toolClass = ClassUtils.getClass(classname);
+            factory = factoryClassname == null ? null : ClassUtils.getClass(factoryClassname);
+        }
+    }
+
+    /**
+     * Object input stream only accepting the classes a snapshot can contain.
+     */
+    private static class SnapshotInputStream extends ObjectInputStream
+    {
+        private SnapshotInputStream(InputStream in) throws IOException
+        {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+        {
+            /* check the name before loading anything */
+            String name = desc.getName();
+            int dims = 0;
+            while (name.length() > dims && name.charAt(dims) == '[')
+            {
+                ++dims;
+            }
+            if (dims > 0)
+            {
+                name = name.length() == dims + 1 ? "" : name.charAt(dims) == 'L' && name.endsWith(";") ? name.substring(dims + 1, name.length() - 1) : null;
+            }
+            if (name == null || name.length() > 0 && !ALLOWED_CLASSES.contains(name))
+            {
+                throw new InvalidClassException(desc.getName(), "class not allowed in configuration snapshots");
+            }
+            try
+            {
+                return ClassUtils.getClass(desc.getName());
+            }
+            catch (ClassNotFoundException cnfe)
+            {
+                return super.resolveClass(desc);
+            }
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException
+        {
+            throw new InvalidClassException("proxy classes not allowed in configuration snapshots");
+        }
+    }
+
+    /**
+     * Finds a file either in the file system or in the classpath.
+     * @param path file path
+     * @return file URL, or <code>null</code> if not found
+     */
+    protected static URL locate(String path)
+    {
+        try
+        {
+            File file = new File(path);
+            if (file.exists())
+            {
+                return file.toURI().toURL();
+            }
+        }
+        catch (IOException ioe)
+        {
+            return null;
+        }
+        return ClassUtils.getResource(path, ConfigurationSnapshot.class);
+    }
+
+    private static long checksum(URL url) throws IOException
+    {
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+        InputStream in = connection.getInputStream();
+        try
+        {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                crc.update(buffer, 0, read);
+            }
+            return crc.getValue();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Snapshot generator.
+     * @param args <code>[-defaults] [-clean] &lt;snapshot&gt; &lt;config&gt;...</code>
+     * @throws IOException if a configuration file cannot be read or the snapshot cannot be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        boolean defaults = false;
+        boolean clean = false;
+        int arg = 0;
+        for (; arg < args.length && args[arg].startsWith("-"); ++arg)
+        {
+            if ("-defaults".equals(args[arg]))
+            {
+                defaults = true;
+            }
+            else if ("-clean".equals(args[arg]))
+            {
+                clean = true;
+            }
+            else
+            {
+                throw new IllegalArgumentException("unknown option: " + args[arg]);
+            }
+        }
+        if (arg == args.length)
+        {
+            throw new IllegalArgumentException("usage: ConfigurationSnapshot [-defaults] [-clean] <snapshot> <config>...");
+        }
+        File output = new File(args[arg++]);
+
+        FactoryConfiguration config = new FactoryConfiguration("ConfigurationSnapshot.main()");
+        Map<String,URL> found = new LinkedHashMap<String,URL>();
+        if (defaults)
+        {
+            config.addConfiguration(ConfigurationUtils.getDefaultTools());
+            for (String path : new String[] { ConfigurationUtils.GENERIC_DEFAULTS_PATH, ConfigurationUtils.VIEW_DEFAULTS_PATH })
+            {
+                URL url = locate(path);
+                if (url != null)
+                {
+                    found.put(path, url);
+                }
+            }
+        }
+        for (; arg < args.length; ++arg)
+        {
+            int eq = args[arg].indexOf('=');
+            String path = eq == -1 ? args[arg] : args[arg].substring(0, eq);
+            String location = eq == -1 ? args[arg] : args[arg].substring(eq + 1);
+            URL url = locate(location);
+            FactoryConfiguration read = url == null ? null : ConfigurationUtils.read(url);
+            if (read == null)
+            {
+                throw new IOException("could not read configuration at " + location);
+            }
+            config.addConfiguration(read);
+            found.put(path, url);
+        }
+        if (clean)
+        {
+            ConfigurationUtils.clean(config);
+        }
+
+        ConfigurationSnapshot snapshot = new ConfigurationSnapshot(config);
+        for (Map.Entry<String,URL> input : found.entrySet())
+        {
+            snapshot.addInput(input.getKey(), input.getValue());
+        }
+        OutputStream out = new FileOutputStream(output);
+        try
+        {
+            snapshot.write(out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -53,6 +53,14 @@ public class ConfigurationUtils
 
     public static final String SYSTEM_PROPERTY_KEY =
         "org.apache.velocity.tools";
+
+    /**
+     * System property giving the location of a precompiled
+     * {@link ConfigurationSnapshot} ("org.apache.velocity.tools.snapshot").
+     * @since VelocityTools 3.1
+     */
+    public static final String SNAPSHOT_SYSTEM_PROPERTY_KEY =
+        "org.apache.velocity.tools.snapshot";
     public static final ConfigurationUtils INSTANCE = new ConfigurationUtils();
 
     private ConfigurationUtils() {}
@@ -140,6 +148,39 @@ public class ConfigurationUtils
         return load(path);
     }
 
+    /**
+     * Returns the {@link ConfigurationSnapshot} found at the file system or
+     * classpath location specified in the "org.apache.velocity.tools.snapshot"
+     * system property (if any). If no such property has been set, or if the
+     * snapshot cannot be read or is stale, {@code null} will be returned.
+     * @return system property defined {@link ConfigurationSnapshot}
+     * @since VelocityTools 3.1
+     */
+    public static ConfigurationSnapshot findSnapshotFromSystemProperty()
+    {
+        String path = System.getProperty(SNAPSHOT_SYSTEM_PROPERTY_KEY);
+        if (path == null || path.length() == 0)
+        {
+            return null;
+        }
+        URL url = ConfigurationSnapshot.locate(path);
+        if (url == null)
+        {
+            return null;
+        }
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.read(url);
+        if (snapshot == null)
+        {
+            return null;
+        }
+        if (snapshot.isStale())
+        {
+            LoggerFactory.getLogger(ConfigurationUtils.class).warn("configuration snapshot at {} is stale, ignoring it", path);
+            return null;
+        }
+        return snapshot;
+    }
+
     /**
      * Returns a new, standard {@link ToolboxFactory} configured
      * with the results of {@link #findFromSystemProperty()}.
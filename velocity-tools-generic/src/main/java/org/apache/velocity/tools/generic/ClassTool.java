@@ -59,6 +59,11 @@ import org.apache.velocity.tools.config.ValidScope;
  * <p>
  * If no Class to be inspected is specified, the default is java.lang.Object.
  * </p>
+ * <p>
+ * Inspection results are computed only once per inspected class, and shared
+ * by all ClassTool instances. They are kept alongside the inspected class
+ * itself, so that they don't prevent its class loader from being collected.
+ * </p>
  *
  * @author Nathan Bubna
  * @since VelocityTools 2.0
@@ -79,6 +84,18 @@ public class ClassTool extends SafeConfig
 
     private boolean showDeprecated = false;
 
+    /**
+     * Application-wide cache of inspection results.
+     */
+    private static final ClassValue<Inspection> inspections = new ClassValue<Inspection>()
+    {
+        @Override
+        protected Inspection computeValue(Class<?> type)
+        {
+            return new Inspection(type);
+        }
+    };
+
     /**
      * Creates an instance with target type of {@link Object}.
      */
@@ -153,6 +170,9 @@ public class ClassTool extends SafeConfig
             throw new IllegalArgumentException("target type is null or invalid");
         }
         this.type = type;
+        this.methods = null;
+        this.constructors = null;
+        this.fields = null;
     }
 
     /**
@@ -405,19 +425,7 @@ public class ClassTool extends SafeConfig
     {
         if (methods == null)
         {
-            Method[] declared = getType().getDeclaredMethods();
-            List<MethodSub> subs = new ArrayList<MethodSub>(declared.length);
-            for (Method method : declared)
-            {
-                MethodSub sub = new MethodSub(method);
-                if ((!isSafeMode() || sub.isPublic()) &&
-                    (showDeprecated || !sub.isDeprecated()))
-                {
-                    subs.add(sub);
-                }
-            }
-            Collections.sort(subs);
-            methods = Collections.unmodifiableList(subs);
+            methods = getInspection().getMethods(isSafeMode(), showDeprecated);
         }
         return methods;
     }
@@ -434,19 +442,7 @@ public class ClassTool extends SafeConfig
     {
         if (constructors == null)
         {
-            Constructor[] declared = getType().getDeclaredConstructors();
-            List<ConstructorSub> subs = new ArrayList<ConstructorSub>(declared.length);
-            for (Constructor constructor : declared)
-            {
-                ConstructorSub sub = new ConstructorSub(constructor);
-                if ((!isSafeMode() || sub.isPublic()) &&
-                    (showDeprecated || !sub.isDeprecated()))
-                {
-                    subs.add(sub);
-                }
-            }
-            Collections.sort(subs);
-            constructors = Collections.unmodifiableList(subs);
+            constructors = getInspection().getConstructors(isSafeMode(), showDeprecated);
         }
         return constructors;
     }
@@ -463,19 +459,7 @@ public class ClassTool extends SafeConfig
     {
         if (fields == null)
         {
-            Field[] declared = getType().getDeclaredFields();
-            List<FieldSub> subs = new ArrayList<FieldSub>(declared.length);
-            for (Field field : declared)
-            {
-                FieldSub sub = new FieldSub(field);
-                if ((!isSafeMode() || sub.isPublic()) &&
-                    (showDeprecated || !sub.isDeprecated()))
-                {
-                    subs.add(sub);
-                }
-            }
-            Collections.sort(subs);
-            fields = Collections.unmodifiableList(subs);
+            fields = getInspection().getFields(isSafeMode(), showDeprecated);
         }
         return fields;
     }
@@ -484,55 +468,21 @@ public class ClassTool extends SafeConfig
      * Returns a {@link Set} of all {@link Class}es that are
      * part of the signatures (i.e. parameters or return types)
      * of the inspected Class's methods, constructors and fields.
+     * The returned set is a copy, which callers may modify.
      * @return referenced classes set
      */
     public Set<Class> getTypes()
     {
-        Set<Class> types = new HashSet<Class>();
-        for (MethodSub method : getMethods())
-        {
-            if (!isSafeMode() || method.isPublic())
-            {
-                if (!method.isVoid())
-                {
-                    addType(types, method.getReturns());
-                }
-                for (Class type : method.getParameters())
-                {
-                    addType(types, type);
-                }
-            }
-        }
-        for (ConstructorSub constructor : getConstructors())
-        {
-            if (!isSafeMode() || constructor.isPublic())
-            {
-                for (Class type : constructor.getParameters())
-                {
-                    addType(types, type);
-                }
-            }
-        }
-        for (FieldSub field : getFields())
-        {
-            if (!isSafeMode() || field.isPublic())
-            {
-                addType(types, field.getType());
-            }
-        }
-        return types;
+        return new HashSet<Class>(getInspection().getTypes(isSafeMode(), showDeprecated));
     }
 
-    private void addType(Set<Class> types, Class type)
+    /**
+     * Returns the shared inspection results for the inspected Class.
+     * @return inspection results
+     */
+    private Inspection getInspection()
     {
-        if (type.isArray())
-        {
-            type = type.getComponentType();
-        }
-        if (!type.isPrimitive())
-        {
-            types.add(type);
-        }
+        return inspections.get(getType());
     }
 
     /**
@@ -541,7 +491,7 @@ public class ClassTool extends SafeConfig
      */
     public List<Annotation> getAnnotations()
     {
-        return Arrays.asList(getType().getAnnotations());
+        return new ArrayList<Annotation>(getInspection().getAnnotations());
     }
 
     /**
@@ -1190,4 +1140,170 @@ public class ClassTool extends SafeConfig
         }
     }
 
+
+
+    /**
+     * Immutable inspection results for a given Class. Lists of
+     * members are sorted once, and their filtered views are
+     * computed lazily for each combination of the safe mode
+     * and showDeprecated settings.
+     */
+    private static final class Inspection
+    {
+        private final Class type;
+        private volatile List<MethodSub> methods;
+        private volatile List<ConstructorSub> constructors;
+        private volatile List<FieldSub> fields;
+        private volatile List<Annotation> annotations;
+        private final List[] methodViews = new List[4];
+        private final List[] constructorViews = new List[4];
+        private final List[] fieldViews = new List[4];
+        private final Set[] typeViews = new Set[4];
+
+        private Inspection(Class type)
+        {
+            this.type = type;
+        }
+
+        private static int view(boolean safeMode, boolean showDeprecated)
+        {
+            return (safeMode ? 1 : 0) | (showDeprecated ? 2 : 0);
+        }
+
+        private static <T extends Sub> List<T> filter(List<T> subs, boolean safeMode, boolean showDeprecated)
+        {
+            List<T> filtered = new ArrayList<T>(subs.size());
+            for (T sub : subs)
+            {
+                if ((!safeMode || sub.isPublic()) &&
+                    (showDeprecated || !sub.isDeprecated()))
+                {
+                    filtered.add(sub);
+                }
+            }
+            return Collections.unmodifiableList(filtered);
+        }
+
+        private List<MethodSub> getMethods(boolean safeMode, boolean showDeprecated)
+        {
+            int view = view(safeMode, showDeprecated);
+            List<MethodSub> subs = methodViews[view];
+            if (subs == null)
+            {
+                if (methods == null)
+                {
+                    Method[] declared = type.getDeclaredMethods();
+                    List<MethodSub> all = new ArrayList<MethodSub>(declared.length);
+                    for (Method method : declared)
+                    {
+                        all.add(new MethodSub(method));
+                    }
+                    Collections.sort(all);
+                    methods = all;
+                }
+                methodViews[view] = subs = filter(methods, safeMode, showDeprecated);
+            }
+            return subs;
+        }
+
+        private List<ConstructorSub> getConstructors(boolean safeMode, boolean showDeprecated)
+        {
+            int view = view(safeMode, showDeprecated);
+            List<ConstructorSub> subs = constructorViews[view];
+            if (subs == null)
+            {
+                if (constructors == null)
+                {
+                    Constructor[] declared = type.getDeclaredConstructors();
+                    List<ConstructorSub> all = new ArrayList<ConstructorSub>(declared.length);
+                    for (Constructor constructor : declared)
+                    {
+                        all.add(new ConstructorSub(constructor));
+                    }
+                    Collections.sort(all);
+                    constructors = all;
+                }
+                constructorViews[view] = subs = filter(constructors, safeMode, showDeprecated);
+            }
+            return subs;
+        }
+
+        private List<FieldSub> getFields(boolean safeMode, boolean showDeprecated)
+        {
+            int view = view(safeMode, showDeprecated);
+            List<FieldSub> subs = fieldViews[view];
+            if (subs == null)
+            {
+                if (fields == null)
+                {
+                    Field[] declared = type.getDeclaredFields();
+                    List<FieldSub> all = new ArrayList<FieldSub>(declared.length);
+                    for (Field field : declared)
+                    {
+                        all.add(new FieldSub(field));
+                    }
+                    Collections.sort(all);
+                    fields = all;
+                }
+                fieldViews[view] = subs = filter(fields, safeMode, showDeprecated);
+            }
+            return subs;
+        }
+
+        private List<Annotation> getAnnotations()
+        {
+            if (annotations == null)
+            {
+                annotations = Collections.unmodifiableList(Arrays.asList(type.getAnnotations()));
+            }
+            return annotations;
+        }
+
+        private Set<Class> getTypes(boolean safeMode, boolean showDeprecated)
+        {
+            int view = view(safeMode, showDeprecated);
+            Set<Class> types = typeViews[view];
+            if (types == null)
+            {
+                types = new HashSet<Class>();
+                for (MethodSub method : getMethods(safeMode, showDeprecated))
+                {
+                    if (!method.isVoid())
+                    {
+                        addType(types, method.getReturns());
+                    }
+                    for (Class param : method.getParameters())
+                    {
+                        addType(types, param);
+                    }
+                }
+                for (ConstructorSub constructor : getConstructors(safeMode, showDeprecated))
+                {
+                    for (Class param : constructor.getParameters())
+                    {
+                        addType(types, param);
+                    }
+                }
+                for (FieldSub field : getFields(safeMode, showDeprecated))
+                {
+                    addType(types, field.getType());
+                }
+                typeViews[view] = types = Collections.unmodifiableSet(types);
+            }
+            return types;
+        }
+
+        private static void addType(Set<Class> types, Class type)
+        {
+            if (type.isArray())
+            {
+                type = type.getComponentType();
+            }
+            if (!type.isPrimitive())
+            {
+                types.add(type);
+            }
+        }
+    }
+
 }
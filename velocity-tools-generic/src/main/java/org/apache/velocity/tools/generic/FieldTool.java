@@ -19,15 +19,22 @@ package org.apache.velocity.tools.generic;
  * under the License.    
  */
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.config.ValidScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * <p>
@@ -68,7 +75,15 @@ import org.apache.velocity.tools.config.ValidScope;
  * It seems that anything else is too dangerous.  This is for convenient access
  * to 'constants'.  If you have fields that aren't <code>static</code>,
  * handle them by explicitly placing them into the context or writing a getter
- * method.
+ * method.</p>
+ *
+ * <p>
+ * The public static fields of a given class are only inspected once per
+ * application: the resulting field table, holding the values of final fields
+ * and a method handle getter for the other ones, is cached alongside the
+ * class itself, so it doesn't prevent the class loader from being collected.
+ * Field paths like <code>$field.get('java.lang.Integer.MAX_VALUE')</code>
+ * are also resolved only once per tool instance.</p>
  *
  * @author <a href="mailto:geirm@optonline.net">Geir Magnusson Jr.</a>
  * @author Nathan Bubna
@@ -96,6 +111,35 @@ public class FieldTool extends SafeConfig
     protected HashMap storage = new HashMap();
     protected boolean storeDynamicLookups = true;
 
+    private static final Logger LOG = LoggerFactory.getLogger(FieldTool.class);
+
+    /**
+     * Application-wide cache of public static field tables.
+     */
+    private static final ClassValue<Map<String,Object>> fieldTables = new ClassValue<Map<String,Object>>()
+    {
+        @Override
+        protected Map<String,Object> computeValue(Class<?> clazz)
+        {
+            Map<String,Object> table = new HashMap<String,Object>();
+            for (Field field : clazz.getFields())
+            {
+                int mod = field.getModifiers();
+                if (Modifier.isStatic(mod) && Modifier.isPublic(mod))
+                {
+                    StaticField accessor = new StaticField(field);
+                    table.put(field.getName(), Modifier.isFinal(mod) ? accessor.getValue() : accessor);
+                }
+            }
+            return Collections.unmodifiableMap(table);
+        }
+    };
+
+    /**
+     * Classes of the field paths looked up by this instance.
+     */
+    private final Map<String,Class> pathClasses = new ConcurrentHashMap<String,Class>();
+
     protected void configure(ValueParser values)
     {
         // retrieve any classnames to be inspected and inspect them
@@ -133,7 +177,11 @@ public class FieldTool extends SafeConfig
     {
         Object o = storage.get(name);
         // if it was not a final field, get the current value
-        if (o instanceof MutableField)
+        if (o instanceof StaticField)
+        {
+            return ((StaticField)o).getValue();
+        }
+        else if (o instanceof MutableField)
         {
             return ((MutableField)o).getValue();
         }
@@ -141,16 +189,46 @@ public class FieldTool extends SafeConfig
         else if (o == null && name.indexOf('.') > 0)
         {
             // treat the name as a full fieldpath
+            return getPath(name);
+        }
+        // otherwise, we should have stored the value directly
+        return o;
+    }
+
+    /**
+     * Returns the value of the field at the specified path,
+     * like <code>java.lang.Integer.MAX_VALUE</code>.
+     * @param fieldPath full field path
+     * @return field value, or {@code null} if not found
+     */
+    protected Object getPath(String fieldPath)
+    {
+        int lastDot = fieldPath.lastIndexOf('.');
+        String classname = fieldPath.substring(0, lastDot);
+        String fieldname = fieldPath.substring(lastDot + 1);
+        Class clazz = pathClasses.get(classname);
+        if (clazz == null)
+        {
             try
             {
-                return ClassUtils.getFieldValue(name);
+                clazz = ClassUtils.getClass(classname);
             }
             catch (Exception e)
             {
-                getLog().debug("Unable to retrieve value of field at {}", name, e);
+                getLog().debug("Unable to retrieve value of field at {}", fieldPath, e);
+                return null;
             }
+            pathClasses.put(classname, clazz);
+        }
+        Object o = inspect(clazz).get(fieldname);
+        if (o instanceof StaticField)
+        {
+            return ((StaticField)o).getValue();
+        }
+        else if (o instanceof MutableField)
+        {
+            return ((MutableField)o).getValue();
         }
-        // otherwise, we should have stored the value directly
         return o;
     }
 
@@ -220,41 +298,16 @@ public class FieldTool extends SafeConfig
 
     /**
      * Looks for all public, static fields in the specified class and
-     * stores their value (if final) or else a {@link MutableField} for
+     * stores their value (if final) or else a {@link StaticField} accessor
      * in a {@link Map} under the fields' names.  This will never return
      * null, only an empty Map if there are no public static fields.
+     * The returned map is shared application-wide and cannot be modified.
      * @param clazz target class
      * @return fields map
      */
     protected Map<String,Object> inspect(Class clazz)
     {
-        Map<String,Object> results = new HashMap<String,Object>();
-        for(Field field : clazz.getFields())
-        {
-            // ignore anything non-public or non-static
-            int mod = field.getModifiers();
-            if (Modifier.isStatic(mod) && Modifier.isPublic(mod))
-            {
-                // make it easy to debug key collisions
-                if (getLog().isDebugEnabled() && results.containsKey(field.getName()))
-                {
-                    getLog().debug("{} is being overridden by {}", field.getName(), clazz.getName());
-                }
-                // if the field is final
-                if (Modifier.isFinal(mod))
-                {
-                    // just get the value now
-                    results.put(field.getName(), retrieve(field, clazz));
-                }
-                else
-                {
-                    // put a wrapper with easy access
-                    results.put(field.getName(),
-                                new MutableField(field, clazz));
-                }
-            }
-        }
-        return results;
+        return fieldTables.get(clazz);
     }
 
     /**
@@ -306,7 +359,11 @@ public class FieldTool extends SafeConfig
         {
             Object o = results.get(name);
             // if it was not a final field, get the current value
-            if (o instanceof MutableField)
+            if (o instanceof StaticField)
+            {
+                return ((StaticField)o).getValue();
+            }
+            else if (o instanceof MutableField)
             {
                 return ((MutableField)o).getValue();
             }
@@ -325,6 +382,60 @@ public class FieldTool extends SafeConfig
 
 
 
+    /**
+     * Application-wide accessor for the value of a public static field
+     * that is not final, and may change at different lookups. Values
+     * are read through a {@link MethodHandle} rather than reflection.
+     * @since VelocityTools 3.1
+     */
+    public static class StaticField
+    {
+        private final Field field;
+        private final MethodHandle getter;
+
+        public StaticField(Field field)
+        {
+            this.field = field;
+            MethodHandle handle = null;
+            try
+            {
+                handle = MethodHandles.publicLookup().unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class));
+            }
+            catch (IllegalAccessException iae)
+            {
+                // the declaring class is not public: reads will return null
+                LOG.warn("IllegalAccessException while trying to access {}", field.getName(), iae);
+            }
+            this.getter = handle;
+        }
+
+        public Object getValue()
+        {
+            if (getter == null)
+            {
+                return null;
+            }
+            try
+            {
+                return getter.invokeExact();
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable t)
+            {
+                throw new RuntimeException("could not read field " + field.getName(), t);
+            }
+        }
+
+        public String toString()
+        {
+            return String.valueOf(getValue());
+        }
+    }
+
     /**
      * Holds a {@link Field} and {@link Class} reference for later
      * retrieval of the value of a field that is not final and may
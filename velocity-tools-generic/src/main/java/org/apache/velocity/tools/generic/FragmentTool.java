@@ -0,0 +1,542 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.Velocity;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.ToolContext;
+import org.apache.velocity.tools.config.DefaultKey;
+import org.apache.velocity.tools.config.ValidScope;
+
+/**
+ * <p>Renders independent page fragments concurrently.</p>
+ * <p>Each fragment starts rendering on a bounded thread pool as soon as it is
+ * declared, and its output is spliced into the page where the returned
+ * {@link Fragment} is referenced, waiting for it if needed. A page made of
+ * several slow fragments then takes as long as its slowest fragment rather
+ * than as long as all of them.</p>
+ * <pre>
+ * Example of use:
+ *   #set( $news = $fragments.parse('news.vm', { 'user': $user, 'date': $date }) )
+ *   #set( $weather = $fragments.fetch('http://weather.example.com/today', 500, 'no forecast') )
+ *   ...
+ *   &lt;div id="news"&gt;$news&lt;/div&gt;
+ *   &lt;div id="weather"&gt;$weather&lt;/div&gt;
+ *
+ * Toolbox configuration:
+ * &lt;tools&gt;
+ *   &lt;toolbox scope="request"&gt;
+ *     &lt;tool class="org.apache.velocity.tools.generic.FragmentTool"
+ *              threads="8" timeout="5000" fallback=""/&gt;
+ *   &lt;/toolbox&gt;
+ * &lt;/tools&gt;
+ * </pre>
+ * <p>Fragments are rendered on other threads, so they do not see the page
+ * context: each fragment is rendered in a context holding a copy of the
+ * values explicitly given to it when it is declared and, when the page context
+ * is a {@link ToolContext}, the tools of its shared (application) toolboxes.
+ * The given values (and the tools among them) must support being used from
+ * several threads, so request-bound objects like the request, the session or
+ * request-scoped tools should not be passed.</p>
+ * <p>Remote URLs are fetched on the thread pool. Other URLs are not supported by
+ * this generic version; the view version, {@link org.apache.velocity.tools.view.FragmentTool},
+ * reads them within the current request, hence on the declaring thread.</p>
+ * <p>Fragments still pending once the page is rendered are cancelled by
+ * {@link #cancel()}, which the tool registers as a cleanup of the page
+ * {@link ToolContext} (see {@link ToolContext#cleanup()}); with other contexts,
+ * callers should call it once rendering is done.</p>
+ * <p>Each distinct <code>threads</code> value has its own pool of daemon threads,
+ * shared by all the instances of this tool. When a pool and its queue are full,
+ * fragments are rendered by the declaring thread. A fragment which is not ready
+ * after its timeout, or whose rendering fails, is replaced by its fallback
+ * (the configured fallback, an empty string by default).</p>
+ * <p>This tool is not part of the default tools, since it starts thread pools.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+@DefaultKey("fragments")
+@ValidScope(Scope.REQUEST)
+public class FragmentTool extends SafeConfig
+{
+    /**
+     * Thread pool size configuration key.
+     */
+    public static final String THREADS_KEY = "threads";
+
+    /**
+     * Default fragment timeout configuration key, in milliseconds.
+     */
+    public static final String TIMEOUT_KEY = "timeout";
+
+    /**
+     * Default fallback configuration key.
+     */
+    public static final String FALLBACK_KEY = "fallback";
+
+    /**
+     * Default pool size: twice the number of processors.
+     */
+    public static final int DEFAULT_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Default timeout: ten seconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 10000L;
+
+    /**
+     * Maximum number of waiting fragments per thread of the pool.
+     */
+    protected static final int QUEUE_SIZE_PER_THREAD = 16;
+
+    private static final Map<Integer,ExecutorService> executors = new ConcurrentHashMap<Integer,ExecutorService>();
+
+    private VelocityEngine engine = null;
+    private Context context = null;
+    private Context sharedContext = null;
+    private int threads = DEFAULT_THREADS;
+    private long timeout = DEFAULT_TIMEOUT;
+    private String fallback = "";
+    protected ImportSupport importSupport = null;
+    private final List<Fragment> fragments = new ArrayList<Fragment>();
+
+    /**
+     * Configuration.
+     * @param values configuration values
+     */
+    protected void configure(ValueParser values)
+    {
+        threads = Math.max(1, values.getInt(THREADS_KEY, threads));
+        timeout = values.getLong(TIMEOUT_KEY, timeout);
+        fallback = values.getString(FALLBACK_KEY, fallback);
+        initializeImportSupport(values);
+    }
+
+    /**
+     * ImportSupport initialization
+     * @param config configuration values
+     */
+    protected void initializeImportSupport(ValueParser config)
+    {
+        importSupport = new ImportSupport();
+        importSupport.configure(config);
+    }
+
+    /**
+     * Sets the Velocity engine used to render templates, in place of the
+     * Velocity singleton.
+     * @param engine Velocity engine
+     */
+    public void setVelocityEngine(VelocityEngine engine)
+    {
+        this.engine = engine;
+    }
+
+    /**
+     * Sets the page context, used to register this tool for cleanup and
+     * to share its application tools with fragments.
+     * @param context page context
+     */
+    public void setVelocityContext(Context context)
+    {
+        this.context = context;
+    }
+
+    /**
+     * Gets the thread pool for the specified size.
+     * @param size pool size
+     * @return thread pool
+     */
+    protected static ExecutorService getExecutor(int size)
+    {
+        ExecutorService executor = executors.get(size);
+        if (executor == null)
+        {
+            synchronized (executors)
+            {
+                executor = executors.get(size);
+                if (executor == null)
+                {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(size * QUEUE_SIZE_PER_THREAD),
+                        new ThreadFactory()
+                        {
+                            private final AtomicInteger count = new AtomicInteger();
+
+                            public Thread newThread(Runnable runnable)
+                            {
+                                Thread thread = new Thread(runnable, "velocity-fragment-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        },
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+                    pool.allowCoreThreadTimeOut(true);
+                    executors.put(size, pool);
+                    executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Starts rendering a template without any value, with the default timeout and fallback.
+     * @param template template name
+     * @return fragment, or <code>null</code> if template is null
+     */
+    public Fragment parse(String template)
+    {
+        return parse(template, null, timeout, fallback);
+    }
+
+    /**
+     * Starts rendering a template without any value, with the default fallback.
+     * @param template template name
+     * @param timeout timeout in milliseconds
+     * @return fragment, or <code>null</code> if template is null
+     */
+    public Fragment parse(String template, long timeout)
+    {
+        return parse(template, null, timeout, fallback);
+    }
+
+    /**
+     * Starts rendering a template without any value.
+     * @param template template name
+     * @param timeout timeout in milliseconds
+     * @param fallback output used if the fragment fails or times out
+     * @return fragment, or <code>null</code> if template is null
+     */
+    public Fragment parse(String template, long timeout, String fallback)
+    {
+        return parse(template, null, timeout, fallback);
+    }
+
+    /**
+     * Starts rendering a template, with the default timeout and fallback.
+     * @param template template name
+     * @param values values given to the template, copied
+     * @return fragment, or <code>null</code> if template is null
+     */
+    public Fragment parse(String template, Map<String,Object> values)
+    {
+        return parse(template, values, timeout, fallback);
+    }
+
+    /**
+     * Starts rendering a template, with the default fallback.
+     * @param template template name
+     * @param values values given to the template, copied
+     * @param timeout timeout in milliseconds
+     * @return fragment, or <code>null</code> if template is null
+     */
+    public Fragment parse(String template, Map<String,Object> values, long timeout)
+    {
+        return parse(template, values, timeout, fallback);
+    }
+
+    /**
+     * Starts rendering a template.
+     * @param template template name
+     * @param values values given to the template, copied
+     * @param timeout timeout in milliseconds
+     * @param fallback output used if the fragment fails or times out
+     * @return fragment, or <code>null</code> if template is null
+     */
+    public Fragment parse(final String template, Map<String,Object> values, long timeout, String fallback)
+    {
+        if (template == null)
+        {
+            return null;
+        }
+        // the fragment only sees its own copy of the given values, and shared tools
+        final Context ctx = new VelocityContext(values == null ? new HashMap<String,Object>() : new HashMap<String,Object>(values), getSharedContext());
+        return start(template, timeout, fallback, new Callable<String>()
+        {
+            public String call() throws Exception
+            {
+                Template tmpl = engine == null ? Velocity.getTemplate(template) : engine.getTemplate(template);
+                StringWriter writer = new StringWriter();
+                tmpl.merge(ctx, writer);
+                return writer.toString();
+            }
+        });
+    }
+
+    /**
+     * Gets the context holding the tools shared with fragments, if any.
+     * @return shared context, or <code>null</code>
+     */
+    protected synchronized Context getSharedContext()
+    {
+        if (sharedContext == null && context instanceof ToolContext)
+        {
+            sharedContext = ((ToolContext)context).createSharedContext();
+        }
+        return sharedContext;
+    }
+
+    /**
+     * Starts fetching an URL, with the default timeout and fallback.
+     * @param url absolute URL
+     * @return fragment, or <code>null</code> if url is null
+     */
+    public Fragment fetch(String url)
+    {
+        return fetch(url, timeout, fallback);
+    }
+
+    /**
+     * Starts fetching an URL, with the default fallback.
+     * @param url absolute URL
+     * @param timeout timeout in milliseconds
+     * @return fragment, or <code>null</code> if url is null
+     */
+    public Fragment fetch(String url, long timeout)
+    {
+        return fetch(url, timeout, fallback);
+    }
+
+    /**
+     * Starts fetching an URL.
+     * @param url absolute URL
+     * @param timeout timeout in milliseconds
+     * @param fallback output used if the fetch fails or times out
+     * @return fragment, or <code>null</code> if url is null
+     */
+    public Fragment fetch(final String url, long timeout, String fallback)
+    {
+        if (url == null)
+        {
+            return null;
+        }
+        if (importSupport == null)
+        {
+            configure(new ValueParser());
+        }
+        Callable<String> task = new Callable<String>()
+        {
+            public String call() throws Exception
+            {
+                return importSupport.acquireString(url);
+            }
+        };
+        if (!ImportSupport.isRemoteURL(url))
+        {
+            // local URLs may need the current request, which cannot be used by other threads
+            FutureTask<String> local = new FutureTask<String>(task);
+            local.run();
+            return register(new Fragment(url, timeout, fallback, local));
+        }
+        return start(url, timeout, fallback, task);
+    }
+
+    /**
+     * Submits a fragment to the thread pool.
+     * @param name fragment name, for logging
+     * @param timeout timeout in milliseconds
+     * @param fallback fallback output
+     * @param task fragment rendering
+     * @return fragment
+     */
+    protected Fragment start(String name, long timeout, String fallback, Callable<String> task)
+    {
+        return register(new Fragment(name, timeout, fallback, getExecutor(threads).submit(task)));
+    }
+
+    /**
+     * Keeps track of a fragment, and registers the cancellation of pending fragments
+     * as a cleanup of the page context along with the first one.
+     * @param fragment fragment
+     * @return fragment
+     */
+    protected Fragment register(Fragment fragment)
+    {
+        boolean first;
+        synchronized (fragments)
+        {
+            first = fragments.isEmpty();
+            fragments.add(fragment);
+        }
+        if (first && context instanceof ToolContext)
+        {
+            ((ToolContext)context).addCleanup(new Runnable()
+            {
+                public void run()
+                {
+                    cancel();
+                }
+            });
+        }
+        return fragment;
+    }
+
+    /**
+     * Cancels the fragments still pending, typically once the page is rendered.
+     * @return empty string, so that <code>$fragments.cancel()</code> renders nothing
+     */
+    public String cancel()
+    {
+        List<Fragment> pending;
+        synchronized (fragments)
+        {
+            pending = new ArrayList<Fragment>(fragments);
+            fragments.clear();
+        }
+        for (Fragment fragment : pending)
+        {
+            if (!fragment.isDone())
+            {
+                getLog().debug("cancelling fragment {}", fragment.getName());
+                fragment.future.cancel(true);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Waits for all the fragments declared so far.
+     * @return empty string, so that <code>$fragments.await()</code> renders nothing
+     */
+    public String await()
+    {
+        List<Fragment> pending;
+        synchronized (fragments)
+        {
+            pending = new ArrayList<Fragment>(fragments);
+        }
+        for (Fragment fragment : pending)
+        {
+            fragment.get();
+        }
+        return "";
+    }
+
+    /**
+     * A fragment being rendered. Its string representation is its output,
+     * or its fallback.
+     */
+    public class Fragment
+    {
+        private final String name;
+        private final long deadline;
+        private final String fallback;
+        private final Future<String> future;
+        private volatile String result = null;
+
+        protected Fragment(String name, long timeout, String fallback, Future<String> future)
+        {
+            this.name = name;
+            this.deadline = System.currentTimeMillis() + timeout;
+            this.fallback = fallback;
+            this.future = future;
+        }
+
+        /**
+         * @return fragment name (template or URL)
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return whether the fragment rendering is over
+         */
+        public boolean isDone()
+        {
+            return future.isDone();
+        }
+
+        /**
+         * Waits for the fragment until its deadline, which counts from its declaration.
+         * @return fragment output, or fallback
+         */
+        public String get()
+        {
+            if (result == null)
+            {
+                String output;
+                try
+                {
+                    output = future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (output == null)
+                    {
+                        output = fallback;
+                    }
+                }
+                catch (TimeoutException te)
+                {
+                    getLog().warn("fragment {} timed out", name);
+                    future.cancel(true);
+                    output = fallback;
+                }
+                catch (CancellationException ce)
+                {
+                    getLog().debug("fragment {} was cancelled", name);
+                    output = fallback;
+                }
+                catch (ExecutionException ee)
+                {
+                    getLog().error("fragment {} failed", name, ee.getCause());
+                    output = fallback;
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    output = fallback;
+                }
+                result = output;
+            }
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            return get();
+        }
+    }
+}
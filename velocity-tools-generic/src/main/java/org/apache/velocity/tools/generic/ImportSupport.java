@@ -27,6 +27,7 @@ import org.apache.velocity.tools.config.InvalidScope;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -35,6 +36,19 @@ import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * <p>Provides methods to import arbitrary local or remote resources as strings, generic version.</p>
@@ -59,6 +73,62 @@ public class ImportSupport extends SafeConfig
      */
     public static final String URL_KEY = "url";
 
+    /** Configuration key for ImportTool, XmlTool and JsonTool, used to specify how many
+     * remote URLs of a batch are fetched concurrently
+     * @since VelocityTools 3.1
+     */
+    public static final String FETCH_PARALLELISM_KEY = "fetchParallelism";
+
+    /** Configuration key for ImportTool, XmlTool and JsonTool, used to specify the overall
+     * timeout of a batch, in milliseconds
+     * @since VelocityTools 3.1
+     */
+    public static final String FETCH_TIMEOUT_KEY = "fetchTimeout";
+
+    /**
+     * Default number of concurrent fetches per batch.
+     * @since VelocityTools 3.1
+     */
+    public static final int DEFAULT_FETCH_PARALLELISM = 4;
+
+    /**
+     * Default batch timeout, in milliseconds.
+     * @since VelocityTools 3.1
+     */
+    public static final long DEFAULT_FETCH_TIMEOUT = 10000L;
+
+    /**
+     * Maximum number of threads shared by all batches.
+     * @since VelocityTools 3.1
+     */
+    protected static final int MAX_FETCH_THREADS = 64;
+
+    private static ExecutorService fetchExecutor = null;
+
+    /**
+     * Deadline of the batch the current thread is acquiring URLs for, if any
+     */
+    private static final ThreadLocal<Long> fetchDeadline = new ThreadLocal<Long>();
+
+    private int fetchParallelism = DEFAULT_FETCH_PARALLELISM;
+    private long fetchTimeout = DEFAULT_FETCH_TIMEOUT;
+
+    /**
+     * Content acquisition, used by batches.
+     * @param <T> acquired content type
+     * @since VelocityTools 3.1
+     */
+    public interface Acquirer<T>
+    {
+        /**
+         * Acquires the content of an URL.
+         * @param url URL
+         * @return acquired content
+         * @throws Exception if acquisition failed
+         */
+        T acquire(String url) throws Exception;
+    }
+
     //*********************************************************************
     // URL importation logic
 
@@ -89,6 +159,8 @@ public class ImportSupport extends SafeConfig
     protected void configure(ValueParser values)
     {
         super.configure(values);
+        fetchParallelism = Math.max(1, values.getInt(FETCH_PARALLELISM_KEY, fetchParallelism));
+        fetchTimeout = values.getLong(FETCH_TIMEOUT_KEY, fetchTimeout);
     }
 
     /**
@@ -101,6 +173,169 @@ public class ImportSupport extends SafeConfig
         super.setSafeMode(safe);
     }
 
+    /**
+     * Gets the thread pool shared by all batches.
+     * @return fetch thread pool
+     * @since VelocityTools 3.1
+     */
+    protected static synchronized ExecutorService getFetchExecutor()
+    {
+        if (fetchExecutor == null)
+        {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(0, MAX_FETCH_THREADS, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadFactory()
+                {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "velocity-fetch-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+            fetchExecutor = pool;
+        }
+        return fetchExecutor;
+    }
+
+    /**
+     * <p>Acquires a batch of URLs. Remote URLs are acquired concurrently, at most
+     * <code>fetchParallelism</code> at a time, while local URLs are acquired
+     * sequentially by the calling thread, since they may need the current request.</p>
+     * <p>Results are returned in order. A <code>null</code> entry stands for an empty URL,
+     * a failed acquisition (which is logged) or an acquisition which did not complete
+     * within <code>fetchTimeout</code> milliseconds. Remote connections of the batch get
+     * connect and read timeouts set to the time remaining before the deadline, so that
+     * a hung remote server cannot hold a fetch thread past it. If all threads of the
+     * shared pool are busy, remote URLs are left <code>null</code> rather than being
+     * acquired by the calling thread.</p>
+     * @param urls URLs to acquire
+     * @param acquirer acquisition of a single URL
+     * @param <T> acquired content type
+     * @return list of acquired contents
+     * @since VelocityTools 3.1
+     */
+    public <T> List<T> acquireAll(List<?> urls, final Acquirer<T> acquirer)
+    {
+        final int size = urls.size();
+        final long deadline = System.currentTimeMillis() + fetchTimeout;
+        final String[] targets = new String[size];
+        final AtomicReferenceArray<T> results = new AtomicReferenceArray<T>(size);
+        final int[] remote = new int[size];
+        int remoteCount = 0;
+        for (int i = 0; i < size; ++i)
+        {
+            Object url = urls.get(i);
+            targets[i] = url == null ? null : String.valueOf(url).trim();
+            if (targets[i] != null && targets[i].length() > 0 && isRemoteURL(targets[i]))
+            {
+                remote[remoteCount++] = i;
+            }
+        }
+
+        // start remote acquisitions
+        final int[] queue = Arrays.copyOf(remote, remoteCount);
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(remoteCount);
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+        Runnable worker = new Runnable()
+        {
+            public void run()
+            {
+                int n;
+                fetchDeadline.set(deadline);
+                try
+                {
+                    while ((n = next.getAndIncrement()) < queue.length)
+                    {
+                        int i = queue[n];
+                        try
+                        {
+                            if (System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted())
+                            {
+                                results.set(i, acquirer.acquire(targets[i]));
+                            }
+                        }
+                        catch (Exception e)
+                        {
+                            getLog().error("could not acquire URL {}", targets[i], e);
+                        }
+                        finally
+                        {
+                            done.countDown();
+                        }
+                    }
+                }
+                finally
+                {
+                    fetchDeadline.remove();
+                }
+            }
+        };
+        ExecutorService executor = getFetchExecutor();
+        for (int w = Math.min(fetchParallelism, remoteCount); w > 0; --w)
+        {
+            try
+            {
+                workers.add(executor.submit(worker));
+            }
+            catch (RejectedExecutionException ree)
+            {
+                /* pool exhausted, started workers will process the whole queue */
+                break;
+            }
+        }
+
+        // meanwhile, acquire local URLs
+        List<T> ret = new ArrayList<T>(size);
+        for (int i = 0, r = 0; i < size; ++i)
+        {
+            if (r < remoteCount && remote[r] == i)
+            {
+                ++r;
+            }
+            else if (targets[i] != null && targets[i].length() > 0)
+            {
+                try
+                {
+                    results.set(i, acquirer.acquire(targets[i]));
+                }
+                catch (Exception e)
+                {
+                    getLog().error("could not acquire URL {}", targets[i], e);
+                }
+            }
+        }
+
+        try
+        {
+            if (workers.isEmpty() && remoteCount > 0)
+            {
+                getLog().warn("{} URLs could not be acquired: no fetch thread available", remoteCount);
+            }
+            else if (!done.await(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+            {
+                getLog().warn("{} out of {} URLs could not be acquired within {} ms", done.getCount(), remoteCount, fetchTimeout);
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<?> future : workers)
+        {
+            future.cancel(true);
+        }
+        for (int i = 0; i < size; ++i)
+        {
+            ret.add(results.get(i));
+        }
+        return ret;
+    }
+
     /**
      *
      * @param url the URL resource to return as string
@@ -207,6 +442,18 @@ public class ImportSupport extends SafeConfig
             // handle remote URLs ourselves, using java.net.URL
             URL u = ConversionUtils.toURL(url);
             uc = u.openConnection();
+            Long deadline = fetchDeadline.get();
+            if (deadline != null)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    throw new IOException("fetch timeout expired");
+                }
+                int timeout = (int)Math.min(remaining, Integer.MAX_VALUE);
+                uc.setConnectTimeout(timeout);
+                uc.setReadTimeout(timeout);
+            }
             i = uc.getInputStream();
 
             // check response code for HTTP URLs, per spec,
@@ -249,6 +496,11 @@ public class ImportSupport extends SafeConfig
                 r = new InputStreamReader(i, RuntimeConstants.ENCODING_DEFAULT);
             }
 
+            if (deadline != null)
+            {
+                r = new DeadlineReader(r, deadline);
+            }
+
             if (huc == null)
             {
                 return r;
@@ -313,6 +565,49 @@ public class ImportSupport extends SafeConfig
         throw new IOException("Only remote URLs are supported");
     }
 
+    /**
+     * Reader which fails once the deadline of its batch has passed. Since each blocking
+     * read is also bounded by the connection read timeout, a slow remote server cannot
+     * keep a fetch thread much longer than the deadline.
+     * @since VelocityTools 3.1
+     */
+    protected static class DeadlineReader extends FilterReader
+    {
+        private final long deadline;
+
+        DeadlineReader(Reader r, long deadline)
+        {
+            super(r);
+            this.deadline = deadline;
+        }
+
+        private void checkDeadline() throws IOException
+        {
+            if (System.currentTimeMillis() >= deadline)
+            {
+                throw new IOException("fetch timeout expired");
+            }
+        }
+
+        public int read() throws IOException
+        {
+            checkDeadline();
+            return super.read();
+        }
+
+        public int read(char[] buf, int off, int len) throws IOException
+        {
+            checkDeadline();
+            return super.read(buf, off, len);
+        }
+
+        public long skip(long n) throws IOException
+        {
+            checkDeadline();
+            return super.skip(n);
+        }
+    }
+
     protected static class SafeClosingHttpURLConnectionReader extends Reader
     {
         private final HttpURLConnection huc;
@@ -20,6 +20,7 @@ package org.apache.velocity.tools.generic;
  */
 
 import java.io.Serializable;
+import java.util.List;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.config.ValidScope;
@@ -130,4 +131,32 @@ public class ImportTool extends SafeConfig implements Serializable
         }
     }
 
+
+    /**
+     * Returns the supplied URLs rendered as Strings. Remote URLs are fetched
+     * concurrently, see {@link ImportSupport#acquireAll(List, ImportSupport.Acquirer)}.
+     *
+     * @param urls the URLs to import
+     * @return the URLs as strings, in order, with <code>null</code> for failed
+     * or timed out URLs, or <code>null</code> if urls is null
+     * @since VelocityTools 3.1
+     */
+    public List<String> fetchAll(List<?> urls)
+    {
+        if (urls == null)
+        {
+            return null;
+        }
+        if (importSupport == null)
+        {
+            initializeImportSupport(new ValueParser());
+        }
+        return importSupport.acquireAll(urls, new ImportSupport.Acquirer<String>()
+        {
+            public String acquire(String url) throws Exception
+            {
+                return importSupport.acquireString(url);
+            }
+        });
+    }
 }
@@ -19,7 +19,9 @@ package org.apache.velocity.tools.generic;
  * under the License.
  */
 
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import com.github.cliftonlabs.json_simple.JsonArray;
@@ -41,27 +43,41 @@ public class JsonContent
      */
     private JsonArray jsonArray = null;
 
+    /**
+     * memoized containers of children objects and arrays
+     */
+    private Map<Object, JsonContent> wrappers = null;
+
     /**
      * wraps the object into an hybrid JSON container if necessary
      */
-    private static Object wrapIfNeeded(Object obj)
+    private Object wrapIfNeeded(Object obj)
     {
-        if (obj == null)
-        {
-            return obj;
-        }
-        else if (obj instanceof JsonArray)
-        {
-            return new JsonContent((JsonArray)obj);
-        }
-        else if (obj instanceof JsonObject)
+        if (obj instanceof JsonArray || obj instanceof JsonObject)
         {
-            return new JsonContent((JsonObject)obj);
-        }
-        else
-        {
-            return obj;
+            synchronized (this)
+            {
+                if (wrappers == null)
+                {
+                    wrappers = new IdentityHashMap<Object, JsonContent>();
+                }
+                JsonContent wrapper = wrappers.get(obj);
+                if (wrapper == null)
+                {
+                    wrapper = obj instanceof JsonArray ? new JsonContent((JsonArray)obj) : new JsonContent((JsonObject)obj);
+                    wrappers.put(obj, wrapper);
+                }
+                return wrapper;
+            }
         }
+        return obj;
+    }
+
+    /**
+     * constructor for subclasses providing their own content
+     */
+    protected JsonContent()
+    {
     }
 
     /**
@@ -92,7 +108,10 @@ public class JsonContent
         Object ret = null;
         if (jsonArray != null)
         {
-            ret = wrapIfNeeded(jsonArray.get(index));
+            if (index >= 0 && index < jsonArray.size())
+            {
+                ret = wrapIfNeeded(jsonArray.get(index));
+            }
         }
         else if (jsonObject != null)
         {
@@ -113,7 +132,11 @@ public class JsonContent
         {
             try
             {
-                ret = wrapIfNeeded(jsonArray.get(Integer.parseInt(key)));
+                int index = Integer.parseInt(key);
+                if (index >= 0 && index < jsonArray.size())
+                {
+                    ret = wrapIfNeeded(jsonArray.get(index));
+                }
             }
             catch (NumberFormatException nfe) {}
         }
@@ -124,6 +147,91 @@ public class JsonContent
         return ret;
     }
 
+    /**
+     * Get a value using a JSON Pointer (RFC 6901), like <code>/foo/0/bar</code>.
+     * @param pointer JSON pointer
+     * @return pointed value, or null
+     * @since VelocityTools 3.1
+     */
+    public Object pointer(String pointer)
+    {
+        if (pointer == null || pointer.length() > 0 && pointer.charAt(0) != '/')
+        {
+            return null;
+        }
+        Object current = this;
+        int pos = 1;
+        while (pos <= pointer.length())
+        {
+            if (!(current instanceof JsonContent))
+            {
+                return null;
+            }
+            int next = pointer.indexOf('/', pos);
+            if (next == -1)
+            {
+                next = pointer.length();
+            }
+            String token = pointer.substring(pos, next);
+            if (token.indexOf('~') != -1)
+            {
+                token = token.replace("~1", "/").replace("~0", "~");
+            }
+            current = ((JsonContent)current).get(token);
+            pos = next + 1;
+        }
+        return current;
+    }
+
+    /**
+     * Get a value using a dotted path, like <code>foo[0].bar</code> or <code>foo.0.bar</code>.
+     * @param path dotted path
+     * @return value, or null
+     * @since VelocityTools 3.1
+     */
+    public Object path(String path)
+    {
+        if (path == null)
+        {
+            return null;
+        }
+        Object current = this;
+        int pos = 0;
+        int len = path.length();
+        while (pos < len)
+        {
+            if (!(current instanceof JsonContent))
+            {
+                return null;
+            }
+            char c = path.charAt(pos);
+            int next;
+            String token;
+            if (c == '[')
+            {
+                next = path.indexOf(']', pos);
+                if (next == -1)
+                {
+                    return null;
+                }
+                token = path.substring(pos + 1, next);
+                ++next;
+            }
+            else
+            {
+                next = pos;
+                while (next < len && (c = path.charAt(next)) != '.' && c != '[')
+                {
+                    ++next;
+                }
+                token = path.substring(pos, next);
+            }
+            current = ((JsonContent)current).get(token);
+            pos = next < len && path.charAt(next) == '.' ? next + 1 : next;
+        }
+        return current;
+    }
+
     /**
      * Iterate keys of root object.
      * @return iterator
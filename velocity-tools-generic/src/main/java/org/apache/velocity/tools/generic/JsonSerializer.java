@@ -0,0 +1,582 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.Renderable;
+
+import com.github.cliftonlabs.json_simple.Jsonable;
+
+/**
+ * <p>Serializes Java objects as JSON, directly into a writer.</p>
+ * <p>Supported values are:</p>
+ * <ul>
+ *     <li><code>null</code>, booleans, numbers (non-finite numbers are serialized as <code>null</code>)</li>
+ *     <li>strings, characters and enums, serialized as JSON strings</li>
+ *     <li>maps, serialized as objects with stringified keys</li>
+ *     <li>collections, iterables, iterators, enumerations and arrays (including primitive ones), serialized as arrays</li>
+ *     <li>{@link JsonContent} objects and arrays, and {@link JsonTool} instances, serialized as their root</li>
+ *     <li>{@link XmlTool} instances, serialized as a string containing their XML markup</li>
+ *     <li>json-simple {@link Jsonable} instances</li>
+ *     <li>instances of the bean classes given to the constructor (or of their subclasses), serialized
+ *     as objects of the readable properties exposed by public getters of public classes (introspection
+ *     results are cached per class)</li>
+ * </ul>
+ * <p>Any other object is serialized as the JSON string of its <code>toString()</code> value: bean
+ * serialization is opt-in, so that templates cannot walk through the getters of arbitrary objects
+ * found in the context.</p>
+ * <p>Cycles are broken by serializing the repeated reference as <code>null</code>.</p>
+ * <p>Strings are escaped so that the output can safely be embedded in an HTML &lt;script&gt; block.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+
+public class JsonSerializer
+{
+    /**
+     * Compact serializer
+     */
+    public static final JsonSerializer COMPACT = new JsonSerializer(false);
+
+    /**
+     * Pretty-printing serializer
+     */
+    public static final JsonSerializer PRETTY = new JsonSerializer(true);
+
+    private static final String INDENT = "  ";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Readable properties of bean classes
+     */
+    private static final ClassValue<BeanProperty[]> beanProperties = new ClassValue<BeanProperty[]>()
+    {
+        @Override
+        protected BeanProperty[] computeValue(Class<?> clazz)
+        {
+            List<BeanProperty> properties = new ArrayList<BeanProperty>();
+            try
+            {
+                BeanInfo info = Introspector.getBeanInfo(clazz, Object.class);
+                for (PropertyDescriptor descriptor : info.getPropertyDescriptors())
+                {
+                    Method getter = descriptor.getReadMethod();
+                    if (getter != null && Modifier.isPublic(getter.getModifiers()) &&
+                        Modifier.isPublic(getter.getDeclaringClass().getModifiers()))
+                    {
+                        properties.add(new BeanProperty(descriptor.getName(), getter));
+                    }
+                }
+            }
+            catch (IntrospectionException ie)
+            {
+                /* no readable property */
+            }
+            return properties.toArray(new BeanProperty[properties.size()]);
+        }
+    };
+
+    private static final class BeanProperty
+    {
+        private final String name;
+        private final Method getter;
+
+        private BeanProperty(String name, Method getter)
+        {
+            this.name = name;
+            this.getter = getter;
+        }
+    }
+
+    private final boolean pretty;
+
+    private final Class[] beanClasses;
+
+    /**
+     * Builds a new serializer
+     * @param pretty whether to pretty-print the output
+     */
+    public JsonSerializer(boolean pretty)
+    {
+        this(pretty, new Class[0]);
+    }
+
+    /**
+     * Builds a new serializer which serializes instances of the given classes as beans
+     * @param pretty whether to pretty-print the output
+     * @param beanClasses classes whose instances are serialized as objects of their readable properties
+     */
+    public JsonSerializer(boolean pretty, Class... beanClasses)
+    {
+        this.pretty = pretty;
+        this.beanClasses = beanClasses.clone();
+    }
+
+    /**
+     * Checks whether a class has been configured as a bean class
+     * @param clazz class to check
+     * @return whether instances of this class are serialized as beans
+     */
+    protected boolean isBeanClass(Class clazz)
+    {
+        for (Class beanClass : beanClasses)
+        {
+            if (beanClass.isAssignableFrom(clazz))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serializes a value into a writer
+     * @param value value to serialize
+     * @param writer target writer
+     * @throws IOException if the writer fails
+     */
+    public void serialize(Object value, Writer writer) throws IOException
+    {
+        write(value, writer, 0, new IdentityHashMap<Object, Object>());
+    }
+
+    /**
+     * Serializes a value into a string
+     * @param value value to serialize
+     * @return JSON string
+     */
+    public String serialize(Object value)
+    {
+        StringWriter writer = new StringWriter();
+        try
+        {
+            serialize(value, writer);
+        }
+        catch (IOException ioe)
+        {
+            /* cannot happen with a StringWriter */
+            throw new RuntimeException(ioe);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Returns a deferred serialization of a value, which Velocity renders directly into the template writer.
+     * @param value value to serialize
+     * @return renderable JSON output
+     */
+    public Output output(Object value)
+    {
+        return new Output(value, this);
+    }
+
+    private void write(Object value, Writer writer, int depth, IdentityHashMap<Object, Object> visiting) throws IOException
+    {
+        if (value == null)
+        {
+            writer.write("null");
+        }
+        else if (value instanceof CharSequence || value instanceof Character || value instanceof Enum)
+        {
+            writeString(value.toString(), writer);
+        }
+        else if (value instanceof Boolean)
+        {
+            writer.write(((Boolean)value).booleanValue() ? "true" : "false");
+        }
+        else if (value instanceof Number)
+        {
+            writeNumber((Number)value, writer);
+        }
+        else if (value instanceof Output)
+        {
+            write(((Output)value).value, writer, depth, visiting);
+        }
+        else if (value instanceof JsonTool)
+        {
+            write(((JsonTool)value).root(), writer, depth, visiting);
+        }
+        else if (!pretty && value instanceof LazyJsonContent)
+        {
+            ((LazyJsonContent)value).writeTo(writer);
+        }
+        else if (value instanceof XmlTool)
+        {
+            writeString(value.toString(), writer);
+        }
+        else if (visiting.put(value, value) != null)
+        {
+            /* cycle */
+            writer.write("null");
+        }
+        else
+        {
+            try
+            {
+                writeComposite(value, writer, depth, visiting);
+            }
+            finally
+            {
+                visiting.remove(value);
+            }
+        }
+    }
+
+    private void writeComposite(Object value, Writer writer, int depth, IdentityHashMap<Object, Object> visiting) throws IOException
+    {
+        if (value instanceof Map)
+        {
+            writer.write('{');
+            boolean first = true;
+            for (Map.Entry entry : ((Map<?, ?>)value).entrySet())
+            {
+                first = writeSeparator(first, depth, writer);
+                writeString(String.valueOf(entry.getKey()), writer);
+                writer.write(pretty ? ": " : ":");
+                write(entry.getValue(), writer, depth + 1, visiting);
+            }
+            writeClosing('}', first, depth, writer);
+        }
+        else if (value instanceof JsonContent)
+        {
+            JsonContent content = (JsonContent)value;
+            if (content.isObject())
+            {
+                writer.write('{');
+                boolean first = true;
+                for (String key : content.keySet())
+                {
+                    first = writeSeparator(first, depth, writer);
+                    writeString(key, writer);
+                    writer.write(pretty ? ": " : ":");
+                    write(content.get(key), writer, depth + 1, visiting);
+                }
+                writeClosing('}', first, depth, writer);
+            }
+            else if (content.isArray())
+            {
+                writer.write('[');
+                int size = content.size();
+                for (int i = 0; i < size; ++i)
+                {
+                    writeSeparator(i == 0, depth, writer);
+                    write(content.get(i), writer, depth + 1, visiting);
+                }
+                writeClosing(']', size == 0, depth, writer);
+            }
+            else
+            {
+                writer.write("null");
+            }
+        }
+        else if (value instanceof Iterable)
+        {
+            writeIterator(((Iterable)value).iterator(), writer, depth, visiting);
+        }
+        else if (value instanceof Iterator)
+        {
+            writeIterator((Iterator)value, writer, depth, visiting);
+        }
+        else if (value instanceof Enumeration)
+        {
+            writer.write('[');
+            boolean first = true;
+            Enumeration enumeration = (Enumeration)value;
+            while (enumeration.hasMoreElements())
+            {
+                first = writeSeparator(first, depth, writer);
+                write(enumeration.nextElement(), writer, depth + 1, visiting);
+            }
+            writeClosing(']', first, depth, writer);
+        }
+        else if (value.getClass().isArray())
+        {
+            writer.write('[');
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; ++i)
+            {
+                writeSeparator(i == 0, depth, writer);
+                write(Array.get(value, i), writer, depth + 1, visiting);
+            }
+            writeClosing(']', length == 0, depth, writer);
+        }
+        else if (value instanceof Jsonable)
+        {
+            ((Jsonable)value).toJson(writer);
+        }
+        else if (!isBeanClass(value.getClass()))
+        {
+            writeString(value.toString(), writer);
+        }
+        else
+        {
+            writer.write('{');
+            boolean first = true;
+            for (BeanProperty property : beanProperties.get(value.getClass()))
+            {
+                Object propertyValue;
+                try
+                {
+                    propertyValue = property.getter.invoke(value);
+                }
+                catch (InvocationTargetException ite)
+                {
+                    throw new VelocityException("could not read property '" + property.name + "' of " + value.getClass().getName(), ite.getCause());
+                }
+                catch (IllegalAccessException iae)
+                {
+                    throw new VelocityException("could not read property '" + property.name + "' of " + value.getClass().getName(), iae);
+                }
+                first = writeSeparator(first, depth, writer);
+                writeString(property.name, writer);
+                writer.write(pretty ? ": " : ":");
+                write(propertyValue, writer, depth + 1, visiting);
+            }
+            writeClosing('}', first, depth, writer);
+        }
+    }
+
+    private void writeIterator(Iterator iterator, Writer writer, int depth, IdentityHashMap<Object, Object> visiting) throws IOException
+    {
+        writer.write('[');
+        boolean first = true;
+        while (iterator.hasNext())
+        {
+            first = writeSeparator(first, depth, writer);
+            write(iterator.next(), writer, depth + 1, visiting);
+        }
+        writeClosing(']', first, depth, writer);
+    }
+
+    /**
+     * Writes the separator preceding a member
+     * @return false
+     */
+    private boolean writeSeparator(boolean first, int depth, Writer writer) throws IOException
+    {
+        if (!first)
+        {
+            writer.write(',');
+        }
+        if (pretty)
+        {
+            writer.write('\n');
+            writeIndent(depth + 1, writer);
+        }
+        return false;
+    }
+
+    private void writeClosing(char closing, boolean empty, int depth, Writer writer) throws IOException
+    {
+        if (pretty && !empty)
+        {
+            writer.write('\n');
+            writeIndent(depth, writer);
+        }
+        writer.write(closing);
+    }
+
+    private void writeIndent(int depth, Writer writer) throws IOException
+    {
+        for (int i = 0; i < depth; ++i)
+        {
+            writer.write(INDENT);
+        }
+    }
+
+    private static void writeNumber(Number number, Writer writer) throws IOException
+    {
+        if (number instanceof Double || number instanceof Float)
+        {
+            double d = number.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d))
+            {
+                writer.write("null");
+                return;
+            }
+        }
+        writer.write(number.toString());
+    }
+
+    /**
+     * Writes a JSON string, escaping quotes, backslashes, control characters, line and paragraph separators,
+     * and slashes following a '&lt;'.
+     * @param str string to write
+     * @param writer target writer
+     * @throws IOException if the writer fails
+     */
+    public static void writeString(String str, Writer writer) throws IOException
+    {
+        writer.write('"');
+        int length = str.length();
+        int run = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            char c = str.charAt(i);
+            String escape = null;
+            switch (c)
+            {
+                case '"': escape = "\\\""; break;
+                case '\\': escape = "\\\\"; break;
+                case '\n': escape = "\\n"; break;
+                case '\r': escape = "\\r"; break;
+                case '\t': escape = "\\t"; break;
+                case '\b': escape = "\\b"; break;
+                case '\f': escape = "\\f"; break;
+                case '/':
+                    if (i > 0 && str.charAt(i - 1) == '<')
+                    {
+                        escape = "\\/";
+                    }
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029')
+                    {
+                        escape = new String(new char[] { '\\', 'u', HEX[c >> 12 & 0xF], HEX[c >> 8 & 0xF], HEX[c >> 4 & 0xF], HEX[c & 0xF] });
+                    }
+                    break;
+            }
+            if (escape != null)
+            {
+                if (i > run)
+                {
+                    writer.write(str, run, i - run);
+                }
+                writer.write(escape);
+                run = i + 1;
+            }
+        }
+        if (length > run)
+        {
+            writer.write(str, run, length - run);
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Writes JSON source text as is, apart from the same escaping of line and paragraph separators
+     * and of slashes following a '&lt;' as {@link #writeString(String, Writer)}. In valid JSON, those
+     * characters can only appear inside strings.
+     * @param chars JSON source
+     * @param offset start offset
+     * @param length number of characters
+     * @param writer target writer
+     * @throws IOException if the writer fails
+     */
+    static void writeRaw(char[] chars, int offset, int length, Writer writer) throws IOException
+    {
+        int end = offset + length;
+        int run = offset;
+        for (int i = offset; i < end; ++i)
+        {
+            char c = chars[i];
+            String escape = null;
+            if (c == '/' && i > offset && chars[i - 1] == '<')
+            {
+                escape = "\\/";
+            }
+            else if (c == '\u2028')
+            {
+                escape = "\\u2028";
+            }
+            else if (c == '\u2029')
+            {
+                escape = "\\u2029";
+            }
+            if (escape != null)
+            {
+                if (i > run)
+                {
+                    writer.write(chars, run, i - run);
+                }
+                writer.write(escape);
+                run = i + 1;
+            }
+        }
+        if (end > run)
+        {
+            writer.write(chars, run, end - run);
+        }
+    }
+
+    /**
+     * Deferred JSON serialization of a value. When referenced in a template, Velocity renders it
+     * directly into the template writer, without any intermediate string.
+     */
+    public static class Output implements Renderable
+    {
+        private final Object value;
+        private final JsonSerializer serializer;
+
+        /**
+         * Builds a new renderable output
+         * @param value value to serialize
+         * @param serializer serializer to use
+         */
+        public Output(Object value, JsonSerializer serializer)
+        {
+            this.value = value;
+            this.serializer = serializer;
+        }
+
+        /**
+         * Renders the JSON serialization of the value into the given writer
+         * @param context current context
+         * @param writer template writer
+         * @return true
+         * @throws IOException if the writer fails
+         */
+        public boolean render(InternalContextAdapter context, Writer writer) throws IOException
+        {
+            serializer.serialize(value, writer);
+            return true;
+        }
+
+        /**
+         * Serializes the value into a string
+         * @return JSON string
+         */
+        public String toString()
+        {
+            return serializer.serialize(value);
+        }
+    }
+}
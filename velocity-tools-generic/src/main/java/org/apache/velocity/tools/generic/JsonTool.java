@@ -23,9 +23,12 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.config.InvalidScope;
@@ -48,7 +51,20 @@ import com.github.cliftonlabs.json_simple.Jsoner;
  * <ul>
  *     <li><code>resource</code>=<i>file or classpath resource</i></li>
  *     <li><code>source</code>=<i>URL</i></li>
+ *     <li><code>lazy</code>=<i>true or false</i> (defaults to false)</li>
+ *     <li><code>beans</code>=<i>comma separated list of class names</i> (see below)</li>
  * </ul>
+ * <p>In lazy mode, the JSON text is not parsed upfront: objects and arrays only index
+ * the offsets of their children when first navigated, and only the values actually
+ * accessed are materialized (see {@link LazyJsonContent}). This mode is meant for big
+ * documents of which templates only display a small part.</p>
+ * <p>Values can also be reached using a JSON Pointer, as in <code>$json.pointer('/foo/0/bar')</code>,
+ * or using a dotted path, as in <code>$json.path('foo[0].bar')</code>.</p>
+ * <p>The tool can also write JSON: <code>$json.write($obj)</code> (or <code>$json.write($obj, true)</code>
+ * to pretty-print it) serializes maps, collections, arrays, JSON content and XML nodes directly
+ * into the template output (see {@link JsonSerializer}). Other objects are written as strings, unless
+ * their class (or one of its superclasses or interfaces) is listed in the <code>beans</code> parameter,
+ * in which case they are written as objects of their readable properties.</p>
  * <p>Example configuration:</p>
  * <pre>
  * &lt;tools&gt;
@@ -70,6 +86,18 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
 {
     private static final long serialVersionUID = -6239459645862004347L;
 
+    /**
+     * Configuration key for lazy parsing
+     * @since VelocityTools 3.1
+     */
+    public static final String LAZY_KEY = "lazy";
+
+    /**
+     * Configuration key for classes serialized as beans by {@link #write(Object)}
+     * @since VelocityTools 3.1
+     */
+    public static final String BEANS_KEY = "beans";
+
     /**
      * ImportSupport utility which provides underlying i/o
      */
@@ -90,6 +118,10 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
 
     private JsonContent root = null;
 
+    private boolean lazy = false;
+
+    private Class[] beanClasses = null;
+
     /**
      * Looks for the "file" parameter and automatically uses
      * {@link #initJSON(String)} to parse the file (searched in filesystem current path and classpath) and set the
@@ -100,6 +132,24 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
     {
         super.configure(values);
         initializeImportSupport(values);
+        lazy = values.getBoolean(LAZY_KEY, false);
+        String[] beans = values.getStrings(BEANS_KEY);
+        if (beans != null)
+        {
+            List<Class> beanClasses = new ArrayList<Class>();
+            for (String bean : beans)
+            {
+                try
+                {
+                    beanClasses.add(ClassUtils.getClass(bean));
+                }
+                catch (ClassNotFoundException cnfe)
+                {
+                    getLog().error("could not find bean class {}", bean, cnfe);
+                }
+            }
+            this.beanClasses = beanClasses.toArray(new Class[beanClasses.size()]);
+        }
         String resource = values.getString(ImportSupport.RESOURCE_KEY);
         if (resource != null)
         {
@@ -119,6 +169,26 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
         }
     }
 
+    /**
+     * Sets whether JSON content is to be lazily parsed.
+     * @param lazy lazy parsing flag
+     * @since VelocityTools 3.1
+     */
+    public void setLazy(boolean lazy)
+    {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Whether JSON content is lazily parsed.
+     * @return lazy parsing flag
+     * @since VelocityTools 3.1
+     */
+    public boolean isLazy()
+    {
+        return lazy;
+    }
+
     /**
      * Initialize JSON content from a string.
      * @param json JSON string
@@ -127,7 +197,22 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
     {
         if (json != null)
         {
-            initJSON(new StringReader(json));
+            if (lazy)
+            {
+                try
+                {
+                    root = LazyJsonContent.parse(json);
+                }
+                catch (Exception e)
+                {
+                    getLog().error("error while setting up JSON source", e);
+                    root = null;
+                }
+            }
+            else
+            {
+                initJSON(new StringReader(json));
+            }
         }
     }
 
@@ -139,6 +224,11 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
     {
         try
         {
+            if (lazy)
+            {
+                root = LazyJsonContent.parse(reader);
+                return;
+            }
             Object result = Jsoner.deserialize(reader);
             if (result instanceof JsonObject)
             {
@@ -261,6 +351,54 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
         return this;
     }
 
+    /**
+     * Reads and parses several remote or local URLs. Remote URLs are fetched
+     * concurrently, see {@link ImportSupport#acquireAll(List, ImportSupport.Acquirer)}.
+     * @param urls resources URLs
+     * @return new JsonTool instances, in order, with <code>null</code> for failed
+     * or timed out URLs, or <code>null</code> if urls is null
+     * @since VelocityTools 3.1
+     */
+    public List<JsonTool> fetchAll(List<?> urls)
+    {
+        if (urls == null)
+        {
+            return null;
+        }
+        if (importSupport == null)
+        {
+            initializeImportSupport(new ValueParser());
+        }
+        return importSupport.acquireAll(urls, new ImportSupport.Acquirer<JsonTool>()
+        {
+            public JsonTool acquire(String url) throws Exception
+            {
+                Reader reader = importSupport.acquireReader(url);
+                if (reader == null)
+                {
+                    return null;
+                }
+                try
+                {
+                    JsonTool tool = new JsonTool();
+                    tool.setLazy(lazy);
+                    tool.initJSON(reader);
+                    if (tool.root == null)
+                    {
+                        return null;
+                    }
+                    tool.log = getLog();
+                    tool.importSupport = importSupport;
+                    return tool;
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+        });
+    }
+
     /**
      * Get JSON root object.
      * @return root object or array
@@ -290,6 +428,57 @@ public class JsonTool extends ImportSupport implements Iterable, Serializable
         return root == null ? null : root.get(key);
     }
 
+    /**
+     * Get a value using a JSON Pointer (RFC 6901), like <code>/foo/0/bar</code>.
+     * @param pointer JSON pointer
+     * @return pointed value, or null
+     * @since VelocityTools 3.1
+     */
+    public Object pointer(String pointer)
+    {
+        return root == null ? null : root.pointer(pointer);
+    }
+
+    /**
+     * Get a value using a dotted path, like <code>foo[0].bar</code>.
+     * @param path dotted path
+     * @return value, or null
+     * @since VelocityTools 3.1
+     */
+    public Object path(String path)
+    {
+        return root == null ? null : root.path(path);
+    }
+
+    /**
+     * Serializes a value as JSON. The serialization happens when the result is rendered,
+     * directly into the template writer.
+     * @param value value to serialize
+     * @return renderable JSON output
+     * @since VelocityTools 3.1
+     */
+    public JsonSerializer.Output write(Object value)
+    {
+        return write(value, false);
+    }
+
+    /**
+     * Serializes a value as JSON, optionally pretty-printed. The serialization happens when
+     * the result is rendered, directly into the template writer.
+     * @param value value to serialize
+     * @param pretty whether to pretty-print the output
+     * @return renderable JSON output
+     * @since VelocityTools 3.1
+     */
+    public JsonSerializer.Output write(Object value, boolean pretty)
+    {
+        if (beanClasses == null)
+        {
+            return (pretty ? JsonSerializer.PRETTY : JsonSerializer.COMPACT).output(value);
+        }
+        return new JsonSerializer(pretty, beanClasses).output(value);
+    }
+
     /**
      * Iterate keys of root object.
      * @return iterator
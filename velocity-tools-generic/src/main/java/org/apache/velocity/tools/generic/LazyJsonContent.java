@@ -0,0 +1,620 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>Lazily parsed JSON object or array.</p>
+ * <p>The JSON source text is kept as is. Each container only indexes the
+ * offsets of its direct children the first time it is navigated, and the
+ * values of its children are only materialized (and then memoized) when
+ * accessed. Subtrees which are never navigated are merely skipped over, so
+ * syntax errors inside them are only reported if they are reached, as an
+ * {@link IllegalArgumentException}.</p>
+ * <p>Numbers are returned as {@link BigDecimal}, like in the default
+ * non-lazy mode.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+
+public class LazyJsonContent extends JsonContent
+{
+    /**
+     * JSON source text, shared by all containers of a document
+     */
+    private static final class Source
+    {
+        private final char[] chars;
+        private final int length;
+
+        private Source(char[] chars, int length)
+        {
+            this.chars = chars;
+            this.length = length;
+        }
+    }
+
+    /**
+     * marker for values not yet materialized
+     */
+    private static final Object UNSET = new Object();
+
+    private final Source source;
+
+    /**
+     * offset of the opening brace or bracket
+     */
+    private final int start;
+
+    /**
+     * offset following the closing brace or bracket, known once indexed
+     */
+    private int end = -1;
+
+    /**
+     * offsets of children values, null until indexed
+     */
+    private volatile int[] offsets = null;
+
+    /**
+     * number of children values
+     */
+    private int count = 0;
+
+    /**
+     * object keys towards their slot in offsets, null for arrays
+     */
+    private Map<String, Integer> slots = null;
+
+    /**
+     * memoized children values
+     */
+    private Object[] values = null;
+
+    private LazyJsonContent(Source source, int start)
+    {
+        this.source = source;
+        this.start = start;
+    }
+
+    /**
+     * Read the whole JSON text from a reader, without parsing it.
+     * @param reader JSON stream reader
+     * @return root JSON object or array
+     * @throws IOException if the reader fails
+     */
+    public static LazyJsonContent parse(Reader reader) throws IOException
+    {
+        char[] buffer = new char[8192];
+        int length = 0;
+        int read;
+        while ((read = reader.read(buffer, length, buffer.length - length)) != -1)
+        {
+            length += read;
+            if (length == buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return parse(buffer, length);
+    }
+
+    /**
+     * Wrap a JSON string, without parsing it.
+     * @param json JSON string
+     * @return root JSON object or array
+     */
+    public static LazyJsonContent parse(String json)
+    {
+        char[] chars = json.toCharArray();
+        return parse(chars, chars.length);
+    }
+
+    private static LazyJsonContent parse(char[] chars, int length)
+    {
+        Source source = new Source(chars, length);
+        int pos = skipWhitespace(source, 0);
+        if (pos == length || chars[pos] != '{' && chars[pos] != '[')
+        {
+            throw new IllegalArgumentException("Expecting JSON array or object");
+        }
+        return new LazyJsonContent(source, pos);
+    }
+
+    /* ---------------------- scanning --------------------------- */
+
+    private static IllegalArgumentException error(int pos, String message)
+    {
+        return new IllegalArgumentException("malformed JSON at offset " + pos + ": " + message);
+    }
+
+    private static int skipWhitespace(Source source, int pos)
+    {
+        char[] chars = source.chars;
+        while (pos < source.length)
+        {
+            char c = chars[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+            {
+                break;
+            }
+            ++pos;
+        }
+        return pos;
+    }
+
+    private static int expect(Source source, int pos, char expected)
+    {
+        if (pos >= source.length || source.chars[pos] != expected)
+        {
+            throw error(pos, "expecting '" + expected + "'");
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Skip a string starting at the given opening quote
+     * @return offset following the closing quote
+     */
+    private static int skipString(Source source, int pos)
+    {
+        char[] chars = source.chars;
+        for (int p = pos + 1; p < source.length; ++p)
+        {
+            char c = chars[p];
+            if (c == '\\')
+            {
+                ++p;
+            }
+            else if (c == '"')
+            {
+                return p + 1;
+            }
+        }
+        throw error(pos, "unterminated string");
+    }
+
+    /**
+     * Skip any value starting at the given offset, without validating nested values
+     * @return offset following the value
+     */
+    private static int skipValue(Source source, int pos)
+    {
+        char[] chars = source.chars;
+        if (pos >= source.length)
+        {
+            throw error(pos, "expecting value");
+        }
+        switch (chars[pos])
+        {
+            case '{':
+            case '[':
+            {
+                int depth = 0;
+                int p = pos;
+                while (p < source.length)
+                {
+                    char c = chars[p];
+                    if (c == '"')
+                    {
+                        p = skipString(source, p);
+                        continue;
+                    }
+                    if (c == '{' || c == '[')
+                    {
+                        ++depth;
+                    }
+                    else if ((c == '}' || c == ']') && --depth == 0)
+                    {
+                        return p + 1;
+                    }
+                    ++p;
+                }
+                throw error(pos, "unterminated container");
+            }
+            case '"':
+                return skipString(source, pos);
+            default:
+            {
+                int p = pos;
+                while (p < source.length)
+                {
+                    char c = chars[p];
+                    if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t')
+                    {
+                        break;
+                    }
+                    ++p;
+                }
+                if (p == pos)
+                {
+                    throw error(pos, "expecting value");
+                }
+                return p;
+            }
+        }
+    }
+
+    /**
+     * Read a string between the given opening quote and the offset following the closing quote
+     */
+    private static String readString(Source source, int pos, int end)
+    {
+        char[] chars = source.chars;
+        int last = end - 1;
+        int backslash = -1;
+        for (int p = pos + 1; p < last; ++p)
+        {
+            if (chars[p] == '\\')
+            {
+                backslash = p;
+                break;
+            }
+        }
+        if (backslash == -1)
+        {
+            return new String(chars, pos + 1, last - pos - 1);
+        }
+        StringBuilder builder = new StringBuilder(last - pos);
+        builder.append(chars, pos + 1, backslash - pos - 1);
+        for (int p = backslash; p < last; ++p)
+        {
+            char c = chars[p];
+            if (c != '\\')
+            {
+                builder.append(c);
+                continue;
+            }
+            c = chars[++p];
+            switch (c)
+            {
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'u':
+                {
+                    if (p + 4 >= last)
+                    {
+                        throw error(p, "invalid unicode escape");
+                    }
+                    try
+                    {
+                        builder.append((char)Integer.parseInt(new String(chars, p + 1, 4), 16));
+                    }
+                    catch (NumberFormatException nfe)
+                    {
+                        throw error(p, "invalid unicode escape");
+                    }
+                    p += 4;
+                    break;
+                }
+                default: builder.append(c); break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Materialize the value starting at the given offset
+     */
+    private Object readValue(int pos)
+    {
+        char[] chars = source.chars;
+        switch (chars[pos])
+        {
+            case '{':
+            case '[':
+                return new LazyJsonContent(source, pos);
+            case '"':
+                return readString(source, pos, skipString(source, pos));
+            default:
+            {
+                int end = skipValue(source, pos);
+                int len = end - pos;
+                if (len == 4 && chars[pos] == 't' && chars[pos + 1] == 'r' && chars[pos + 2] == 'u' && chars[pos + 3] == 'e')
+                {
+                    return Boolean.TRUE;
+                }
+                if (len == 5 && chars[pos] == 'f' && chars[pos + 1] == 'a' && chars[pos + 2] == 'l' && chars[pos + 3] == 's' && chars[pos + 4] == 'e')
+                {
+                    return Boolean.FALSE;
+                }
+                if (len == 4 && chars[pos] == 'n' && chars[pos + 1] == 'u' && chars[pos + 2] == 'l' && chars[pos + 3] == 'l')
+                {
+                    return null;
+                }
+                try
+                {
+                    return new BigDecimal(chars, pos, len);
+                }
+                catch (NumberFormatException nfe)
+                {
+                    throw error(pos, "invalid value");
+                }
+            }
+        }
+    }
+
+    /**
+     * Index the offsets of direct children, if not already done
+     */
+    private void index()
+    {
+        if (offsets == null)
+        {
+            synchronized (this)
+            {
+                if (offsets == null)
+                {
+                    buildIndex();
+                }
+            }
+        }
+    }
+
+    private void buildIndex()
+    {
+        char[] chars = source.chars;
+        boolean object = chars[start] == '{';
+        char close = object ? '}' : ']';
+        Map<String, Integer> keys = object ? new LinkedHashMap<String, Integer>() : null;
+        int[] offs = new int[8];
+        int n = 0;
+        int pos = skipWhitespace(source, start + 1);
+        if (pos < source.length && chars[pos] == close)
+        {
+            end = pos + 1;
+        }
+        else
+        {
+            while (true)
+            {
+                if (object)
+                {
+                    if (pos >= source.length || chars[pos] != '"')
+                    {
+                        throw error(pos, "expecting key");
+                    }
+                    int keyEnd = skipString(source, pos);
+                    /* like for a map, the last duplicate key wins */
+                    keys.put(readString(source, pos, keyEnd), Integer.valueOf(n));
+                    pos = skipWhitespace(source, keyEnd);
+                    pos = skipWhitespace(source, expect(source, pos, ':'));
+                }
+                if (n == offs.length)
+                {
+                    offs = Arrays.copyOf(offs, n * 2);
+                }
+                offs[n++] = pos;
+                pos = skipWhitespace(source, skipValue(source, pos));
+                if (pos >= source.length)
+                {
+                    throw error(pos, "unexpected end of input");
+                }
+                char c = chars[pos];
+                if (c == close)
+                {
+                    end = pos + 1;
+                    break;
+                }
+                pos = skipWhitespace(source, expect(source, pos, ','));
+            }
+        }
+        count = n;
+        slots = keys;
+        values = new Object[n];
+        Arrays.fill(values, UNSET);
+        offsets = offs;
+    }
+
+    /**
+     * Get the memoized value of the given slot
+     */
+    private synchronized Object value(int slot)
+    {
+        Object value = values[slot];
+        if (value == UNSET)
+        {
+            value = readValue(offsets[slot]);
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    /* ---------------------- JsonContent API --------------------------- */
+
+    /**
+     * Get a value from root array
+     * @param index array index
+     * @return value, or null
+     */
+    @Override
+    public Object get(int index)
+    {
+        index();
+        if (slots != null)
+        {
+            return get(String.valueOf(index));
+        }
+        return index < 0 || index >= count ? null : value(index);
+    }
+
+    /**
+     * Get a property from root object
+     * @param key map key
+     * @return property value, or null
+     */
+    @Override
+    public Object get(String key)
+    {
+        index();
+        if (slots == null)
+        {
+            try
+            {
+                return get(Integer.parseInt(key));
+            }
+            catch (NumberFormatException nfe)
+            {
+                return null;
+            }
+        }
+        Integer slot = slots.get(key);
+        return slot == null ? null : value(slot.intValue());
+    }
+
+    /**
+     * Iterate keys of root object.
+     * @return iterator
+     */
+    @Override
+    public Iterator<String> keys()
+    {
+        Set<String> keySet = keySet();
+        return keySet == null ? null : keySet.iterator();
+    }
+
+    /**
+     * Get set of root object keys.
+     * @return keys set
+     */
+    @Override
+    public Set<String> keySet()
+    {
+        index();
+        return slots == null ? null : Collections.unmodifiableSet(slots.keySet());
+    }
+
+    /**
+     * Get an iterator. For a root object, returns an iterator over key names. For a root array, returns an iterator
+     * over contained objects.
+     * @return iterator
+     */
+    @Override
+    public Iterator iterator()
+    {
+        index();
+        if (slots != null)
+        {
+            return keys();
+        }
+        return new Iterator()
+        {
+            private int next = 0;
+
+            public boolean hasNext()
+            {
+                return next < count;
+            }
+
+            public Object next()
+            {
+                if (next >= count)
+                {
+                    throw new NoSuchElementException();
+                }
+                return value(next++);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Get size of root object or array.
+     * @return size
+     */
+    @Override
+    public int size()
+    {
+        index();
+        return slots == null ? count : slots.size();
+    }
+
+    /**
+     * Returns the JSON source text of this object or array
+     * @return JSON representation of the root object or array
+     */
+    @Override
+    public String toString()
+    {
+        index();
+        return new String(source.chars, start, end - start);
+    }
+
+    /**
+     * Writes the JSON source text of this object or array, escaped for HTML embedding
+     * like {@link JsonSerializer} strings
+     * @param writer target writer
+     * @throws IOException if the writer fails
+     */
+    void writeTo(Writer writer) throws IOException
+    {
+        index();
+        JsonSerializer.writeRaw(source.chars, start, end - start, writer);
+    }
+
+    /**
+     * Check if wrapped object is null
+     * @return false
+     */
+    @Override
+    public boolean isNull()
+    {
+        return false;
+    }
+
+    /**
+     * Check if wrapped object is a JSON object
+     * @return true if wrapped object is a JSON object
+     */
+    @Override
+    public boolean isObject()
+    {
+        return source.chars[start] == '{';
+    }
+
+    /**
+     * Check if wrapped object is a JSON array
+     * @return true if wrapped object is a JSON array
+     */
+    @Override
+    public boolean isArray()
+    {
+        return source.chars[start] == '[';
+    }
+}
@@ -0,0 +1,170 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * <p>Compiled link pattern, returned by {@link LinkTool#template(Object, Object...)}.</p>
+ * <p>A link template holds the fully rendered and encoded link up to its query
+ * data, followed by a list of parameter slots whose keys are encoded beforehand.
+ * Producing a link out of it only encodes the slot values and concatenates
+ * them with the constant parts, which is much cheaper than building a new
+ * {@link LinkTool} instance for each link when rendering many links
+ * that only differ by a few parameter values.</p>
+ * <p>Template example:</p>
+ * <pre>
+ * #set( $product = $link.template('/product', 'id', 'ref') )
+ * #foreach( $p in $products )
+ *   &lt;a href="$product.with($p.id, 'list')"&gt;$p.name&lt;/a&gt;
+ * #end
+ * </pre>
+ * <p>Slot values are rendered like {@link LinkTool#param(Object, Object)} values:
+ * <code>null</code> gives an empty value, and lists or arrays give one query
+ * pair per element. Integral numbers and booleans are not run through the URL encoder.
+ * Slots after the last given value are omitted.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+
+public class LinkTemplate implements Serializable
+{
+    private static final long serialVersionUID = 2875262810457436581L;
+
+    private final LinkTool link;
+    private final String[] keys;
+    private final String[] slots;
+    private final String prefix;
+    private final String suffix;
+    private final String firstDelim;
+
+    /**
+     * Compiles the specified link into a template. Any query data
+     * found in the link under one of the slot keys is dropped.
+     * @param link source link
+     * @param keys slot keys
+     */
+    public LinkTemplate(LinkTool link, Object... keys)
+    {
+        LinkTool base = link.duplicate(true);
+        int count = keys == null ? 0 : keys.length;
+        this.keys = new String[count];
+        this.slots = new String[count];
+        for (int i = 0; i < count; ++i)
+        {
+            this.keys[i] = String.valueOf(keys[i]);
+            this.slots[i] = link.encode(this.keys[i]) + '=';
+            base.removeParam(this.keys[i]);
+        }
+
+        String anchor = base.getAnchor();
+        base.setFragment(null);
+        String url = base.toString();
+        this.prefix = url == null ? "" : url;
+
+        if (anchor == null)
+        {
+            this.suffix = "";
+        }
+        else
+        {
+            base.setFragment(anchor);
+            String full = base.toString();
+            int sharp = full.lastIndexOf('#');
+            this.suffix = sharp == -1 ? "" : full.substring(sharp);
+        }
+
+        if (prefix.indexOf('?') == -1)
+        {
+            firstDelim = "?";
+        }
+        else if (prefix.endsWith("?"))
+        {
+            firstDelim = "";
+        }
+        else
+        {
+            firstDelim = link.queryDelim;
+        }
+        this.link = base;
+    }
+
+    /**
+     * Returns the slot keys of this template.
+     * @return slot keys
+     */
+    public String[] getKeys()
+    {
+        return keys.clone();
+    }
+
+    /**
+     * Renders a link with the specified slot values.
+     * @param values slot values, in the order of the slot keys
+     * @return rendered link
+     */
+    public String with(Object... values)
+    {
+        int count = values == null ? 0 : Math.min(values.length, slots.length);
+        StringBuilder out = new StringBuilder(prefix.length() + suffix.length() + 24 * count);
+        out.append(prefix);
+        String delim = firstDelim;
+        for (int i = 0; i < count; ++i)
+        {
+            out.append(delim);
+            delim = link.queryDelim;
+            Object value = values[i];
+            if (value instanceof List || value instanceof Object[])
+            {
+                out.append(link.toQuery(keys[i], value));
+            }
+            else
+            {
+                out.append(slots[i]);
+                if (value == null)
+                {
+                    /* Interpret null as "no value" */
+                }
+                else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                    || value instanceof Byte || value instanceof Boolean)
+                {
+                    out.append(value);
+                }
+                else
+                {
+                    out.append(link.encode(value));
+                }
+            }
+        }
+        out.append(suffix);
+        return out.toString();
+    }
+
+    /**
+     * Returns the link rendered without any slot.
+     * @return rendered link
+     */
+    public String toString()
+    {
+        return prefix + suffix;
+    }
+}
@@ -19,8 +19,10 @@ package org.apache.velocity.tools.generic;
  * under the License.
  */
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.net.URI;
 import java.net.URLDecoder;
@@ -31,6 +33,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.Renderable;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.ToolContext;
 import org.apache.velocity.tools.config.DefaultKey;
@@ -60,6 +64,14 @@ import org.apache.velocity.tools.config.ValidScope;
  * a new instance of LinkTool. This facilitates greatly the repeated use
  * of the LinkTool in Velocity and leads to an elegant syntax.</p>
  *
+ * <p>Since the returned instances are never modified afterwards, they
+ * share their query data with the instance they derive from until
+ * one of them actually changes it, and they memoize both their encoded
+ * query string and their rendered string. Deriving many links from a
+ * common base (as in the example below) thus only encodes the base
+ * query once, and each link is rendered directly into the template
+ * output.</p>
+ *
  * <p>Template example(s):</p>
  * <pre>
  *   #set( $base = $link.relative('MyPage.vm').anchor('view') )
@@ -83,7 +95,7 @@ import org.apache.velocity.tools.config.ValidScope;
 @DefaultKey("link")
 @SkipSetters
 @ValidScope(Scope.REQUEST)
-public class LinkTool extends SafeConfig implements Cloneable, Serializable
+public class LinkTool extends SafeConfig implements Cloneable, Serializable, Renderable
 {
     private static final long serialVersionUID = -9178414982270037545L;
 
@@ -124,6 +136,13 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
     protected boolean opaque;
     protected final LinkTool self;
 
+    /* whether the query map is shared with other instances */
+    private transient boolean queryShared;
+    /* memoized encoded query string */
+    private transient String encodedQuery;
+    /* memoized string representation */
+    private transient String rendered;
+
 
     /**
      * Default constructor. Tool typically is configured before use.
@@ -232,7 +251,9 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
      * Equivalent to clone, but with no checked exceptions.
      * If for some unfathomable reason clone() doesn't work,
      * this will throw a RuntimeException.  If doing a deep
-     * clone, then the parameter Map will also be cloned.
+     * clone, then the parameter Map will be shared with the new
+     * instance until one of them modifies it, and the encoded
+     * query string is computed beforehand so that both can reuse it.
      * @param deep whether to make a deep copy
      * @return new LinkTool
      */
@@ -240,12 +261,12 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
     {
         try
         {
-            LinkTool that = (LinkTool)this.clone();
             if (deep && query != null)
             {
-                that.query = new LinkedHashMap(query);
+                getEncodedQuery();
+                queryShared = true;
             }
-            return that;
+            return (LinkTool)this.clone();
         }
         catch (CloneNotSupportedException e)
         {
@@ -255,9 +276,38 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
         }
     }
 
+    /**
+     * Discards the memoized encoded query and string representation
+     * of this instance. Subclasses which modify the link fields without
+     * going through the provided setters must call this method.
+     */
+    protected void invalidate()
+    {
+        encodedQuery = null;
+        rendered = null;
+    }
+
+    /**
+     * Returns the query map, ready to be modified: if it is shared
+     * with other instances, it is first copied. List values are
+     * shared as well and must be copied before being modified.
+     * @return query map, or null
+     */
+    private Map mutableQuery()
+    {
+        if (queryShared && query != null)
+        {
+            query = new LinkedHashMap(query);
+        }
+        queryShared = false;
+        invalidate();
+        return query;
+    }
+
     public void setCharacterEncoding(String chrst)
     {
         this.charset = chrst;
+        invalidate();
     }
 
     /**
@@ -275,6 +325,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
     public void setXHTML(boolean xhtml)
     {
         queryDelim = (xhtml) ? XHTML_QUERY_DELIMITER : HTML_QUERY_DELIMITER;
+        invalidate();
     }
 
     /**
@@ -300,6 +351,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
     public void setForceRelative(boolean forceRelative)
     {
         this.forceRelative = forceRelative;
+        invalidate();
     }
 
     /**
@@ -325,6 +377,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
                 this.scheme = scheme.substring(0, scheme.length() - 1);
             }
         }
+        invalidate();
     }
 
     /**
@@ -334,6 +387,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
     public void setUserInfo(Object obj)
     {
         this.user = obj == null ? null : String.valueOf(obj);
+        invalidate();
     }
 
     /**
@@ -343,6 +397,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
     public void setHost(Object obj)
     {
         this.host = obj == null ? null : String.valueOf(obj);
+        invalidate();
     }
 
     /**
@@ -373,6 +428,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
                 this.port = -2; // use this to mean error
             }
         }
+        invalidate();
     }
 
     /**
@@ -395,6 +451,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
                 this.path = '/' + this.path;
             }
         }
+        invalidate();
     }
 
     /**
@@ -459,6 +516,8 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
      */
     public void setQuery(Object obj)
     {
+        queryShared = false;
+        invalidate();
         if (obj == null)
         {
             this.query = null;
@@ -572,7 +631,17 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
     {
         // use all keys as strings, even null -> "null"
         key = String.valueOf(key);
+        // a new key only adds a pair to the current encoded query
+        String prefix = null;
         if (this.query == null)
+        {
+            prefix = "";
+        }
+        else if (!this.query.containsKey(key))
+        {
+            prefix = this.encodedQuery;
+        }
+        if (mutableQuery() == null)
         {
             this.query = new LinkedHashMap();
             putParam(key, value);
@@ -585,6 +654,11 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
         {
             putParam(key, value);
         }
+        if (prefix != null)
+        {
+            String pair = toQuery(key, value);
+            this.encodedQuery = prefix.length() == 0 ? pair : prefix + queryDelim + pair;
+        }
     }
 
     private void appendParam(String key, Object value)
@@ -594,7 +668,10 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
             Object cur = query.get(key);
             if (cur instanceof List)
             {
-                addToList((List)cur, value);
+                // the list may be shared with other instances
+                List vals = new ArrayList((List)cur);
+                addToList(vals, value);
+                putParam(key, vals);
             }
             else
             {
@@ -669,7 +746,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
             }
             if (obj != null)
             {
-                if (query == null)
+                if (mutableQuery() == null)
                 {
                     this.query = new LinkedHashMap();
                 }
@@ -694,7 +771,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
         if (query != null)
         {
             key = String.valueOf(key);
-            return query.remove(key);
+            return mutableQuery().remove(key);
         }
         return null;
     }
@@ -889,6 +966,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
                 this.fragment = null;
             }
         }
+        invalidate();
     }
 
     /**
@@ -929,6 +1007,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
         if (uri.isOpaque())
         {
             this.opaque = true;
+            invalidate();
             if (uri.getSchemeSpecificPart() != null)
             {
                 // path is used as scheme-specific part
@@ -1023,7 +1102,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
                     {
                         return null;
                     }
-                    return new URI(null, null, null, -1, path, toQuery(query), fragment);
+                    return new URI(null, null, null, -1, path, getEncodedQuery(), fragment);
                 }
                 else
                 {
@@ -1033,7 +1112,7 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
                     {
                         return null;
                     }
-                    return new URI(scheme, user, host, port, path, toQuery(query), fragment);
+                    return new URI(scheme, user, host, port, path, getEncodedQuery(), fragment);
                 }
             }
         }
@@ -1573,7 +1652,21 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
      */
     public String getQuery()
     {
-        return toQuery(this.query);
+        return getEncodedQuery();
+    }
+
+    /**
+     * Returns the encoded query string, computing it at most
+     * once per state of the query data.
+     * @return encoded query string, or null
+     */
+    protected String getEncodedQuery()
+    {
+        if (encodedQuery == null && query != null)
+        {
+            encodedQuery = toQuery(query);
+        }
+        return encodedQuery;
     }
 
     /**
@@ -1639,6 +1732,27 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
         return copy;
     }
 
+    /**
+     * <p>Compiles a link with the specified path (or with the current path,
+     * if <code>null</code>) into a {@link LinkTemplate} whose query parameter
+     * slots have the specified keys. The template renders links much faster
+     * than repeated calls to {@link #param(Object, Object)}:</p>
+     * <pre>
+     * #set( $product = $link.template('/product', 'id', 'ref') )
+     * &lt;a href="$product.with($id, 'list')"&gt;...&lt;/a&gt;
+     * </pre>
+     *
+     * @param pth link path, or null
+     * @param keys keys of the query parameter slots
+     * @return a new LinkTemplate
+     * @since VelocityTools 3.1
+     */
+    public LinkTemplate template(Object pth, Object... keys)
+    {
+        LinkTool base = pth == null ? this : path(pth);
+        return new LinkTemplate(base, keys);
+    }
+
     /**
      * This method can do two different things.  If you pass in a
      * boolean, it will create a new LinkTool duplicate and call
@@ -1734,16 +1848,42 @@ public class LinkTool extends SafeConfig implements Cloneable, Serializable
      */
     public String toString()
     {
-        URI uri = createURI();
-        if (uri == null)
+        if (rendered == null)
         {
-            return null;
+            URI uri = createURI();
+            if (uri == null)
+            {
+                return null;
+            }
+            if (query != null)
+            {
+                rendered = decodeQueryPercents(uri.toString());
+            }
+            else
+            {
+                rendered = uri.toString();
+            }
         }
-        if (query != null)
+        return rendered;
+    }
+
+    /**
+     * Writes the string representation of this link directly
+     * into the template output.
+     * @param context current context
+     * @param writer output writer
+     * @return whether something was rendered
+     * @throws IOException if writing failed
+     */
+    public boolean render(InternalContextAdapter context, Writer writer) throws IOException
+    {
+        String str = toString();
+        if (str == null)
         {
-            return decodeQueryPercents(uri.toString());
+            return false;
         }
-        return uri.toString();
+        writer.write(str);
+        return true;
     }
 
     /**
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.Scope;
@@ -101,6 +102,16 @@ public class LoopTool extends SafeConfig implements Serializable
     private ManagedIterator last;
     private Map<String,Object> lastSyncedValues;
 
+    /* outermost iterator on the stack for each loop name */
+    private Map<String,ManagedIterator> namedIterators = new HashMap<String,ManagedIterator>();
+
+    /* innermost iterator on the stack for each sync'ed iterator name */
+    private Map<String,ManagedIterator> syncedIterators = new HashMap<String,ManagedIterator>();
+
+    /* parsed "property_loopname" keys, shared by all instances */
+    private static final Map<String,MetaKey> metaKeys = new ConcurrentHashMap<String,MetaKey>();
+    private static final int MAX_META_KEYS = 1024;
+
     /**
      * <p>Tells the LoopTool to watch the specified Array, Collection, Map,
      * Iterator, Iterable, Enumeration or POJO with an iterator() method
@@ -122,8 +133,7 @@ public class LoopTool extends SafeConfig implements Serializable
         }
 
         ManagedIterator managed = manage(iterator, null);
-        iterators.push(managed);
-        this.last = managed;
+        push(managed);
         return managed;
     }
 
@@ -154,8 +164,7 @@ public class LoopTool extends SafeConfig implements Serializable
         }
 
         ManagedIterator managed = manage(iterator, name);
-        iterators.push(managed);
-        this.last = managed;
+        push(managed);
         return managed;
     }
 
@@ -196,13 +205,10 @@ public class LoopTool extends SafeConfig implements Serializable
     public void stop(String name)
     {
         // just stop the matching one
-        for (ManagedIterator iterator : iterators)
+        ManagedIterator iterator = findIterator(name);
+        if (iterator != null)
         {
-            if (iterator.getName().equals(name))
-            {
-                iterator.stop();
-                break;
-            }
+            iterator.stop();
         }
     }
 
@@ -248,6 +254,10 @@ public class LoopTool extends SafeConfig implements Serializable
                     iterator.stop();
                 }
             }
+            if (found)
+            {
+                reindex();
+            }
         }
     }
 
@@ -408,16 +418,12 @@ public class LoopTool extends SafeConfig implements Serializable
      */
     public Object get(String key)
     {
-        // search all iterators in reverse
+        // look for the innermost iterator responsible for synced
         // (so nested ones take priority)
-        // for one that is responsible for synced
-        for (int i=iterators.size() - 1; i >= 0; i--)
+        ManagedIterator synced = syncedIterators.get(key);
+        if (synced != null)
         {
-            ManagedIterator iterator = iterators.get(i);
-            if (iterator.isSyncedWith(key))
-            {
-                return iterator.get(key);
-            }
+            return synced.get(key);
         }
         if (lastSyncedValues != null)
         {
@@ -427,28 +433,24 @@ public class LoopTool extends SafeConfig implements Serializable
                 return syncedValue;
             }
         }
-        // shortest key would be "last_X" where X is the loop name
-        if (key == null || key.length() < 6)
+        if (key == null)
         {
             return null;
         }
-        if (key.startsWith("last_"))
+        MetaKey meta = MetaKey.get(key);
+        switch (meta.property)
         {
-            return isLast(key.substring(5, key.length()));
-        }
-        if (key.startsWith("count_"))
-        {
-            return getCount(key.substring(6, key.length()));
-        }
-        if (key.startsWith("index_"))
-        {
-            return getIndex(key.substring(6, key.length()));
-        }
-        if (key.startsWith("first_"))
-        {
-            return isFirst(key.substring(6, key.length()));
+            case LAST:
+                return isLast(meta.name);
+            case COUNT:
+                return getCount(meta.name);
+            case INDEX:
+                return getIndex(meta.name);
+            case FIRST:
+                return isFirst(meta.name);
+            default:
+                return null;
         }
-        return null;
     }
 
     /**
@@ -479,12 +481,11 @@ public class LoopTool extends SafeConfig implements Serializable
      */
     public Integer getIndex()
     {
-        Integer count = getCount();
-        if (count == null || count == 0)
+        if (last == null || last.getCount() == 0)
         {
             return null;
         }
-        return count - 1;
+        return last.getIndex();
     }
 
     /**
@@ -498,12 +499,12 @@ public class LoopTool extends SafeConfig implements Serializable
      */
     public Integer getIndex(String name)
     {
-        Integer count = getCount(name);
-        if (count == null || count == 0)
+        ManagedIterator iterator = findIterator(name);
+        if (iterator == null || iterator.getCount() == 0)
         {
             return null;
         }
-        return count - 1;
+        return iterator.getIndex();
     }
 
     /**
@@ -575,15 +576,29 @@ public class LoopTool extends SafeConfig implements Serializable
      */
     protected ManagedIterator findIterator(String name)
     {
-        // look for the one with the specified name
-        for (ManagedIterator iterator : iterators)
+        return namedIterators.get(name);
+    }
+
+    /**
+     * Pushes a new iterator on the stack, and indexes it by name
+     * if there isn't already one with the same name on the stack.
+     * @param managed new iterator
+     */
+    private void push(ManagedIterator managed)
+    {
+        iterators.push(managed);
+        this.last = managed;
+        if (!namedIterators.containsKey(managed.getName()))
+        {
+            namedIterators.put(managed.getName(), managed);
+        }
+        if (managed.synced != null)
         {
-            if (iterator.getName().equals(name))
+            for (String key : managed.synced.keySet())
             {
-                return iterator;
+                syncedIterators.put(key, managed);
             }
         }
-        return null;
     }
 
     /**
@@ -595,9 +610,37 @@ public class LoopTool extends SafeConfig implements Serializable
     {
         ManagedIterator i = iterators.pop();
         this.lastSyncedValues = i.getLastSyncedValues();
+        reindex();
         return i;
     }
 
+    /**
+     * Rebuilds the indexes of the iterators currently on the stack,
+     * by loop name and by sync'ed iterator name.
+     */
+    private void reindex()
+    {
+        namedIterators.clear();
+        syncedIterators.clear();
+        for (int i = iterators.size() - 1; i >= 0; i--)
+        {
+            ManagedIterator iterator = iterators.get(i);
+            // the outermost one wins for names
+            namedIterators.put(iterator.getName(), iterator);
+            // the innermost one wins for sync'ed iterators
+            if (iterator.synced != null)
+            {
+                for (String key : iterator.synced.keySet())
+                {
+                    if (!syncedIterators.containsKey(key))
+                    {
+                        syncedIterators.put(key, iterator);
+                    }
+                }
+            }
+        }
+    }
+
 
     /**
      * Wraps access to {@link ClassUtils#getIterator} is a
@@ -997,6 +1040,10 @@ public class LoopTool extends SafeConfig implements Serializable
                 synced = new HashMap<String,SyncedIterator>();
             }
             synced.put(name, new SyncedIterator(parallel));
+            if (owner.iterators.contains(this))
+            {
+                owner.reindex();
+            }
             return this;
         }
 
@@ -1033,6 +1080,67 @@ public class LoopTool extends SafeConfig implements Serializable
         EXCLUDE, STOP;
     }
 
+    /**
+     * Parsed form of the abbreviated syntax for properties
+     * of outer loops, like {@code first_foo} or {@code count_foo}.
+     */
+    private static final class MetaKey
+    {
+        private enum Property { LAST, COUNT, INDEX, FIRST, NONE }
+
+        private static final MetaKey NONE = new MetaKey(Property.NONE, null);
+
+        private final Property property;
+        private final String name;
+
+        private MetaKey(Property property, String name)
+        {
+            this.property = property;
+            this.name = name;
+        }
+
+        private static MetaKey get(String key)
+        {
+            MetaKey meta = metaKeys.get(key);
+            if (meta == null)
+            {
+                meta = parse(key);
+                // keys come from templates, but don't let the cache grow indefinitely
+                if (metaKeys.size() < MAX_META_KEYS)
+                {
+                    metaKeys.put(key, meta);
+                }
+            }
+            return meta;
+        }
+
+        private static MetaKey parse(String key)
+        {
+            // shortest key would be "last_X" where X is the loop name
+            if (key.length() < 6)
+            {
+                return NONE;
+            }
+            if (key.startsWith("last_"))
+            {
+                return new MetaKey(Property.LAST, key.substring(5));
+            }
+            if (key.startsWith("count_"))
+            {
+                return new MetaKey(Property.COUNT, key.substring(6));
+            }
+            if (key.startsWith("index_"))
+            {
+                return new MetaKey(Property.INDEX, key.substring(6));
+            }
+            if (key.startsWith("first_"))
+            {
+                return new MetaKey(Property.FIRST, key.substring(6));
+            }
+            return NONE;
+        }
+    }
+
     /**
      * Composition class which associates an {@link Action} and {@link Condition}
      * for a {@link ManagedIterator}.
@@ -43,6 +43,13 @@ import org.apache.velocity.tools.config.ValidScope;
  * thrown in template halt rendering.  It should be sufficient
  * debugging feedback that Velocity will render the reference
  * literally. (e.g. $math.div(1, 0) renders as '$math.div(1, 0)')</li>
+ *
+ * <li>The two-arguments <code>add</code>, <code>sub</code>, <code>mul</code> and
+ * <code>div</code> methods compute {@link Integer}, {@link Long} and {@link Double}
+ * operands directly on primitives, without conversion nor intermediate array,
+ * and give the same results as the general path, which is only used for other
+ * operands (strings, other {@link Number} classes) or when the result could lose
+ * precision.</li>
  * </ul>
  * <p>Example tools.xml config:</p>
  * <pre>
@@ -64,23 +71,100 @@ public class MathTool extends FormatConfig implements Serializable
 {
     private static final long serialVersionUID = 3207828679772113341L;
 
+    /**
+     * Integral values beyond this bound are not exactly represented by doubles.
+     */
+    private static final long MAX_EXACT = 1L << 53;
+
+    /**
+     * Cached small Integer results, beyond the range cached by {@link Integer#valueOf(int)}.
+     */
+    private static final int CACHE_LOW = -128, CACHE_HIGH = 1023;
+    private static final Integer[] CACHE = new Integer[CACHE_HIGH - CACHE_LOW + 1];
+    static
+    {
+        for (int i = 0; i < CACHE.length; ++i)
+        {
+            CACHE[i] = Integer.valueOf(i + CACHE_LOW);
+        }
+    }
+
     public Number add(Object num1, Object num2)
     {
+        if (isIntegral(num1) && isIntegral(num2))
+        {
+            long a = ((Number)num1).longValue(), b = ((Number)num2).longValue();
+            if (isExact(a) && isExact(b) && isExact(a + b))
+            {
+                return box(a + b);
+            }
+        }
+        else if (isFastFloating(num1, num2))
+        {
+            return Double.valueOf(((Number)num1).doubleValue() + ((Number)num2).doubleValue());
+        }
         return add(new Object[] { num1, num2 });
     }
 
     public Number sub(Object num1, Object num2)
     {
+        if (isIntegral(num1) && isIntegral(num2))
+        {
+            long a = ((Number)num1).longValue(), b = ((Number)num2).longValue();
+            if (isExact(a) && isExact(b) && isExact(a - b))
+            {
+                return box(a - b);
+            }
+        }
+        else if (isFastFloating(num1, num2))
+        {
+            return Double.valueOf(((Number)num1).doubleValue() - ((Number)num2).doubleValue());
+        }
         return sub(new Object[] { num1, num2 });
     }
 
     public Number mul(Object num1, Object num2)
     {
+        if (isIntegral(num1) && isIntegral(num2))
+        {
+            long a = ((Number)num1).longValue(), b = ((Number)num2).longValue();
+            // a product below the bound cannot have overflowed
+            if (isExact(a) && isExact(b) && Math.abs((double)a * (double)b) < MAX_EXACT)
+            {
+                return box(a * b);
+            }
+        }
+        else if (isFastFloating(num1, num2))
+        {
+            return Double.valueOf(((Number)num1).doubleValue() * ((Number)num2).doubleValue());
+        }
         return mul(new Object[] { num1, num2 });
     }
 
     public Number div(Object num1, Object num2)
     {
+        if (isIntegral(num1) && isIntegral(num2))
+        {
+            long a = ((Number)num1).longValue(), b = ((Number)num2).longValue();
+            if (isExact(a) && isExact(b))
+            {
+                if (b == 0)
+                {
+                    return null;
+                }
+                // below the bound, an inexact quotient cannot be rounded to an integer
+                return a % b == 0 ? box(a / b) : Double.valueOf((double)a / (double)b);
+            }
+        }
+        else if (isFastFloating(num1, num2))
+        {
+            double denominator = ((Number)num2).doubleValue();
+            if (denominator == 0.0)
+            {
+                return null;
+            }
+            return Double.valueOf(((Number)num1).doubleValue() / denominator);
+        }
         return div(new Object[] { num1, num2 });
     }
 
@@ -559,8 +643,7 @@ public class MathTool extends FormatConfig implements Serializable
         double random = (diff * Math.random()) + n1.doubleValue();
 
         // check if either of the args were floating points
-        String in = n1.toString() + n2.toString();
-        if (in.indexOf('.') < 0)
+        if (!hasFloatingPoint(n1) && !hasFloatingPoint(n2))
         {
             // args were whole numbers, so return the same
             return matchType(n1, n2, Math.floor(random));
@@ -710,7 +793,7 @@ public class MathTool extends FormatConfig implements Serializable
                 {
                     break;
                 }
-                else if (hasFloatingPoint(n.toString()))
+                else if (hasFloatingPoint(n))
                 {
                     isIntegral = false;
                     break;
@@ -722,13 +805,9 @@ public class MathTool extends FormatConfig implements Serializable
         {
             return new Double(out);
         }
-        else if (out > Integer.MAX_VALUE || out < Integer.MIN_VALUE)
-        {
-            return Long.valueOf((long)out);
-        }
         else
         {
-            return Integer.valueOf((int)out);
+            return box((long)out);
         }
     }
 
@@ -741,6 +820,74 @@ public class MathTool extends FormatConfig implements Serializable
         return value.indexOf('.') >= 0;
     }
 
+    /**
+     * @param value target value
+     * @return whether it renders with a decimal separator, without rendering
+     *         integral values of the standard classes
+     */
+    private boolean hasFloatingPoint(Number value)
+    {
+        return !isIntegral(value) && !(value instanceof Short) && !(value instanceof Byte)
+            && hasFloatingPoint(value.toString());
+    }
+
+    /**
+     * @param value operand
+     * @return whether this operand can be handled as a long
+     */
+    private static boolean isIntegral(Object value)
+    {
+        return value instanceof Integer || value instanceof Long;
+    }
+
+    /**
+     * @param value integral value
+     * @return whether this value is exactly represented by a double
+     */
+    private static boolean isExact(long value)
+    {
+        return value > -MAX_EXACT && value < MAX_EXACT;
+    }
+
+    /**
+     * @param num1 first operand
+     * @param num2 second operand
+     * @return whether both operands are Integer, Long or finite Double
+     *         values, and at least one of them is a Double
+     */
+    private static boolean isFastFloating(Object num1, Object num2)
+    {
+        boolean double1 = num1 instanceof Double, double2 = num2 instanceof Double;
+        return (double1 || double2)
+            && (double1 ? isFinite((Double)num1) : isIntegral(num1))
+            && (double2 ? isFinite((Double)num2) : isIntegral(num2));
+    }
+
+    private static boolean isFinite(Double value)
+    {
+        return !value.isNaN() && !value.isInfinite();
+    }
+
+    /**
+     * @param value integral value
+     * @return an Integer, or a Long if the value is out of the Integer range
+     */
+    private static Number box(long value)
+    {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH)
+        {
+            return CACHE[(int)value - CACHE_LOW];
+        }
+        else if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+        {
+            return Long.valueOf(value);
+        }
+        else
+        {
+            return Integer.valueOf((int)value);
+        }
+    }
+
     // ------------------------- Aggregation methods ------------------
 
     /**
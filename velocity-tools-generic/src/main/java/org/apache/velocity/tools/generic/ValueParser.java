@@ -20,6 +20,7 @@ package org.apache.velocity.tools.generic;
  */
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -40,6 +41,13 @@ import org.apache.velocity.tools.config.SkipSetters;
  * <p>When subkeys are allowed, getValue("foo") will also search for all keys
  * of the form "foo.bar" and return a ValueParser of the type "bar" -&gt; value for all found values.</p>
  *
+ * <p>Subkeys are indexed in a single pass over the source map. When the parser is read-only
+ * and its source map is a snapshot which cannot change behind its back (see {@link #isSnapshot()}),
+ * as for ParameterTool or for the parsers returned for subkeys, the index and the ValueParser
+ * returned for a given subkey are kept, and typed conversions (numbers, booleans, locales
+ * and their arrays) are memoized per key, until the source map, the format or the locale
+ * are changed.</p>
+ *
  * TODO: someone doing java configuration ought to be able to put a source Map
  *       in the tool properties, allowing this to be used like other tools
  *
@@ -67,9 +75,39 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      */
     private Boolean hasSubkeys = null;
 
+    /* lazily built index of first-level subkeys, mapping each
+    "foo" prefix to the map of "bar" -> value for all "foo.bar" keys
+     */
+    private Map<String,Map<String,Object>> subkeyIndex = null;
+
+    /* sorted set of first-level subkeys */
+    private Set<String> subkeyNames = null;
+
+    /* source map the subkey index has been built for */
+    private Map<String,Object> indexedSource = null;
+
+    /* memoized subkey parsers */
+    private Map<String,ValueParser> subkeyParsers = null;
+
+    /* kinds of memoized conversions */
+    private enum Conversion
+    {
+        BOOLEAN, INTEGER, LONG, DOUBLE, NUMBER, LOCALE,
+        STRINGS, BOOLEANS, NUMBERS, INTS, DOUBLES, LOCALES
+    }
+
+    /* placeholder for memoized null conversions */
+    private static final Object NO_VALUE = new Object();
+
+    /* memoized conversions, per conversion kind and key */
+    private Map<String,Object>[] conversions = null;
+
     /* whether the wrapped map should be read-only or not */
     private boolean readOnly = true;
 
+    /* whether the wrapped map is a snapshot, only modified through this parser */
+    private boolean snapshot = false;
+
     /**
      * The key used for specifying whether to support subkeys
      */
@@ -92,6 +130,7 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
     protected void setSource(Map<String,Object> source)
     {
         this.source = source;
+        clearConversions();
     }
 
     protected Map<String,Object> getSource(boolean create)
@@ -145,6 +184,37 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         readOnly = ro;
     }
 
+    /**
+     * Is the source map a snapshot, which is never modified but through this parser?
+     * Subkeys and conversions are only cached for read-only parsers over a snapshot.
+     * @return yes/no
+     * @since VelocityTools 3.1
+     */
+    protected boolean isSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Declares whether the source map is a snapshot, which is never modified but through this parser.
+     * @param snapshot flag value
+     * @since VelocityTools 3.1
+     */
+    protected void setSnapshot(boolean snapshot)
+    {
+        this.snapshot = snapshot;
+        clearSubkeyIndex();
+        clearConversions();
+    }
+
+    /**
+     * Whether subkeys and conversions can be cached.
+     */
+    private boolean isCached()
+    {
+        return getReadOnly() && isSnapshot();
+    }
+
     /**
      * Sets the delimiter used for separating values in a single String value.
      * The default string delimiter is a comma.
@@ -188,6 +258,75 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         }
     }
 
+    /**
+     * Sets the default format for this instance, and
+     * discards memoized conversions.
+     * @param format default format
+     */
+    @Override
+    protected void setFormat(String format)
+    {
+        super.setFormat(format);
+        clearConversions();
+    }
+
+    /**
+     * Sets the default locale for this instance, and
+     * discards memoized conversions.
+     * @param locale default locale to use
+     */
+    @Override
+    protected void setLocale(Locale locale)
+    {
+        super.setLocale(locale);
+        clearConversions();
+    }
+
+    /**
+     * Discards all memoized conversions.
+     */
+    protected void clearConversions()
+    {
+        conversions = null;
+    }
+
+    /**
+     * Returns a memoized conversion, {@link #NO_VALUE} if the conversion
+     * result was null, or null if the conversion hasn't been memoized.
+     */
+    private Object getConversion(Conversion kind, String key)
+    {
+        if (conversions == null || !isCached())
+        {
+            return null;
+        }
+        Map<String,Object> values = conversions[kind.ordinal()];
+        return values == null ? null : values.get(key);
+    }
+
+    /**
+     * Memoizes a conversion.
+     */
+    private <T> T setConversion(Conversion kind, String key, T value)
+    {
+        if (!isCached())
+        {
+            return value;
+        }
+        if (conversions == null)
+        {
+            conversions = new Map[Conversion.values().length];
+        }
+        Map<String,Object> values = conversions[kind.ordinal()];
+        if (values == null)
+        {
+            values = new HashMap<String,Object>();
+            conversions[kind.ordinal()] = values;
+        }
+        values.put(key, value == null ? NO_VALUE : value);
+        return value;
+    }
+
     // ----------------- public parsing methods --------------------------
 
     /**
@@ -329,7 +468,12 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      */
     public Boolean getBoolean(String key)
     {
-        return ConversionUtils.toBoolean(getValue(key));
+        Object cached = getConversion(Conversion.BOOLEAN, key);
+        if (cached != null)
+        {
+            return cached == NO_VALUE ? null : (Boolean)cached;
+        }
+        return setConversion(Conversion.BOOLEAN, key, ConversionUtils.toBoolean(getValue(key)));
     }
 
     /**
@@ -363,13 +507,13 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      */
     public Integer getInteger(String key)
     {
-        Object value = getValue(key);
-        if (value == null)
+        Object cached = getConversion(Conversion.INTEGER, key);
+        if (cached != null)
         {
-            return null;
+            return cached == NO_VALUE ? null : (Integer)cached;
         }
-        Number number = ConversionUtils.toNumber(value, getFormat(), getLocale());
-        return number == null ? null : number.intValue();
+        Number number = getNumber(key);
+        return setConversion(Conversion.INTEGER, key, number == null ? null : number.intValue());
     }
 
     /**
@@ -395,13 +539,13 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      */
     public Double getDouble(String key)
     {
-        Object value = getValue(key);
-        if (value == null)
+        Object cached = getConversion(Conversion.DOUBLE, key);
+        if (cached != null)
         {
-            return null;
+            return cached == NO_VALUE ? null : (Double)cached;
         }
-        Number number = ConversionUtils.toNumber(value, getFormat(), getLocale());
-        return number == null ? null : number.doubleValue();
+        Number number = getNumber(key);
+        return setConversion(Conversion.DOUBLE, key, number == null ? null : number.doubleValue());
     }
 
     /**
@@ -427,7 +571,44 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      */
     public Number getNumber(String key)
     {
-        return ConversionUtils.toNumber(getValue(key), getFormat(), getLocale());
+        Object cached = getConversion(Conversion.NUMBER, key);
+        if (cached != null)
+        {
+            return cached == NO_VALUE ? null : (Number)cached;
+        }
+        Object value = getValue(key);
+        Number number = value == null ? null : ConversionUtils.toNumber(value, getFormat(), getLocale());
+        return setConversion(Conversion.NUMBER, key, number);
+    }
+
+    /**
+     * @param key the desired parameter's key
+     * @return a {@link Long} for the specified key or
+     *         <code>null</code> if no matching parameter is found
+     * @since VelocityTools 3.1
+     */
+    public Long getLong(String key)
+    {
+        Object cached = getConversion(Conversion.LONG, key);
+        if (cached != null)
+        {
+            return cached == NO_VALUE ? null : (Long)cached;
+        }
+        Number number = getNumber(key);
+        return setConversion(Conversion.LONG, key, number == null ? null : number.longValue());
+    }
+
+    /**
+     * @param key the desired parameter's key
+     * @param alternate The alternate long value
+     * @return the long value for the specified key or the specified
+     *         alternate value if no matching parameter is found
+     * @since VelocityTools 3.1
+     */
+    public long getLong(String key, long alternate)
+    {
+        Number n = getNumber(key);
+        return (n != null) ? n.longValue() : alternate;
     }
 
     /**
@@ -437,7 +618,12 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      */
     public Locale getLocale(String key)
     {
-        return toLocale(getValue(key));
+        Object cached = getConversion(Conversion.LOCALE, key);
+        if (cached != null)
+        {
+            return cached == NO_VALUE ? null : (Locale)cached;
+        }
+        return setConversion(Conversion.LOCALE, key, toLocale(getValue(key)));
     }
 
     /**
@@ -496,6 +682,16 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      *         if the no values are associated with the given key
      */
     public String[] getStrings(String key)
+    {
+        Object cached = getConversion(Conversion.STRINGS, key);
+        if (cached == null)
+        {
+            cached = setConversion(Conversion.STRINGS, key, convertStrings(key));
+        }
+        return cached == null || cached == NO_VALUE ? null : ((String[])cached).clone();
+    }
+
+    private String[] convertStrings(String key)
     {
         Object[] array = getValues(key);
         if (array == null || String.class.isAssignableFrom(array.getClass().getComponentType()))
@@ -516,6 +712,16 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      * @return an array of Boolean objects associated with the given key.
      */
     public Boolean[] getBooleans(String key)
+    {
+        Object cached = getConversion(Conversion.BOOLEANS, key);
+        if (cached == null)
+        {
+            cached = setConversion(Conversion.BOOLEANS, key, convertBooleans(key));
+        }
+        return cached == null || cached == NO_VALUE ? null : ((Boolean[])cached).clone();
+    }
+
+    private Boolean[] convertBooleans(String key)
     {
         Object[] array = getValues(key);
         if (array == null || Boolean.class.isAssignableFrom(array.getClass().getComponentType()))
@@ -536,6 +742,16 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      *         or <code>null</code> if Numbers are not associated with it.
      */
     public Number[] getNumbers(String key)
+    {
+        Object cached = getConversion(Conversion.NUMBERS, key);
+        if (cached == null)
+        {
+            cached = setConversion(Conversion.NUMBERS, key, convertNumbers(key));
+        }
+        return cached == null || cached == NO_VALUE ? null : ((Number[])cached).clone();
+    }
+
+    private Number[] convertNumbers(String key)
     {
         Object[] array = getValues(key);
         if (array == null || Number.class.isAssignableFrom(array.getClass().getComponentType()))
@@ -556,6 +772,16 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      *         or <code>null</code> if numbers are not associated with it.
      */
     public int[] getInts(String key)
+    {
+        Object cached = getConversion(Conversion.INTS, key);
+        if (cached == null)
+        {
+            cached = setConversion(Conversion.INTS, key, convertInts(key));
+        }
+        return cached == null || cached == NO_VALUE ? null : ((int[])cached).clone();
+    }
+
+    private int[] convertInts(String key)
     {
         Object[] array = getValues(key);
         if (array == null)
@@ -576,6 +802,16 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      *         or <code>null</code> if numbers are not associated with it.
      */
     public double[] getDoubles(String key)
+    {
+        Object cached = getConversion(Conversion.DOUBLES, key);
+        if (cached == null)
+        {
+            cached = setConversion(Conversion.DOUBLES, key, convertDoubles(key));
+        }
+        return cached == null || cached == NO_VALUE ? null : ((double[])cached).clone();
+    }
+
+    private double[] convertDoubles(String key)
     {
         Object[] array = getValues(key);
         if (array == null)
@@ -596,6 +832,16 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
      *         or <code>null</code> if Locales are not associated with it.
      */
     public Locale[] getLocales(String key)
+    {
+        Object cached = getConversion(Conversion.LOCALES, key);
+        if (cached == null)
+        {
+            cached = setConversion(Conversion.LOCALES, key, convertLocales(key));
+        }
+        return cached == null || cached == NO_VALUE ? null : ((Locale[])cached).clone();
+    }
+
+    private Locale[] convertLocales(String key)
     {
         Object[] array = getValues(key);
         if (array == null || Locale.class.isAssignableFrom(array.getClass().getComponentType()))
@@ -653,19 +899,60 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         }
         else
         {
-            Set<String> result = new TreeSet<String>();
-            for (String key: keys)
+            indexSubkeys();
+            return subkeyNames;
+        }
+    }
+
+    /**
+     * Builds the subkey index, if needed.
+     */
+    private void indexSubkeys()
+    {
+        Map<String,Object> src = getSource();
+        if (subkeyIndex != null && indexedSource == src && isCached())
+        {
+            return;
+        }
+        Map<String,Map<String,Object>> index = new HashMap<String,Map<String,Object>>();
+        Set<String> names = new TreeSet<String>();
+        for (Map.Entry<String,Object> entry : src.entrySet())
+        {
+            String key = entry.getKey();
+            int dot = key.indexOf('.');
+            if (dot > 0)
             {
-                int dot = key.indexOf('.');
-                if (dot > 0 && dot < key.length())
+                String prefix = key.substring(0, dot);
+                names.add(prefix);
+                if (dot < key.length() - 1)
                 {
-                    result.add(key.substring(0, dot));
+                    Map<String,Object> values = index.get(prefix);
+                    if (values == null)
+                    {
+                        values = new HashMap<String,Object>();
+                        index.put(prefix, values);
+                    }
+                    values.put(key.substring(dot + 1), entry.getValue());
                 }
             }
-            return result;
         }
+        subkeyIndex = index;
+        subkeyNames = Collections.unmodifiableSet(names);
+        subkeyParsers = null;
+        indexedSource = src;
     }
-    
+
+    /**
+     * Discards the subkey index.
+     */
+    private void clearSubkeyIndex()
+    {
+        subkeyIndex = null;
+        subkeyNames = null;
+        subkeyParsers = null;
+        indexedSource = null;
+    }
+
     /**
      * subkey getter that returns a map subkey#2 -&gt; value
      * for every "subkey.subkey2" found entry
@@ -680,6 +967,48 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
             return null;
         }
 
+        int dot = subkey.indexOf('.');
+        if (dot == -1)
+        {
+            indexSubkeys();
+            Map<String,Object> values = subkeyIndex.get(subkey);
+            if (values == null)
+            {
+                return null;
+            }
+            if (!getReadOnly())
+            {
+                ValueParser ret = new ValueParser(new HashMap<String,Object>(values));
+                ret.setReadOnly(false);
+                ret.snapshot = true;
+                return ret;
+            }
+            ValueParser ret = subkeyParsers == null ? null : subkeyParsers.get(subkey);
+            if (ret == null)
+            {
+                /* index values are private to this parser */
+                ret = new ValueParser(values);
+                ret.snapshot = true;
+                if (!isCached())
+                {
+                    return ret;
+                }
+                if (subkeyParsers == null)
+                {
+                    subkeyParsers = new HashMap<String,ValueParser>();
+                }
+                subkeyParsers.put(subkey, ret);
+            }
+            return ret;
+        }
+        else if (dot > 0 && dot < subkey.length() - 1)
+        {
+            // walk down the hierarchy
+            ValueParser parent = getSubkey(subkey.substring(0, dot));
+            return parent == null ? null : parent.getSubkey(subkey.substring(dot + 1));
+        }
+
+        // degenerated subkeys, scan the whole source
         Map<String,Object> values = null;
         subkey = subkey.concat(".");
         for (Map.Entry<String,Object> entry : getSource().entrySet())
@@ -703,6 +1032,7 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
             ValueParser ret = new ValueParser(values);
             /* honnor readOnly option on submaps */
             ret.setReadOnly(getReadOnly());
+            ret.snapshot = true;
             return ret;
         }
     }
@@ -742,6 +1072,8 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         {
             hasSubkeys = Boolean.TRUE;
         }
+        clearSubkeyIndex();
+        clearConversions();
         return getSource().put(key,value); // TODO this tool should be made thread-safe (the request-scoped ParameterTool doesn't need it, but other uses could...)
     }
 
@@ -755,6 +1087,8 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         {
             hasSubkeys = null;
         }
+        clearSubkeyIndex();
+        clearConversions();
         return getSource().remove(key);
     }
 
@@ -763,6 +1097,8 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         {
             throw new UnsupportedOperationException("Cannot putAll("+m+"); "+getClass().getName()+" is read-only");
         }
+        clearSubkeyIndex();
+        clearConversions();
         hasSubkeys = null;
         getSource().putAll(m);
     }
@@ -772,6 +1108,8 @@ public class ValueParser extends FormatConfig implements Map<String,Object>
         {
             throw new UnsupportedOperationException("Cannot clear(); "+getClass().getName()+" is read-only");
         }
+        clearSubkeyIndex();
+        clearConversions();
         hasSubkeys = Boolean.FALSE;
         getSource().clear();
     }
@@ -19,6 +19,7 @@ package org.apache.velocity.tools.generic;
  * under the License.
  */
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
@@ -28,6 +29,11 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.velocity.tools.XmlUtils;
 
@@ -40,6 +46,7 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
+import org.slf4j.Logger;
 
 /**
  * <p>Tool for reading/navigating XML files, with XPath expressions support.</p>
@@ -78,6 +85,19 @@ import org.w3c.dom.Text;
  * only be able to parse XML strings.  Safe mode is on by default and blocks
  * access to the {@link #read(String)} method.</p>
  *
+ * <p>Big documents can also be streamed rather than parsed as a whole. Each element
+ * matching the given name (or path) is then read into its own small, detached
+ * XmlTool, so that memory stays bounded by the size of one element:</p>
+ * <pre>
+ *   #foreach( $item in $xml.stream('feed.xml', 'item') )
+ *     $item.title.text
+ *   #end
+ * </pre>
+ * <p>The underlying stream is closed once the iteration is complete or when the
+ * optional limit is reached, as in <code>$xml.stream('feed.xml', 'item', 10)</code>.
+ * Templates which break out of the loop earlier should call <code>close()</code> on the
+ * returned iterator.</p>
+ *
  * @author Nathan Bubna
  * @author Claude Brisson
  * @version $Revision: 1769055 $ $Date: 2006-11-27 10:49:37 -0800 (Mon, 27 Nov 2006) $
@@ -281,6 +301,160 @@ public class XmlTool extends SafeConfig implements Serializable
         return this;
     }
 
+    /**
+     * Reads and parses several remote or local URLs. Remote URLs are fetched
+     * concurrently, see {@link ImportSupport#acquireAll(List, ImportSupport.Acquirer)}.
+     * @param urls resources URLs
+     * @return new XmlTool instances, in order, with <code>null</code> for failed
+     * or timed out URLs, or <code>null</code> if urls is null
+     * @since VelocityTools 3.1
+     */
+    public List<XmlTool> fetchAll(List<?> urls)
+    {
+        if (urls == null)
+        {
+            return null;
+        }
+        if (importSupport == null)
+        {
+            initializeImportSupport(new ValueParser());
+        }
+        return importSupport.acquireAll(urls, new ImportSupport.Acquirer<XmlTool>()
+        {
+            public XmlTool acquire(String url) throws Exception
+            {
+                Reader reader = importSupport.acquireReader(url);
+                if (reader == null)
+                {
+                    return null;
+                }
+                try
+                {
+                    XmlTool tool = new XmlTool();
+                    tool.setRoot(XmlUtils.parse(reader));
+                    tool.log = getLog();
+                    tool.importSupport = importSupport;
+                    return tool;
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Streams a local resource file, returning an iterator over the elements
+     * with the given name or path.
+     * @param resource resource path
+     * @param element element name (like <code>item</code>) or path (like <code>channel/item</code>
+     * or <code>/rss/channel/item</code>)
+     * @return iterator over matching elements, or null
+     * @since VelocityTools 3.1
+     */
+    public StreamIterator stream(String resource, String element)
+    {
+        return stream(resource, element, 0);
+    }
+
+    /**
+     * Streams a local resource file, returning an iterator over at most <code>limit</code>
+     * elements with the given name or path.
+     * @param resource resource path
+     * @param element element name or path
+     * @param limit maximum number of elements to return, or zero for no limit
+     * @return iterator over matching elements, or null
+     * @since VelocityTools 3.1
+     */
+    public StreamIterator stream(String resource, String element, int limit)
+    {
+        if (resource == null || element == null)
+        {
+            return null;
+        }
+        Reader reader = null;
+        try
+        {
+            if (importSupport == null)
+            {
+                initializeImportSupport(new ValueParser());
+            }
+            reader = importSupport.getResourceReader(resource);
+            if (reader != null)
+            {
+                return new StreamIterator(reader, element, limit, getLog());
+            }
+        }
+        catch (Exception e)
+        {
+            getLog().error("could not stream XML resource {}", resource, e);
+            closeQuietly(reader);
+        }
+        return null;
+    }
+
+    /**
+     * Streams a remote or local URL, returning an iterator over the elements
+     * with the given name or path.
+     * @param url resource URL
+     * @param element element name or path
+     * @return iterator over matching elements, or null
+     * @since VelocityTools 3.1
+     */
+    public StreamIterator fetchStream(String url, String element)
+    {
+        return fetchStream(url, element, 0);
+    }
+
+    /**
+     * Streams a remote or local URL, returning an iterator over at most <code>limit</code>
+     * elements with the given name or path.
+     * @param url resource URL
+     * @param element element name or path
+     * @param limit maximum number of elements to return, or zero for no limit
+     * @return iterator over matching elements, or null
+     * @since VelocityTools 3.1
+     */
+    public StreamIterator fetchStream(String url, String element, int limit)
+    {
+        if (url == null || element == null)
+        {
+            return null;
+        }
+        Reader reader = null;
+        try
+        {
+            if (importSupport == null)
+            {
+                initializeImportSupport(new ValueParser());
+            }
+            reader = importSupport.acquireReader(url);
+            if (reader != null)
+            {
+                return new StreamIterator(reader, element, limit, getLog());
+            }
+        }
+        catch (Exception e)
+        {
+            getLog().error("could not stream XML content from URL {}", url, e);
+            closeQuietly(reader);
+        }
+        return null;
+    }
+
+    private static void closeQuietly(Reader reader)
+    {
+        if (reader != null)
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException ioe) {}
+        }
+    }
+
     /**
      * This will first attempt to find an attribute with the
      * specified name and return its value.  If no such attribute
@@ -772,4 +946,140 @@ public class XmlTool extends SafeConfig implements Serializable
             i.remove();
         }
     }
+
+    /**
+     * Iterator returning a new detached XmlTool for each element of an
+     * XML stream matching a given name or path. The underlying stream is
+     * closed when exhausted, when the limit is reached, on error, or
+     * when {@link #close()} is called.
+     * @since VelocityTools 3.1
+     */
+    public static class StreamIterator implements Iterator<XmlTool>, Closeable
+    {
+        private Reader source;
+        private XMLStreamReader reader;
+        private String[] path;
+        private boolean absolute;
+        private int limit;
+        private int count = 0;
+        private List<String> stack = new ArrayList<String>();
+        private XmlTool next = null;
+        private boolean closed = false;
+        private Logger log;
+
+        /**
+         * Builds a new stream iterator
+         * @param source XML source
+         * @param element element name or path
+         * @param limit maximum number of elements to return, or zero for no limit
+         * @param log logger
+         * @throws XMLStreamException if the stream cannot be opened
+         */
+        public StreamIterator(Reader source, String element, int limit, Logger log) throws XMLStreamException
+        {
+            this.source = source;
+            this.absolute = element.startsWith("/");
+            this.path = (absolute ? element.substring(1) : element).split("/");
+            this.limit = limit;
+            this.log = log;
+            this.reader = XmlUtils.createStreamReader(source);
+        }
+
+        private boolean matches()
+        {
+            int depth = stack.size();
+            if (depth < path.length || absolute && depth != path.length)
+            {
+                return false;
+            }
+            for (int i = 1; i <= path.length; ++i)
+            {
+                if (!path[path.length - i].equals(stack.get(depth - i)))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void advance()
+        {
+            try
+            {
+                while (reader.hasNext())
+                {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT)
+                    {
+                        stack.add(reader.getLocalName());
+                        if (matches())
+                        {
+                            next = new XmlTool(XmlUtils.readElement(reader));
+                            stack.remove(stack.size() - 1);
+                            return;
+                        }
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT)
+                    {
+                        stack.remove(stack.size() - 1);
+                    }
+                }
+            }
+            catch (XMLStreamException xse)
+            {
+                log.error("could not stream XML content", xse);
+            }
+            close();
+        }
+
+        public boolean hasNext()
+        {
+            if (next == null && !closed)
+            {
+                if (limit > 0 && count >= limit)
+                {
+                    close();
+                }
+                else
+                {
+                    advance();
+                }
+            }
+            return next != null;
+        }
+
+        public XmlTool next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            XmlTool ret = next;
+            next = null;
+            ++count;
+            return ret;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Closes the underlying stream.
+         */
+        public void close()
+        {
+            if (!closed)
+            {
+                closed = true;
+                try
+                {
+                    reader.close();
+                }
+                catch (XMLStreamException xse) {}
+                closeQuietly(source);
+            }
+        }
+    }
 }
@@ -362,5 +362,34 @@ public class ClassToolTests {
         }
     }
 
+    public static class WithDeprecated
+    {
+        public void current()
+        {
+        }
+
+        @Deprecated
+        public void deprecated()
+        {
+        }
+    }
+
+    public @Test void methodSharedInspection() throws Exception
+    {
+        ClassTool classTool = new ClassTool();
+        ClassTool other = classTool.inspect(Map.class);
+        assertTrue(other.getMethods() == classTool.inspect("java.util.Map").getMethods());
+        assertTrue(other.getTypes().contains(Set.class));
+        classTool.setType(WithDeprecated.class);
+        assertEquals(1, classTool.getMethods().size());
+        assertEquals("current", classTool.getMethods().get(0).getName());
+        Map<String,Object> conf = new HashMap<String,Object>();
+        conf.put(ClassTool.SHOW_DEPRECATED_KEY, "true");
+        ClassTool deprecated = new ClassTool();
+        deprecated.configure(conf);
+        deprecated.setType(WithDeprecated.class);
+        assertEquals(2, deprecated.getMethods().size());
+        assertEquals(1, classTool.inspect(WithDeprecated.class).getMethods().size());
+    }
+
 }
-        
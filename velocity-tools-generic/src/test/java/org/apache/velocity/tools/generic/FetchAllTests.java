@@ -0,0 +1,165 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * <p>Tests for batch fetching</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id$
+ */
+public class FetchAllTests
+{
+    private static HttpServer server = null;
+    private static String base = null;
+
+    /* number of requests being served, and its maximum */
+    private static final AtomicInteger running = new AtomicInteger();
+    private static final AtomicInteger maxRunning = new AtomicInteger();
+
+    @BeforeClass
+    public static void startServer() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                // paths are /<delay>/<name>.<ext>
+                String[] path = exchange.getRequestURI().getPath().split("/");
+                int count = running.incrementAndGet();
+                int max = maxRunning.get();
+                while (max < count && !maxRunning.compareAndSet(max, count))
+                {
+                    max = maxRunning.get();
+                }
+                try
+                {
+                    Thread.sleep(Long.parseLong(path[1]));
+                }
+                catch (InterruptedException ie) {}
+                finally
+                {
+                    running.decrementAndGet();
+                }
+                String name = path[2];
+                String body;
+                String type;
+                if (name.endsWith(".json"))
+                {
+                    body = "{\"name\":\"" + name + "\"}";
+                    type = "application/json";
+                }
+                else if (name.endsWith(".xml"))
+                {
+                    body = "<doc><name>" + name + "</name></doc>";
+                    type = "application/xml";
+                }
+                else
+                {
+                    body = name;
+                    type = "text/plain";
+                }
+                byte[] bytes = body.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", type + "; charset=UTF-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private static Map<String,Object> config(Object... keysAndValues)
+    {
+        Map<String,Object> config = new HashMap<String,Object>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2)
+        {
+            config.put((String)keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return config;
+    }
+
+    public @Test void testImportFetchAll() throws Exception
+    {
+        ImportTool tool = new ImportTool();
+        tool.configure(config(ImportSupport.FETCH_PARALLELISM_KEY, 4));
+        maxRunning.set(0);
+        List<String> results = tool.fetchAll(Arrays.asList(base + "300/a", base + "300/b", null, base + "300/c", "not/remote"));
+        assertEquals(Arrays.asList("a", "b", null, "c", null), results);
+        assertTrue("URLs were not fetched concurrently", maxRunning.get() > 1);
+        assertNull(tool.fetchAll(null));
+    }
+
+    public @Test void testTimeout() throws Exception
+    {
+        ImportTool tool = new ImportTool();
+        tool.configure(config(ImportSupport.FETCH_PARALLELISM_KEY, 1, ImportSupport.FETCH_TIMEOUT_KEY, 400));
+        List<String> results = tool.fetchAll(Arrays.asList(base + "0/a", base + "2000/b", base + "0/c"));
+        assertEquals(Arrays.asList("a", null, null), results);
+    }
+
+    public @Test void testJsonAndXmlFetchAll() throws Exception
+    {
+        JsonTool json = new JsonTool();
+        json.configure(config());
+        List<JsonTool> jsons = json.fetchAll(Arrays.asList(base + "100/a.json", base + "0/b.json"));
+        assertEquals(2, jsons.size());
+        assertEquals("a.json", jsons.get(0).get("name"));
+        assertEquals("b.json", jsons.get(1).get("name"));
+        assertNull(json.root());
+
+        XmlTool xml = new XmlTool();
+        xml.configure(config());
+        List<XmlTool> xmls = xml.fetchAll(Arrays.asList(base + "100/a.xml", base + "0/b.xml"));
+        assertEquals("a.xml", xmls.get(0).find("name").getText());
+        assertEquals("b.xml", xmls.get(1).find("name").getText());
+    }
+}
@@ -0,0 +1,159 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
+import org.apache.velocity.runtime.resource.util.StringResourceRepository;
+import org.apache.velocity.tools.ToolContext;
+import org.apache.velocity.tools.ToolInfo;
+import org.apache.velocity.tools.Toolbox;
+import org.junit.Test;
+
+/**
+ * <p>Tests for FragmentTool</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id$
+ */
+public class FragmentToolTests
+{
+    public static class Slow
+    {
+        public String sleep(int millis) throws InterruptedException
+        {
+            Thread.sleep(millis);
+            return "slept " + millis;
+        }
+    }
+
+    private static VelocityEngine createEngine()
+    {
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty("resource.loader", "string");
+        engine.setProperty("string.resource.loader.class", StringResourceLoader.class.getName());
+        engine.setProperty("string.resource.loader.repository.static", "false");
+        engine.init();
+        StringResourceRepository repository = (StringResourceRepository)engine.getApplicationAttribute(StringResourceLoader.REPOSITORY_NAME_DEFAULT);
+        repository.putStringResource("a.vm", "#set($local = 'a')$slow.sleep(300)");
+        repository.putStringResource("b.vm", "$slow.sleep(300) for $who");
+        repository.putStringResource("page.vm", "#set($a = $fragments.parse('a.vm', {'slow': $slow}))#set($b = $fragments.parse('b.vm', {'slow': $slow, 'who': $who}))[$a][$b][$!local]");
+        repository.putStringResource("c.vm", "[$!who]");
+        repository.putStringResource("d.vm", "$math.add(1, 2) $!who");
+        return engine;
+    }
+
+    private static FragmentTool createTool(VelocityEngine engine, Context context, Object... config)
+    {
+        FragmentTool tool = new FragmentTool();
+        tool.setVelocityEngine(engine);
+        tool.setVelocityContext(context);
+        Map<String,Object> params = new HashMap<String,Object>();
+        for (int i = 0; i + 1 < config.length; i += 2)
+        {
+            params.put((String)config[i], config[i + 1]);
+        }
+        tool.configure(params);
+        return tool;
+    }
+
+    public @Test void testConcurrentFragments() throws Exception
+    {
+        VelocityEngine engine = createEngine();
+        VelocityContext context = new VelocityContext();
+        context.put("slow", new Slow());
+        context.put("who", "bob");
+        context.put("fragments", createTool(engine, context, "threads", 4));
+        long start = System.currentTimeMillis();
+        StringWriter writer = new StringWriter();
+        engine.getTemplate("page.vm").merge(context, writer);
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals("[slept 300][slept 300 for bob][]", writer.toString());
+        assertTrue("fragments were not rendered concurrently: " + elapsed + "ms", elapsed < 550);
+    }
+
+    public @Test void testTimeoutAndFallback() throws Exception
+    {
+        VelocityEngine engine = createEngine();
+        VelocityContext context = new VelocityContext();
+        context.put("slow", new Slow());
+        FragmentTool tool = createTool(engine, context, "threads", 2, "fallback", "n/a");
+        Map<String,Object> values = new HashMap<String,Object>();
+        values.put("slow", new Slow());
+        FragmentTool.Fragment fragment = tool.parse("a.vm", values, 50);
+        assertEquals("n/a", fragment.toString());
+        assertEquals("n/a", tool.parse("missing.vm").toString());
+        assertEquals("--", tool.parse("b.vm", values, 50, "--").toString());
+        assertNull(tool.parse(null));
+        assertEquals("", tool.await());
+    }
+
+    public @Test void testValuesAndCancel() throws Exception
+    {
+        VelocityEngine engine = createEngine();
+        ToolContext context = new ToolContext(engine);
+        context.put("who", "bob");
+        FragmentTool tool = createTool(engine, context, "threads", 2);
+
+        // fragments only see a copy of the values given to them
+        Map<String,Object> values = new HashMap<String,Object>();
+        values.put("who", "alice");
+        FragmentTool.Fragment fragment = tool.parse("c.vm", values);
+        values.put("who", "carol");
+        assertEquals("[alice]", fragment.toString());
+        assertEquals("[]", tool.parse("c.vm").toString());
+
+        // pending fragments are cancelled once the page is rendered
+        values.put("slow", new Slow());
+        fragment = tool.parse("a.vm", values);
+        context.cleanup();
+        assertTrue(fragment.isDone());
+        assertEquals("", fragment.toString());
+
+        // relative URLs are not supported by the generic version
+        assertEquals("", tool.fetch("foo.html").toString());
+    }
+
+    public @Test void testSharedTools() throws Exception
+    {
+        VelocityEngine engine = createEngine();
+        Map<String,ToolInfo> infos = new HashMap<String,ToolInfo>();
+        infos.put("math", new ToolInfo("math", MathTool.class));
+        Map<String,ToolInfo> requestInfos = new HashMap<String,ToolInfo>();
+        requestInfos.put("who", new ToolInfo("who", LoopTool.class));
+        ToolContext context = new ToolContext(engine);
+        context.addSharedToolbox(new Toolbox(infos));
+        context.addToolbox(new Toolbox(requestInfos));
+        FragmentTool tool = createTool(engine, context);
+
+        // fragments see the shared tools, but not the other ones
+        assertEquals("3 ", tool.parse("d.vm").toString());
+    }
+}
@@ -19,12 +19,21 @@ package org.apache.velocity.tools.generic;
  * under the License.
  */
 
+import org.apache.velocity.exception.VelocityException;
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * <p>Tests for {@link JsonTool}</p>
@@ -44,4 +53,101 @@ public class JsonToolTests
         jsonTool.configure(config);
         assertEquals(jsonTool.get("foo"), "bar");
     }
+
+    public @Test void testLazyJson() throws Exception
+    {
+        Map config = new HashMap();
+        config.put("resource", "foo.json");
+        config.put("lazy", "true");
+        JsonTool jsonTool = new JsonTool();
+        jsonTool.configure(config);
+        assertTrue(jsonTool.root() instanceof LazyJsonContent);
+        assertEquals("bar", jsonTool.get("foo"));
+        JsonContent array = (JsonContent)jsonTool.get("array");
+        assertSame(array, jsonTool.get("array"));
+        assertTrue(array.isArray());
+        assertEquals(2, array.size());
+        assertEquals("foo2", array.get(1));
+        assertEquals("[ \"foo1\", \"foo2\"]", array.toString());
+    }
+
+    public @Test void testLazyValues() throws Exception
+    {
+        JsonTool jsonTool = new JsonTool();
+        jsonTool.setLazy(true);
+        jsonTool.parse("{\"a\":{\"b\":[1, 2.5, true, null, \"x\\\"y\\u0041\"]}, \"c/d\": {}, \"e\": [1,,]}");
+        assertEquals(new BigDecimal("2.5"), jsonTool.path("a.b[1]"));
+        assertEquals(Boolean.TRUE, jsonTool.path("a.b.2"));
+        assertNull(jsonTool.path("a.b[3]"));
+        assertEquals("x\"yA", jsonTool.pointer("/a/b/4"));
+        assertEquals(0, ((JsonContent)jsonTool.pointer("/c~1d")).size());
+        assertEquals(new BigDecimal("1"), jsonTool.pointer("/a/b/0"));
+    }
+
+    public static class Bean
+    {
+        public String getName() { return "</script>"; }
+        public int[] getValues() { return new int[] { 1, 2 }; }
+        public Bean getSelf() { return this; }
+        public String toString() { return "bean"; }
+    }
+
+    public static class FailingBean
+    {
+        public String getName() { throw new IllegalStateException("no name"); }
+    }
+
+    public @Test void testWrite() throws Exception
+    {
+        JsonTool jsonTool = new JsonTool();
+        assertEquals("[\"bean\"]", jsonTool.write(new Bean[] { new Bean() }).toString());
+        Map config = new HashMap();
+        config.put("beans", Bean.class.getName() + "," + FailingBean.class.getName());
+        jsonTool.configure(config);
+        try
+        {
+            jsonTool.write(new FailingBean()).toString();
+            fail("getter exception should be propagated");
+        }
+        catch (VelocityException ve)
+        {
+            assertTrue(ve.getCause() instanceof IllegalStateException);
+        }
+        Map map = new LinkedHashMap();
+        map.put("a", Arrays.asList(1, 2.5, null, Double.NaN));
+        map.put("b", "quote\" tab\t \u2028");
+        map.put("c", new Bean());
+        assertEquals("{\"a\":[1,2.5,null,null],\"b\":\"quote\\\" tab\\t \\u2028\",\"c\":{\"name\":\"<\\/script>\",\"self\":null,\"values\":[1,2]}}",
+            jsonTool.write(map).toString());
+        Map pretty = new LinkedHashMap();
+        pretty.put("x", new boolean[] { true });
+        pretty.put("y", Collections.EMPTY_MAP);
+        assertEquals("{\n  \"x\": [\n    true\n  ],\n  \"y\": {}\n}", jsonTool.write(pretty, true).toString());
+        jsonTool.setLazy(true);
+        jsonTool.parse("{ \"foo\" : [1, {\"bar\": \"baz\"}] }");
+        assertEquals("{\"foo\":[1,{\"bar\":\"baz\"}]}", jsonTool.write(jsonTool.root(), true).toString().replaceAll("\\s", ""));
+        assertEquals("{ \"foo\" : [1, {\"bar\": \"baz\"}] }", jsonTool.write(jsonTool.root()).toString());
+        assertEquals("{ \"foo\" : [1, {\"bar\": \"baz\"}] }", jsonTool.write(jsonTool).toString());
+        jsonTool.parse("[\"</script>\", \"\u2028\"]");
+        assertEquals("[\"<\\/script>\", \"\\u2028\"]", jsonTool.write(jsonTool).toString());
+        jsonTool.setLazy(false);
+        jsonTool.parse("{\"a\": 1}");
+        assertEquals("{\"a\":1}", jsonTool.write(jsonTool).toString());
+    }
+
+    public @Test void testPointer() throws Exception
+    {
+        JsonTool jsonTool = new JsonTool();
+        jsonTool.parse("{\"a\":{\"b\":[\"x\", {\"c\": 3}]}}");
+        assertEquals("x", jsonTool.pointer("/a/b/0"));
+        assertEquals(new BigDecimal("3"), jsonTool.path("a.b[1].c"));
+        assertSame(jsonTool.get("a"), jsonTool.get("a"));
+        assertNull(jsonTool.pointer("/z/0"));
+        assertNull(jsonTool.pointer("/a/b/2"));
+        assertNull(jsonTool.path("a.b[-1]"));
+        jsonTool.setLazy(true);
+        jsonTool.parse("{\"a\":{\"b\":[\"x\", {\"c\": 3}]}}");
+        assertNull(jsonTool.pointer("/a/b/2"));
+        assertNull(jsonTool.path("a.b[-1]"));
+    }
 }
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.StringWriter;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -122,10 +123,15 @@ public class LinkToolTests {
         LinkTool result = link.duplicate(true);
         assertFalse(link == result);
         assertSame(link.getPath(), result.getPath());
-        assertFalse(link.query == result.query);
+        // query data is shared until modified
+        assertSame(link.query, result.query);
         assertEquals(link.getQuery(), result.getQuery());
         assertSame(link.getSelf(), result.getSelf());
         assertSame(result.query, result.duplicate(false).query);
+        result.setParam("bar", "foo", true);
+        assertFalse(link.query == result.query);
+        assertEquals("foo=bar", link.getQuery());
+        assertEquals("foo=bar&amp;bar=foo", result.getQuery());
     }
 
     public @Test void methodEncode_Object() throws Exception
@@ -850,5 +856,39 @@ public class LinkToolTests {
         assertEquals("/foo?q=a%3Ab+c&amp;evil=%2525%2524%25", link.toString());
     }
 
+    public @Test void methodSharedQuery() throws Exception
+    {
+        LinkTool base = newInstance("/list?a=1&b=x");
+        LinkTool first = base.param("c", 3);
+        LinkTool second = base.append("a", 2);
+        LinkTool third = second.append("a", 4);
+        assertEquals("/list?a=1&amp;b=x&amp;c=3", first.toString());
+        assertEquals("/list?a=1&amp;a=2&amp;b=x", second.toString());
+        assertEquals("/list?a=1&amp;a=2&amp;a=4&amp;b=x", third.toString());
+        assertEquals("/list?a=1&amp;a=2&amp;b=x", second.toString());
+        assertEquals("/list?a=1&amp;b=x", base.toString());
+        assertSame(first.toString(), first.toString());
+        first.setParam("d", 4, true);
+        assertEquals("/list?a=1&amp;b=x&amp;c=3&amp;d=4", first.toString());
+        base.removeParam("b");
+        assertEquals("/list?a=1", base.toString());
+        assertEquals("/list?a=1&amp;b=x&amp;c=3&amp;d=4", first.toString());
+        StringWriter writer = new StringWriter();
+        assertTrue(first.render(null, writer));
+        assertEquals(first.toString(), writer.toString());
+        assertFalse(newInstance().render(null, writer));
+    }
+
+    public @Test void methodTemplate() throws Exception
+    {
+        LinkTool link = newInstance("http://apache.org/list.html?ref=x&lang=en#top");
+        LinkTemplate product = link.template("/product", "id", "ref");
+        assertEquals("http://apache.org/product?lang=en#top", product.toString());
+        assertEquals(link.path("/product").remove("ref").param("id", 42).param("ref", "a b").toString(), product.with(42, "a b"));
+        assertEquals("http://apache.org/product?lang=en&amp;id=&amp;ref=1&amp;ref=2#top", product.with(null, new Object[] { 1, 2 }));
+        assertEquals("http://apache.org/product?lang=en&amp;id=%2F#top", product.with("/"));
+        assertEquals("?q=a%3Ab", newInstance().template(null, "q").with("a:b"));
+        assertEquals("/foo?x=true", newInstance().template("foo", "x").with(true));
+    }
+
 }
-        
\ No newline at end of file
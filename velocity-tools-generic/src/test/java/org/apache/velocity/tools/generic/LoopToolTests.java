@@ -181,6 +181,48 @@ public class LoopToolTests {
     {
     }
 
+    public @Test void methodWatch_Arrays() throws Exception
+    {
+        LoopTool loop = new LoopTool();
+        Iterator i = loop.watch(new int[] { 1, 2 });
+        assertEquals(1, i.next());
+        assertEquals(2, i.next());
+        assertFalse(i.hasNext());
+        i = loop.watch(new char[] { 'a' });
+        assertEquals('a', i.next());
+        i = loop.watch(new double[0]);
+        assertFalse(i.hasNext());
+        i = loop.watch(new String[] { "x", "y" });
+        assertEquals("x", i.next());
+        // resolved iterator() methods are cached per class
+        i = loop.watch(new HasIteratorMethod());
+        assertEquals(LIST.iterator().next(), i.next());
+        i = loop.watch(new HasIteratorMethod());
+        assertEquals(LIST.iterator().next(), i.next());
+        assertNull(loop.watch(new Object()));
+        assertNull(loop.watch(new Object()));
+    }
+
+    public @Test void methodGetIterator_PrimitiveArrays() throws Exception
+    {
+        Iterator i = org.apache.velocity.tools.ClassUtils.getIterator(new int[] { 3, 4 });
+        // primitive arrays are not read through java.lang.reflect.Array
+        assertFalse(i instanceof org.apache.velocity.util.ArrayIterator);
+        assertEquals(Integer.valueOf(3), i.next());
+        assertEquals(Integer.valueOf(4), i.next());
+        assertFalse(i.hasNext());
+        i = org.apache.velocity.tools.ClassUtils.getIterator(new double[] { 0.5 });
+        assertFalse(i instanceof org.apache.velocity.util.ArrayIterator);
+        assertEquals(Double.valueOf(0.5), i.next());
+        assertFalse(i.hasNext());
+        try
+        {
+            i.next();
+            fail("expected NoSuchElementException");
+        }
+        catch (NoSuchElementException nsee) {}
+    }
+
     public @Test void methodWatch_ObjectString() throws Exception
     {
         LoopTool loop = new LoopTool();
@@ -416,5 +458,30 @@ public class LoopToolTests {
         assertEquals(0, loop.getDepth());
     }
 
+    public @Test void nestedNamesAndSyncs() throws Exception
+    {
+        LoopTool loop = new LoopTool();
+        Iterator outer = loop.watch(ARRAY, "i").sync(new int[] { 1, 2, 3 }, "n");
+        outer.next();
+        Iterator inner = loop.watch(ARRAY, "i").sync(new int[] { 4, 5, 6 }, "n");
+        inner.next();
+        inner.next();
+        // outermost loop wins for names, innermost one for sync'ed values
+        assertEquals(1, loop.get("count_i"));
+        assertEquals(5, loop.get("n"));
+        Iterator third = loop.watch(ARRAY, "j");
+        // stops and removes the innermost "i" loop, and the nested "j" one
+        loop.stopTo("i");
+        assertFalse(inner.hasNext());
+        assertFalse(third.hasNext());
+        assertEquals(1, loop.get("count_i"));
+        assertEquals(0, loop.get("count_j"));
+        assertEquals(1, loop.get("n"));
+        loop.pop();
+        loop.pop();
+        assertNull(loop.get("count_j"));
+        assertNull(loop.get("first_j"));
+    }
+
 }
         
@@ -41,4 +41,29 @@ public class MathToolTests extends BaseTestCase
         assertEvalEquals("4.0", "$math.max(4,3.5)");
         assertEvalEquals("4.0", "$math.max(4,3.5,3)");
     }
+
+    public void testFastPaths()
+    {
+        MathTool math = new MathTool();
+        Object[] operands = { 0, 1, -1, 7, 3, 1000, Integer.MAX_VALUE, Integer.MIN_VALUE, 10L, -4000000000L,
+                              1L << 52, (1L << 53) - 1, 1L << 53, Long.MAX_VALUE, 2.5, -0.5, 3.0, 1e300,
+                              Double.NaN, Double.POSITIVE_INFINITY, "12", "1.5", 2.5f, (short)4, null };
+        for (Object a : operands)
+        {
+            for (Object b : operands)
+            {
+                // the fast paths give the same results as the general path
+                String msg = a + ", " + b;
+                assertEquals("add " + msg, math.add(new Object[] { a, b }), math.add(a, b));
+                assertEquals("sub " + msg, math.sub(new Object[] { a, b }), math.sub(a, b));
+                assertEquals("mul " + msg, math.mul(new Object[] { a, b }), math.mul(a, b));
+                assertEquals("div " + msg, math.div(new Object[] { a, b }), math.div(a, b));
+            }
+        }
+        assertSame(math.add(500, 500), math.add(999, 1));
+        assertEquals(Long.valueOf(5000000000L), math.mul(50000, 100000));
+        assertEvalEquals("2.5", "$math.div(5,2)");
+        assertEvalEquals("3", "$math.div(6,2)");
+        assertEvalEquals("3.0", "$math.div(6.0,2)");
+    }
 }
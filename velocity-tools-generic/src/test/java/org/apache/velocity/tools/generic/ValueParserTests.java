@@ -0,0 +1,125 @@
+package org.apache.velocity.tools.generic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * <p>Tests for ValueParser</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id$
+ */
+public class ValueParserTests
+{
+    private static Map<String,Object> source()
+    {
+        Map<String,Object> source = new HashMap<String,Object>();
+        source.put("id", "42");
+        source.put("user.name", "bob");
+        source.put("user.address.city", "Paris");
+        source.put("user.address.zip", "75001");
+        source.put("order.total", "12.5");
+        source.put("dangling.", "x");
+        return source;
+    }
+
+    public @Test void testSubkeys() throws Exception
+    {
+        ValueParser parser = new ValueParser(source());
+        assertTrue(parser.hasSubkeys());
+        assertEquals(Arrays.asList("dangling", "order", "user"), Arrays.asList(parser.getSubkeys().toArray()));
+        assertEquals("42", parser.get("id"));
+        ValueParser user = (ValueParser)parser.get("user");
+        assertEquals("bob", user.get("name"));
+        assertEquals("Paris", ((ValueParser)user.get("address")).get("city"));
+        assertEquals("75001", ((ValueParser)parser.get("user.address")).get("zip"));
+        assertNull(parser.get("dangling"));
+        assertNull(parser.get("nope"));
+        assertNull(parser.get("user.nope"));
+
+        // subkey parsers are only kept over snapshots
+        assertNotSame(user, parser.get("user"));
+        parser.setSnapshot(true);
+        user = (ValueParser)parser.get("user");
+        assertSame(user, parser.get("user"));
+        assertSame(user.get("address"), user.get("address"));
+    }
+
+    public @Test void testModifiedSubkeys() throws Exception
+    {
+        ValueParser parser = new ValueParser(source());
+        parser.setReadOnly(false);
+        ValueParser user = (ValueParser)parser.get("user");
+        user.put("name", "alice");
+        assertEquals("bob", ((ValueParser)parser.get("user")).get("name"));
+        parser.put("user.name", "carol");
+        parser.put("item.id", "7");
+        assertEquals("carol", ((ValueParser)parser.get("user")).get("name"));
+        assertEquals("7", ((ValueParser)parser.get("item")).get("id"));
+        assertTrue(parser.getSubkeys().contains("item"));
+        parser.remove("item.id");
+        assertNull(parser.get("item"));
+    }
+
+    public @Test void testConversions() throws Exception
+    {
+        Map<String,Object> source = source();
+        source.put("ids", "1,2,3");
+        ValueParser parser = new ValueParser(source);
+        parser.setSnapshot(true);
+        assertEquals(Integer.valueOf(42), parser.getInteger("id"));
+        assertSame(parser.getNumber("id"), parser.getNumber("id"));
+        assertSame(parser.getDouble("order.total"), parser.getDouble("order.total"));
+        assertEquals(42L, parser.getLong("id", 0L));
+        assertEquals(7L, parser.getLong("nope", 7L));
+        assertNull(parser.getLong("nope"));
+        int[] ids = parser.getInts("ids");
+        assertEquals(3, ids.length);
+        ids[0] = 10;
+        assertEquals(1, parser.getInts("ids")[0]);
+        parser.setFormat("integer");
+        assertEquals(Integer.valueOf(12), parser.getInteger("order.total"));
+
+        // changes to a source map which is not a snapshot are seen
+        parser = new ValueParser(source);
+        assertEquals(42, parser.getInt("id", 0));
+        assertEquals("bob", ((ValueParser)parser.get("user")).get("name"));
+        source.put("id", "43");
+        source.put("user.name", "alice");
+        assertEquals(43, parser.getInt("id", 0));
+        assertEquals("alice", ((ValueParser)parser.get("user")).get("name"));
+
+        // as well as changes made through a parser
+        parser.setReadOnly(false);
+        parser.put("id", "44");
+        assertEquals(44, parser.getInt("id", 0));
+    }
+}
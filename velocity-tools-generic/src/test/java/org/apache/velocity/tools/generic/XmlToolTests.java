@@ -313,6 +313,36 @@ public class XmlToolTests {
         assertEquals("<baz>woogie</baz><baz>wiggie</baz>", baz.toString());
     }
 
+    public @Test void methodStream() throws Exception
+    {
+        XmlTool xml = new XmlTool();
+        xml.configure(new ValueParser());
+        Iterator<XmlTool> it = xml.stream(XML_FILE, "baz");
+        assertNotNull(it);
+        assertTrue(it.hasNext());
+        XmlTool baz = it.next();
+        assertEquals("woogie", baz.getText());
+        assertNull(baz.getParent());
+        assertEquals("wiggie", it.next().getText());
+        assertFalse(it.hasNext());
+
+        it = xml.stream(XML_FILE, "/foo/bar");
+        assertEquals("a", it.next().attr("name"));
+        assertFalse(it.hasNext());
+
+        assertFalse(xml.stream(XML_FILE, "/baz").hasNext());
+
+        XmlTool.StreamIterator limited = xml.stream(XML_FILE, "foo/baz", 1);
+        assertEquals("woogie", limited.next().getText());
+        assertFalse(limited.hasNext());
+        limited.close();
+
+        it = xml.stream(XML_FILE, "foo");
+        XmlTool foo = it.next();
+        assertEquals(2, foo.find("baz").size());
+        assertFalse(it.hasNext());
+    }
+
 
 }
         
@@ -19,17 +19,27 @@ package org.apache.velocity.tools.test.whitebox;
  * under the License.
  */
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.*;
 import static org.junit.Assert.*;
 import org.apache.commons.beanutils.Converter;
 import org.apache.commons.beanutils.converters.BooleanConverter;
 import org.apache.commons.beanutils.converters.DoubleConverter;
 import org.apache.commons.beanutils.converters.IntegerConverter;
+import org.apache.velocity.tools.ClassUtils;
 import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.ToolManager;
+import org.apache.velocity.tools.Toolbox;
+import org.apache.velocity.tools.ToolboxFactory;
 import org.apache.velocity.tools.config.*;
 import org.apache.velocity.tools.generic.MathTool;
 import org.apache.velocity.tools.generic.NumberTool;
@@ -371,9 +381,115 @@ public class ConfigTests {
         assertValid(tool);
     }
 
+    public @Test void testWarmUpTools()
+    {
+        EasyFactoryConfiguration easy = new EasyFactoryConfiguration();
+        easy.toolbox("application")
+                .tool("counted", CountedTool.class);
+        easy.toolbox("request")
+                .tool(ResourceTool.class);
+        WarmToolManager manager = new WarmToolManager();
+        manager.configure(easy);
+        CountedTool.instances = 0;
+        assertEquals(2, manager.warmUpTools());
+
+        // the application tool is created once and kept by the application toolbox
+        assertEquals(1, CountedTool.instances);
+        Object counted = manager.getApplicationToolbox().get("counted");
+        assertTrue(counted instanceof CountedTool);
+        assertSame(counted, manager.createContext().get("counted"));
+        assertEquals(1, CountedTool.instances);
+    }
+
+    public @Test void testSnapshot() throws Exception
+    {
+        FileFactoryConfiguration xml = new XmlFactoryConfiguration();
+        xml.read(XML_PATH);
+        ToolboxFactory expected = new ToolboxFactory();
+        expected.configure(xml);
+
+        File source = File.createTempFile("tools", ".xml");
+        source.deleteOnExit();
+        Files.copy(ClassUtils.getResourceAsStream(XML_PATH, this), source.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        xml = new XmlFactoryConfiguration();
+        xml.read(XML_PATH);
+        ConfigurationSnapshot snapshot = new ConfigurationSnapshot(xml);
+        snapshot.addInput(source.getPath(), source.toURI().toURL());
+        File serialized = File.createTempFile("tools", ".snapshot");
+        serialized.deleteOnExit();
+        OutputStream out = new FileOutputStream(serialized);
+        snapshot.write(out);
+        out.close();
+
+        snapshot = ConfigurationSnapshot.read(serialized.toURI().toURL());
+        assertNotNull(snapshot);
+        assertFalse(snapshot.isStale());
+        ToolboxFactory factory = new ToolboxFactory();
+        factory.configure(snapshot);
+        assertEquals(expected.getData(), factory.getData());
+        for (String scope : new String[] { Scope.REQUEST, Scope.APPLICATION })
+        {
+            Toolbox toolbox = factory.createToolbox(scope);
+            assertEquals(expected.createToolbox(scope).getToolClassMap(), toolbox.getToolClassMap());
+        }
+        assertEquals(Locale.US, ((ResourceTool)factory.createToolbox(Scope.REQUEST).get("text")).getLocale());
+        assertEquals(Locale.FRENCH, ((NumberTool)factory.createToolbox(Scope.APPLICATION).get("number")).getLocale());
+
+        // a snapshot can configure several factories
+        ToolboxFactory other = new ToolboxFactory();
+        other.configure(snapshot);
+        assertEquals(Locale.US, ((ResourceTool)other.createToolbox(Scope.REQUEST).get("text")).getLocale());
+        assertEquals(factory.createToolbox(Scope.APPLICATION).getToolClassMap(), other.createToolbox(Scope.APPLICATION).getToolClassMap());
+
+        Files.write(source.toPath(), "<tools/>".getBytes("UTF-8"));
+        assertTrue(snapshot.isStale());
+        source.delete();
+        assertTrue(snapshot.isStale());
+        assertNull(ConfigurationSnapshot.read(source.toURI().toURL()));
+
+        // classes outside of the allowed ones are rejected
+        FactoryConfiguration unsafe = new FactoryConfiguration();
+        Data datum = new Data();
+        datum.setKey("counter");
+        datum.setType("field");
+        datum.setValue(ConfigTests.class.getName() + ".COUNTER");
+        unsafe.addData(datum);
+        out = new FileOutputStream(serialized);
+        new ConfigurationSnapshot(unsafe).write(out);
+        out.close();
+        assertNull(ConfigurationSnapshot.read(serialized.toURI().toURL()));
+    }
+
 
     /************* Support classes and methods ******************/
 
+    public static class CountedTool
+    {
+        static int instances = 0;
+
+        public CountedTool()
+        {
+            ++instances;
+        }
+    }
+
+    public static class WarmToolManager extends ToolManager
+    {
+        public WarmToolManager()
+        {
+            super(false, false);
+        }
+
+        @Override
+        public Toolbox getApplicationToolbox()
+        {
+            return super.getApplicationToolbox();
+        }
+    }
+
+    public static final AtomicInteger COUNTER = new AtomicInteger();
+
     @DefaultKey("test")
     public static class FakeTool
     {
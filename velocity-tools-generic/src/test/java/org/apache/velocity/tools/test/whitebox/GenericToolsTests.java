@@ -144,6 +144,13 @@ public class GenericToolsTests {
 
         // pass a full field path to the get() method
         assertEquals(Long.MIN_VALUE, fieldTool.get("java.lang.Long.MIN_VALUE"));
+        // pass a full path to a mutable field
+        String path = getClass().getName() + ".MUTABLE_FIELD";
+        assertEquals(MUTABLE_FIELD, fieldTool.get(path));
+        MUTABLE_FIELD = foo;
+        assertEquals(foo, fieldTool.get(path));
+        assertNull(fieldTool.get(getClass().getName() + ".NO_SUCH_FIELD"));
+        assertNull(fieldTool.get("no.such.Class.FIELD"));
     }
 
     public @Test void testMathTool() {
@@ -0,0 +1,118 @@
+package org.apache.velocity.tools.test.whitebox;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.velocity.tools.Instrumentation;
+import org.apache.velocity.tools.InstrumentationListener;
+import org.apache.velocity.tools.InstrumentationStatistics;
+import org.apache.velocity.tools.ToolContext;
+import org.apache.velocity.tools.ToolManager;
+import org.apache.velocity.tools.config.ConfigurationUtils;
+import org.junit.Test;
+
+/**
+ * <p>Instrumentation tests.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id$
+ */
+public class InstrumentationTests
+{
+    public @Test void testListeners() throws Exception
+    {
+        final List<String> events = new ArrayList<String>();
+        InstrumentationListener listener = new InstrumentationListener()
+        {
+            public void toolCreated(String key, Class toolClass, long nanos)
+            {
+                events.add("created " + key);
+            }
+
+            public void toolLookup(String key, boolean hit)
+            {
+                events.add((hit ? "hit " : "miss ") + key);
+            }
+
+            public void templateRendered(String template, long nanos)
+            {
+                events.add("rendered " + template);
+            }
+        };
+        InstrumentationStatistics statistics = new InstrumentationStatistics();
+
+        ToolManager manager = new ToolManager(false, false);
+        manager.configure(ConfigurationUtils.getGenericTools());
+        assertFalse(Instrumentation.isEnabled());
+        Instrumentation.addListener(listener);
+        Instrumentation.addListener(statistics);
+        try
+        {
+            assertTrue(Instrumentation.isEnabled());
+            ToolContext context = manager.createContext();
+            context.get("link");
+            context.get("link");
+            Instrumentation.templateRendered("index.vm", 3000000L);
+            Instrumentation.templateRendered("index.vm", 1500000000L);
+        }
+        finally
+        {
+            Instrumentation.removeListener(listener);
+            Instrumentation.removeListener(statistics);
+        }
+        assertFalse(Instrumentation.isEnabled());
+        assertEquals("[created link, miss link, hit link, rendered index.vm, rendered index.vm]", events.toString());
+
+        assertEquals(1, statistics.getCacheHits());
+        assertEquals(1, statistics.getCacheMisses());
+        assertEquals(1, statistics.getTools().get("link").getCount());
+        InstrumentationStatistics.TemplateStatistics index = statistics.getTemplates().get("index.vm");
+        assertEquals(2, index.getCount());
+        assertEquals(1500000L, index.getMaxMicros());
+        long[] histogram = index.getHistogram();
+        assertEquals(statistics.getHistogramBounds().length + 1, histogram.length);
+        assertEquals(1, histogram[2]);
+        assertEquals(1, histogram[histogram.length - 1]);
+
+        statistics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(InstrumentationStatistics.OBJECT_NAME);
+        try
+        {
+            assertEquals(1L, server.getAttribute(name, "CacheHits"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, statistics.getCacheHits());
+            assertTrue(statistics.getTemplates().isEmpty());
+        }
+        finally
+        {
+            server.unregisterMBean(name);
+        }
+    }
+}
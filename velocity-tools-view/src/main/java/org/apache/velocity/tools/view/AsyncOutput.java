@@ -0,0 +1,473 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.slf4j.Logger;
+
+/**
+ * <p>Output of an asynchronous {@link VelocityViewServlet} request.</p>
+ * <p>The request is processed against a response wrapper which buffers
+ * the whole output in a pooled buffer. Once rendering is done, the buffer
+ * is handed to a non-blocking {@link WriteListener} which writes it to the
+ * client as fast as the client reads it, without holding any thread, and
+ * then completes the asynchronous context.</p>
+ * <p>The buffer returns to the pool once both the rendering is over and the
+ * asynchronous context is completed, whichever happens last.</p>
+ * <p>If the request times out while the rendering is still in progress, the
+ * rendering is cancelled: its thread is interrupted, and any further output
+ * or error sending fails. The asynchronous context is then only completed
+ * once the rendering is over. Since containers may still recycle the request
+ * on their own after a timeout, the asynchronous timeout should exceed the
+ * maximum rendering time.</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+final class AsyncOutput extends HttpServletResponseWrapper implements WriteListener, AsyncListener
+{
+    /**
+     * Maximum number of pooled buffers.
+     */
+    static final int MAX_POOLED_BUFFERS = 64;
+
+    /**
+     * Buffers grown beyond this capacity are not pooled.
+     */
+    static final int MAX_POOLED_CAPACITY = 256 * 1024;
+
+    /**
+     * Initial buffers capacity, also the size of written chunks.
+     */
+    static final int CHUNK_SIZE = 8192;
+
+    private static final Queue<Buffer> pool = new ConcurrentLinkedQueue<Buffer>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Byte buffer exposing its content.
+     */
+    static final class Buffer extends ByteArrayOutputStream
+    {
+        Buffer()
+        {
+            super(CHUNK_SIZE);
+        }
+
+        byte[] bytes()
+        {
+            return buf;
+        }
+
+        int capacity()
+        {
+            return buf.length;
+        }
+    }
+
+    static Buffer acquire()
+    {
+        Buffer buffer = pool.poll();
+        if (buffer == null)
+        {
+            return new Buffer();
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    static void recycle(Buffer buffer)
+    {
+        if (buffer.capacity() > MAX_POOLED_CAPACITY)
+        {
+            /* too big to be kept */
+            return;
+        }
+        if (pooled.incrementAndGet() <= MAX_POOLED_BUFFERS)
+        {
+            buffer.reset();
+            pool.offer(buffer);
+        }
+        else
+        {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of currently pooled buffers
+     */
+    static int getPooledBuffers()
+    {
+        return pooled.get();
+    }
+
+    private final AsyncContext async;
+    private final Logger log;
+    private final Buffer buffer = acquire();
+    private final AtomicInteger references = new AtomicInteger(2);
+    private ServletOutputStream bufferStream = null;
+    private PrintWriter bufferWriter = null;
+    private volatile boolean bypassed = false;
+    private volatile boolean cancelled = false;
+    private volatile boolean done = false;
+    private Thread renderer = null;
+    private ServletOutputStream out = null;
+    private int position = 0;
+
+    AsyncOutput(AsyncContext async, HttpServletResponse response, Logger log)
+    {
+        super(response);
+        this.async = async;
+        this.log = log;
+        async.addListener(this);
+    }
+
+    /* response wrapper */
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException
+    {
+        if (bufferWriter != null)
+        {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (bufferStream == null)
+        {
+            bufferStream = new ServletOutputStream()
+            {
+                @Override
+                public void write(int b) throws IOException
+                {
+                    checkCancelled();
+                    buffer.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException
+                {
+                    checkCancelled();
+                    buffer.write(b, off, len);
+                }
+
+                @Override
+                public boolean isReady()
+                {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener)
+                {
+                    throw new IllegalStateException("output is buffered");
+                }
+            };
+        }
+        return bufferStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException
+    {
+        if (bufferStream != null)
+        {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        if (bufferWriter == null)
+        {
+            /* PrintWriter swallows IOExceptions, so cancellation is reported unchecked */
+            bufferWriter = new PrintWriter(new OutputStreamWriter(buffer, getCharacterEncoding()))
+            {
+                @Override
+                public void write(int c)
+                {
+                    checkNotCancelled();
+                    super.write(c);
+                }
+
+                @Override
+                public void write(char[] buf, int off, int len)
+                {
+                    checkNotCancelled();
+                    super.write(buf, off, len);
+                }
+
+                @Override
+                public void write(String str, int off, int len)
+                {
+                    checkNotCancelled();
+                    super.write(str, off, len);
+                }
+            };
+        }
+        return bufferWriter;
+    }
+
+    @Override
+    public void flushBuffer()
+    {
+        flushWriter();
+    }
+
+    @Override
+    public void resetBuffer()
+    {
+        super.resetBuffer();
+        flushWriter();
+        buffer.reset();
+    }
+
+    @Override
+    public void reset()
+    {
+        super.reset();
+        flushWriter();
+        buffer.reset();
+    }
+
+    @Override
+    public void setContentLength(int len)
+    {
+        // content length is set from the buffer size
+    }
+
+    @Override
+    public void setContentLengthLong(long len)
+    {
+        // content length is set from the buffer size
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException
+    {
+        checkNotCancelled();
+        bypassed = true;
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException
+    {
+        checkNotCancelled();
+        bypassed = true;
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException
+    {
+        checkNotCancelled();
+        bypassed = true;
+        super.sendRedirect(location);
+    }
+
+    private void checkCancelled() throws IOException
+    {
+        if (cancelled)
+        {
+            throw new IOException("asynchronous request timed out");
+        }
+    }
+
+    private void checkNotCancelled()
+    {
+        if (cancelled)
+        {
+            throw new IllegalStateException("asynchronous request timed out");
+        }
+    }
+
+    private void flushWriter()
+    {
+        if (bufferWriter != null)
+        {
+            bufferWriter.flush();
+        }
+    }
+
+    /* output */
+
+    /**
+     * @return buffered output size
+     */
+    int size()
+    {
+        flushWriter();
+        return buffer.size();
+    }
+
+    /**
+     * Called by the rendering thread before rendering starts, so that it
+     * can be interrupted if the request times out.
+     */
+    synchronized void rendering()
+    {
+        renderer = Thread.currentThread();
+    }
+
+    /**
+     * Called once rendering is over, whatever its outcome: starts writing
+     * the buffered content to the client, or completes the request if the
+     * response was handled otherwise or if the rendering was cancelled.
+     */
+    void rendered()
+    {
+        synchronized (this)
+        {
+            renderer = null;
+        }
+        /* clear a pending interruption, the thread may be reused */
+        Thread.interrupted();
+        done = true;
+        try
+        {
+            flushWriter();
+            HttpServletResponse response = (HttpServletResponse)getResponse();
+            if (cancelled || bypassed || buffer.size() == 0 || response.isCommitted())
+            {
+                async.complete();
+            }
+            else
+            {
+                response.setContentLength(buffer.size());
+                out = response.getOutputStream();
+                // the container will call onWritePossible()
+                out.setWriteListener(this);
+            }
+        }
+        catch (Exception e)
+        {
+            // context already completed after a timeout, or output unavailable
+            log.debug("could not write asynchronous output", e);
+            try
+            {
+                async.complete();
+            }
+            catch (IllegalStateException ise) {}
+        }
+        finally
+        {
+            release();
+        }
+    }
+
+    /**
+     * Cancels the rendering, if still in progress, and completes the request
+     * if the rendering is over.
+     */
+    private void cancel()
+    {
+        cancelled = true;
+        synchronized (this)
+        {
+            if (renderer != null)
+            {
+                renderer.interrupt();
+            }
+        }
+        if (done)
+        {
+            try
+            {
+                async.complete();
+            }
+            catch (IllegalStateException ise)
+            {
+                // already completed by rendered()
+            }
+        }
+    }
+
+    private void release()
+    {
+        if (references.decrementAndGet() == 0)
+        {
+            recycle(buffer);
+        }
+    }
+
+    /* WriteListener */
+
+    @Override
+    public void onWritePossible() throws IOException
+    {
+        byte[] bytes = buffer.bytes();
+        int count = buffer.size();
+        while (out.isReady())
+        {
+            if (position == count)
+            {
+                async.complete();
+                return;
+            }
+            int len = Math.min(CHUNK_SIZE, count - position);
+            out.write(bytes, position, len);
+            position += len;
+        }
+    }
+
+    @Override
+    public void onError(Throwable t)
+    {
+        log.debug("asynchronous output failed", t);
+        async.complete();
+    }
+
+    /* AsyncListener */
+
+    @Override
+    public void onComplete(AsyncEvent event)
+    {
+        release();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event)
+    {
+        log.warn("asynchronous request timed out");
+        cancel();
+    }
+
+    @Override
+    public void onError(AsyncEvent event)
+    {
+        log.debug("asynchronous request failed", event.getThrowable());
+        cancel();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event)
+    {
+    }
+}
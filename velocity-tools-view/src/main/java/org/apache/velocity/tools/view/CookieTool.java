@@ -20,12 +20,18 @@ package org.apache.velocity.tools.view;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.velocity.context.Context;
 import org.apache.velocity.tools.generic.SafeConfig;
+import org.apache.velocity.tools.generic.ValueParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +56,18 @@ import org.apache.velocity.tools.Scope;
  * &lt;/tools&gt;
  * </pre>
  *
+ * <p>Request cookies are indexed by name on first access, and only wrapped
+ * into {@link SugarCookie}s when they are accessed.</p>
+ * <p>If the tool is configured with a <code>batch</code> property set to
+ * <code>true</code>, added cookies are not sent right away: they are kept
+ * until {@link #flush()} is called. Cookies added several times with the same
+ * name, domain and path are then sent only once, with their last value.
+ * Within a {@link ViewToolContext}, pending cookies are flushed automatically
+ * before the template output reaches the response (see
+ * {@link ViewToolContext#beforeCommit()}); cookies added once the response is
+ * committed are dropped. With other contexts, batched cookies have to be flushed
+ * explicitly by calling <code>$cookies.flush()</code>.</p>
+ *
  * <p>This class is only designed for use as a request-scope tool.</p>
  *
  * @author <a href="mailto:dim@colebatch.com">Dmitri Colebatch</a>
@@ -63,12 +81,54 @@ public class CookieTool extends SafeConfig
 {
     protected static Logger log = LoggerFactory.getLogger(CookieTool.class);
 
+    /**
+     * Batching configuration key.
+     * @since VelocityTools 3.1
+     */
+    public static final String BATCH_KEY = "batch";
+
     protected HttpServletRequest request;
     protected HttpServletResponse response;
     private List<Cookie> jar;
+    private Cookie[] cookies;
+    private Map<String,Integer> index;
+    private boolean batch = false;
+    private Map<String,Cookie> pending;
+    private Context context;
 
     // --------------------------------------- Setup Methods -------------
 
+    /**
+     * Configuration.
+     * @param values configuration values
+     * @since VelocityTools 3.1
+     */
+    protected void configure(ValueParser values)
+    {
+        batch = values.getBoolean(BATCH_KEY, batch);
+    }
+
+    /**
+     * Sets whether added cookies are kept until {@link #flush()} is called.
+     * @param batch whether to batch added cookies
+     * @since VelocityTools 3.1
+     */
+    public void setBatch(boolean batch)
+    {
+        this.batch = batch;
+    }
+
+    /**
+     * Sets the page context, used to flush batched cookies before the output
+     * commits the response.
+     * @param context page context
+     * @since VelocityTools 3.1
+     */
+    public void setVelocityContext(Context context)
+    {
+        this.context = context;
+    }
+
     /**
      * Sets the current {@link HttpServletRequest}. This is required
      * for this tool to operate and will throw a NullPointerException
@@ -111,22 +171,59 @@ public class CookieTool extends SafeConfig
     public List<Cookie> getAll()
     {
         if (jar == null) {
-            Cookie[] array = request.getCookies();
-            if (array == null)
+            if (!index())
             {
                 return null;
             }
 
-            jar = new ArrayList<Cookie>(array.length);
-            for (Cookie c : array)
+            for (int i = 0; i < cookies.length; i++)
             {
-                Cookie sc = new SugarCookie(c);
-                jar.add(sc);
+                sugar(i);
             }
+            jar = new ArrayList<Cookie>(Arrays.asList(cookies));
         }
         return jar;
     }
 
+    /**
+     * Indexes request cookies by name, the first one winning.
+     * @return whether the request has cookies
+     */
+    private boolean index()
+    {
+        if (index == null)
+        {
+            Cookie[] array = request.getCookies();
+            if (array == null)
+            {
+                return false;
+            }
+            cookies = array.clone();
+            index = new HashMap<String,Integer>(2 * cookies.length);
+            for (int i = cookies.length - 1; i >= 0; i--)
+            {
+                index.put(cookies[i].getName(), i);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wraps a request cookie on first access.
+     * @param i cookie position
+     * @return wrapped cookie
+     */
+    private Cookie sugar(int i)
+    {
+        Cookie c = cookies[i];
+        if (!(c instanceof SugarCookie))
+        {
+            c = new SugarCookie(c);
+            cookies[i] = c;
+        }
+        return c;
+    }
+
     /**
      * Returns the Cookie with the specified name, if it exists.
      *
@@ -138,15 +235,12 @@ public class CookieTool extends SafeConfig
      */
     public Cookie get(String name)
     {
-        List<Cookie> all = getAll();
-        if (all != null)
+        if (name != null && index())
         {
-            for (Cookie c : all)
+            Integer i = index.get(name);
+            if (i != null)
             {
-                if (c.getName().equals(name))
-                {
-                    return c;
-                }
+                return sugar(i);
             }
         }
         return null;
@@ -155,6 +249,8 @@ public class CookieTool extends SafeConfig
     /**
      * Adds the specified Cookie to the HttpServletResponse.
      * This does *not* add the Cookie to the current request.
+     * When batching, the cookie is only sent by {@link #flush()}, and replaces
+     * any pending cookie with the same name, domain and path.
      *
      * @param c is for cookie (that's good enough for me)
      * @since VelocityTools 2.0
@@ -167,7 +263,57 @@ public class CookieTool extends SafeConfig
         {
             return null;
         }
-        response.addCookie(c);
+        if (batch)
+        {
+            if (pending == null)
+            {
+                pending = new LinkedHashMap<String,Cookie>();
+            }
+            if (pending.isEmpty() && context instanceof ViewToolContext)
+            {
+                ((ViewToolContext)context).addBeforeCommit(new Runnable()
+                {
+                    public void run()
+                    {
+                        flush();
+                    }
+                });
+            }
+            String key = c.getName() + ';' + c.getDomain() + ';' + c.getPath();
+            // keep the order of the last additions
+            pending.remove(key);
+            pending.put(key, c);
+        }
+        else
+        {
+            response.addCookie(c);
+        }
+        return "";
+    }
+
+    /**
+     * Sends the pending cookies, when batching.
+     *
+     * @return an empty String to prevent the reference from rendering
+     * @since VelocityTools 3.1
+     */
+    public String flush()
+    {
+        if (pending != null && !pending.isEmpty())
+        {
+            if (response.isCommitted())
+            {
+                getLog().warn("response already committed, dropping cookies {}", pending.keySet());
+            }
+            else
+            {
+                for (Cookie c : pending.values())
+                {
+                    response.addCookie(c);
+                }
+            }
+            pending.clear();
+        }
         return "";
     }
 
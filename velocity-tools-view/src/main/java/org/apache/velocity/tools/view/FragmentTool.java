@@ -0,0 +1,55 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.config.DefaultKey;
+import org.apache.velocity.tools.config.ValidScope;
+import org.apache.velocity.tools.generic.ValueParser;
+
+/**
+ * <p>View version of {@link org.apache.velocity.tools.generic.FragmentTool}: fetched
+ * URLs can also be local to the webapp, absolute or relative to the current
+ * template, as with the {@link ImportTool}. Local URLs are read within the current
+ * request, so they are included by the declaring thread when declared, while remote
+ * URLs and templates are still rendered concurrently.</p>
+ * <pre>
+ * Toolbox configuration:
+ * &lt;tools&gt;
+ *   &lt;toolbox scope="request"&gt;
+ *     &lt;tool class="org.apache.velocity.tools.view.FragmentTool"
+ *              threads="8" timeout="5000" fallback=""/&gt;
+ *   &lt;/toolbox&gt;
+ * &lt;/tools&gt;
+ * </pre>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id:$
+ */
+@DefaultKey("fragments")
+@ValidScope(Scope.REQUEST)
+public class FragmentTool extends org.apache.velocity.tools.generic.FragmentTool
+{
+    protected void initializeImportSupport(ValueParser config)
+    {
+        importSupport = new ViewImportSupport();
+        importSupport.configure(config);
+    }
+}
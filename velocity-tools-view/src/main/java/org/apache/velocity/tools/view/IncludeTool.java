@@ -20,11 +20,16 @@ package org.apache.velocity.tools.view;
  */
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.ServletContext;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.config.InvalidScope;
@@ -41,6 +46,14 @@ import org.apache.velocity.tools.generic.ValueParser;
  * See {@link #find(String, String)}, {@link
  * #find(String, Locale)} and {@link #exists(String)} for usage.</p>
  *
+ * <p>Lookup results, negative ones included, are cached in a bounded cache shared
+ * by all the instances using the same Velocity engine, so that resource loaders
+ * are not probed on each request. Entries expire after <code>cacheTTL</code>
+ * seconds, which defaults to the smallest <code>modificationCheckInterval</code>
+ * of the engine's resource loaders, or to {@link #DEFAULT_CACHE_TTL} if none is
+ * configured. A zero TTL disables the cache. The <code>cacheSize</code> property
+ * bounds the number of cached lookups.</p>
+ *
  * <p>This is the successor to the MultiViewsTool in VelocityTools 1.x.
  * Please note that it does NOT do the actual #include or #parse for
  * you, but is merely to aid in include content negotiation.</p>
@@ -64,6 +77,35 @@ public class IncludeTool extends SafeConfig implements Serializable
     protected static final String DEFAULT_LANGUAGE_KEY =
         "org.apache.velocity.tools.view.i18n.defaultLanguage";
 
+    /**
+     * The key used to configure the lifetime, in seconds, of cached lookups.
+     * @since VelocityTools 3.1
+     */
+    public static final String CACHE_TTL_KEY = "cacheTTL";
+
+    /**
+     * The key used to configure the maximum number of cached lookups.
+     * @since VelocityTools 3.1
+     */
+    public static final String CACHE_SIZE_KEY = "cacheSize";
+
+    /**
+     * Default lifetime of cached lookups, in seconds, which is the default
+     * modification check interval of Velocity's file resource loader.
+     * @since VelocityTools 3.1
+     */
+    public static final int DEFAULT_CACHE_TTL = 2;
+
+    /**
+     * Default maximum number of cached lookups.
+     * @since VelocityTools 3.1
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    /* lookup caches, per engine */
+    private static final Map<VelocityEngine,Map<String,CachedLookup>> lookupCaches =
+        Collections.synchronizedMap(new WeakHashMap<VelocityEngine,Map<String,CachedLookup>>());
+
     /**
      * The two character abbreviation for the request's default
      * language.
@@ -71,6 +113,20 @@ public class IncludeTool extends SafeConfig implements Serializable
     protected String defaultLanguage;
     protected VelocityEngine engine;
 
+    /**
+     * Lifetime of cached lookups, in milliseconds, or zero if disabled.
+     * @since VelocityTools 3.1
+     */
+    protected long cacheTTL = -1;
+
+    /**
+     * Maximum number of cached lookups.
+     * @since VelocityTools 3.1
+     */
+    protected int cacheSize = DEFAULT_CACHE_SIZE;
+
+    private transient Map<String,CachedLookup> lookupCache;
+
     /**
      * Extracts the default language from the specified
      * <code>ViewContext</code>, looking first at the Velocity
@@ -85,6 +141,12 @@ public class IncludeTool extends SafeConfig implements Serializable
     protected void configure(ValueParser params)
     {
         configure((ViewToolContext)params.get(ViewToolContext.CONTEXT_KEY));
+        Integer ttl = params.getInteger(CACHE_TTL_KEY);
+        if (ttl != null)
+        {
+            cacheTTL = ttl * 1000L;
+        }
+        cacheSize = params.getInt(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE);
     }
 
     protected void configure(ViewToolContext ctx)
@@ -158,6 +220,19 @@ public class IncludeTool extends SafeConfig implements Serializable
      * not localizable.
      */
     public String find(String name, String language)
+    {
+        String key = "find:" + name + '\n' + language + '\n' + defaultLanguage;
+        CachedLookup cached = getCached(key);
+        if (cached != null)
+        {
+            return (String)cached.value;
+        }
+        String localizedName = resolve(name, language);
+        putCached(key, localizedName);
+        return localizedName;
+    }
+
+    private String resolve(String name, String language)
     {
         String localizedName = name + '.' + language;
         if (!exists(localizedName))
@@ -198,16 +273,25 @@ public class IncludeTool extends SafeConfig implements Serializable
      */
     public boolean exists(String name)
     {
+        String key = "exists:" + name;
+        CachedLookup cached = getCached(key);
+        if (cached != null)
+        {
+            return (Boolean)cached.value;
+        }
+        boolean exists;
         try
         {
             // checks for both templates and static content
-            return engine.resourceExists(name);
+            exists = engine.resourceExists(name);
         }
         // make sure about this...
         catch (ResourceNotFoundException rnfe)
         {
-            return false;
+            exists = false;
         }
+        putCached(key, exists);
+        return exists;
     }
 
     /**
@@ -225,4 +309,91 @@ public class IncludeTool extends SafeConfig implements Serializable
         return exists(localizedName);
     }
 
+    /**
+     * Returns the lifetime of cached lookups, in milliseconds. Unless configured,
+     * it is the smallest positive modification check interval among the engine's
+     * resource loaders, or {@link #DEFAULT_CACHE_TTL} seconds.
+     * @return lifetime of cached lookups, or zero if caching is disabled
+     * @since VelocityTools 3.1
+     */
+    protected long getCacheTTL()
+    {
+        if (cacheTTL < 0)
+        {
+            long ttl = -1;
+            Object loaders = engine == null ? null : engine.getProperty(RuntimeConstants.RESOURCE_LOADER);
+            Collection names = loaders instanceof Collection ? (Collection)loaders :
+                loaders == null ? Collections.emptyList() : Collections.singletonList(loaders);
+            for (Object loader : names)
+            {
+                Object interval = engine.getProperty(String.valueOf(loader).trim() + ".resource.loader.modificationCheckInterval");
+                if (interval != null)
+                {
+                    try
+                    {
+                        long seconds = Long.parseLong(String.valueOf(interval).trim());
+                        if (seconds > 0 && (ttl < 0 || seconds * 1000L < ttl))
+                        {
+                            ttl = seconds * 1000L;
+                        }
+                    }
+                    catch (NumberFormatException nfe) {}
+                }
+            }
+            cacheTTL = ttl < 0 ? DEFAULT_CACHE_TTL * 1000L : ttl;
+        }
+        return cacheTTL;
+    }
+
+    private CachedLookup getCached(String key)
+    {
+        if (getCacheTTL() == 0)
+        {
+            return null;
+        }
+        if (lookupCache == null)
+        {
+            synchronized (lookupCaches)
+            {
+                lookupCache = lookupCaches.get(engine);
+                if (lookupCache == null)
+                {
+                    lookupCache = new ConcurrentHashMap<String,CachedLookup>();
+                    lookupCaches.put(engine, lookupCache);
+                }
+            }
+        }
+        CachedLookup cached = lookupCache.get(key);
+        if (cached != null && cached.expiration < System.currentTimeMillis())
+        {
+            lookupCache.remove(key, cached);
+            cached = null;
+        }
+        return cached;
+    }
+
+    private void putCached(String key, Object value)
+    {
+        if (lookupCache != null)
+        {
+            if (lookupCache.size() >= cacheSize)
+            {
+                // crude bounding: expired or not, start afresh
+                lookupCache.clear();
+            }
+            lookupCache.put(key, new CachedLookup(value, System.currentTimeMillis() + getCacheTTL()));
+        }
+    }
+
+    private static class CachedLookup
+    {
+        final Object value;
+        final long expiration;
+
+        CachedLookup(Object value, long expiration)
+        {
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
 }
@@ -0,0 +1,218 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>Lazy supplier of items for the {@link PagerTool}.</p>
+ * <p>A page source only has to know how many items are available
+ * and how to fetch a given range of them. This lets the pager
+ * compute its indices and slip from the total alone, and only
+ * materialize the items of the page actually displayed.</p>
+ * <p>Three adapters are provided:</p>
+ * <ul>
+ *   <li>{@link ListSource} wraps an already available {@link List}</li>
+ *   <li>{@link IteratorSource} consumes a forward-only {@link Iterator} of known size</li>
+ *   <li>{@link QuerySource} is meant to be subclassed for database-style
+ *       sources, where counting and fetching are separate queries</li>
+ * </ul>
+ * <p>The {@link PagerTool} only keeps {@link Serializable} sources in the
+ * session, for next requests: a {@link ListSource} is kept, while an
+ * {@link IteratorSource} has to be provided again on each request, as does a
+ * {@link QuerySource} unless its subclass is serializable, in which case its
+ * count is queried again by each request.</p>
+ * <p>Example usage, from a controller servlet:</p>
+ * <pre>
+ * request.setAttribute(PagerTool.DEFAULT_NEW_ITEMS_KEY, new PageSource.QuerySource()
+ * {
+ *     protected int count()
+ *     {
+ *         return productDao.count();
+ *     }
+ *     protected List fetch(int offset, int limit)
+ *     {
+ *         return productDao.find(offset, limit);
+ *     }
+ * });
+ * </pre>
+ *
+ * @version $Id$
+ * @since VelocityTools 3.1
+ */
+public interface PageSource
+{
+    /**
+     * Returns the total number of items available.
+     * @return number of items
+     */
+    int getTotal();
+
+    /**
+     * Returns the items between the specified indices.
+     * @param start index of the first item, inclusive
+     * @param end index of the last item, exclusive
+     * @return {@link List} of items
+     */
+    List getItems(int start, int end);
+
+    /**
+     * Page source backed by a {@link List}.
+     */
+    class ListSource implements PageSource, Serializable
+    {
+        private static final long serialVersionUID = 2719553048261460193L;
+
+        private final List list;
+
+        /**
+         * Creates a new instance.
+         * @param list the {@link List} of items
+         */
+        public ListSource(List list)
+        {
+            this.list = list == null ? Collections.EMPTY_LIST : list;
+        }
+
+        public int getTotal()
+        {
+            return list.size();
+        }
+
+        public List getItems(int start, int end)
+        {
+            return list.subList(start, end);
+        }
+    }
+
+    /**
+     * <p>Page source backed by a forward-only {@link Iterator}, whose
+     * size must be known beforehand.</p>
+     * <p>This source is forward-only: items preceding the requested range
+     * are skipped without being retained, and only the last fetched range
+     * is kept. Requesting a range once the iterator went past its start
+     * throws an {@link IllegalStateException}; in particular, {@link PagerTool#getItems()}
+     * cannot be used after the current page has been fetched.</p>
+     */
+    class IteratorSource implements PageSource
+    {
+        private final Iterator iterator;
+        private final int total;
+        private int position = 0;
+        private int lastStart = -1;
+        private List last = null;
+
+        /**
+         * Creates a new instance.
+         * @param iterator the {@link Iterator} of items
+         * @param total the number of items the iterator will return
+         */
+        public IteratorSource(Iterator iterator, int total)
+        {
+            this.iterator = iterator;
+            this.total = total;
+        }
+
+        public int getTotal()
+        {
+            return total;
+        }
+
+        public synchronized List getItems(int start, int end)
+        {
+            if (last != null && start == lastStart && end == lastStart + last.size())
+            {
+                return last;
+            }
+            if (start < position)
+            {
+                throw new IllegalStateException("iterator source cannot seek backwards from item " + position + " to item " + start);
+            }
+            while (position < start && iterator.hasNext())
+            {
+                iterator.next();
+                ++position;
+            }
+            List items = new ArrayList(Math.max(0, end - start));
+            while (position < end && iterator.hasNext())
+            {
+                items.add(iterator.next());
+                ++position;
+            }
+            lastStart = start;
+            last = items;
+            return items;
+        }
+    }
+
+    /**
+     * <p>Base class for database-style page sources, where the count
+     * and the rows of a page are obtained through distinct queries.
+     * The count is only queried once, until {@link #reset()} is called
+     * (which the {@link PagerTool} does for each request). Since a source
+     * stored in the session can be shared by concurrent requests, the
+     * cached count is guarded by the source's monitor.</p>
+     */
+    abstract class QuerySource implements PageSource
+    {
+        private int total = -1;
+
+        /**
+         * Counts the available items.
+         * @return number of items
+         */
+        protected abstract int count();
+
+        /**
+         * Fetches a range of items.
+         * @param offset index of the first item
+         * @param limit maximum number of items to return
+         * @return {@link List} of items
+         */
+        protected abstract List fetch(int offset, int limit);
+
+        /**
+         * Forgets the cached count, so that it is queried again.
+         */
+        public synchronized void reset()
+        {
+            total = -1;
+        }
+
+        public synchronized int getTotal()
+        {
+            if (total < 0)
+            {
+                total = Math.max(0, count());
+            }
+            return total;
+        }
+
+        public List getItems(int start, int end)
+        {
+            List items = fetch(start, end - start);
+            return items == null ? Collections.EMPTY_LIST : items;
+        }
+    }
+}
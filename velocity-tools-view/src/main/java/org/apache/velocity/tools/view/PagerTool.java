@@ -19,6 +19,7 @@ package org.apache.velocity.tools.view;
  * under the License.
  */
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -44,6 +45,13 @@ import org.apache.velocity.tools.generic.SafeConfig;
  * item list can be (re)set as often as you like.
  * </p>
  * <p>
+ * For big result sets, you can push a {@link PageSource} instead of
+ * a List, either in the request attributes or using the
+ * setSource(PageSource) method. The pager will then only rely on the
+ * source's total for its computations, and will only fetch the items
+ * of the displayed page.
+ * </p>
+ * <p>
  * Here's an example of how your subclass would be used in a template:
  * <pre>
  *   #if( $pager.hasItems() )
@@ -116,6 +124,9 @@ public class PagerTool extends SafeConfig
     /** the key under which items are stored in session */
     protected static final String STORED_ITEMS_KEY = PagerTool.class.getName();
 
+    /** the key under which the page source is stored in session */
+    protected static final String STORED_SOURCE_KEY = PageSource.class.getName();
+
     private String newItemsKey = DEFAULT_NEW_ITEMS_KEY;
     private String indexKey = DEFAULT_INDEX_KEY;
     private String itemsPerPageKey = DEFAULT_ITEMS_PER_PAGE_KEY;
@@ -123,6 +134,9 @@ public class PagerTool extends SafeConfig
     private boolean createSession = false;
 
     private List items;
+    private PageSource source;
+    private boolean sourceLoaded = false;
+    private List page;
     private int index = 0;
     private int slipSize = DEFAULT_SLIP_SIZE;
     private int itemsPerPage = DEFAULT_ITEMS_PER_PAGE;
@@ -147,7 +161,8 @@ public class PagerTool extends SafeConfig
     /**
      * Sets the index, itemsPerPage, and/or slipSize *if* they are set
      * in the request parameters.  Likewise, this will set the item list
-     * to be paged *if* there is a list pushed into the request attributes
+     * (or page source) to be paged *if* there is a list (or a
+     * {@link PageSource}) pushed into the request attributes
      * under the {@link #getNewItemsKey()}.
      *
      * @param request the current HttpServletRequest
@@ -174,11 +189,15 @@ public class PagerTool extends SafeConfig
         }
 
         // look for items in the request attributes
-        List newItems = (List)request.getAttribute(getNewItemsKey());
-        if (newItems != null)
+        Object newItems = request.getAttribute(getNewItemsKey());
+        if (newItems instanceof PageSource)
+        {
+            setSource((PageSource)newItems);
+        }
+        else if (newItems != null)
         {
             // only set the items if a list was pushed into the request
-            setItems(newItems);
+            setItems((List)newItems);
         }
     }
 
@@ -234,12 +253,15 @@ public class PagerTool extends SafeConfig
     }
 
     /**
-     * Sets the item list to null, page index to zero, and
+     * Sets the item list and page source to null, page index to zero, and
      * items per page to the default.
      */
     public void reset()
     {
         items = null;
+        source = null;
+        sourceLoaded = false;
+        page = null;
         index = 0;
         itemsPerPage = DEFAULT_ITEMS_PER_PAGE;
     }
@@ -251,10 +273,35 @@ public class PagerTool extends SafeConfig
      */
     public void setItems(List items)
     {
+        if (getSource() != null)
+        {
+            /* a plain list replaces any previous page source */
+            this.source = null;
+            setStoredSource(null);
+        }
         this.items = items;
+        this.page = null;
         setStoredItems(items);
     }
 
+    /**
+     * Sets the {@link PageSource} to page through. Only the total
+     * and the items of the current page will be asked to the source.
+     *
+     * @param source - the {@link PageSource} of items to be paged through
+     * @since VelocityTools 3.1
+     */
+    public void setSource(PageSource source)
+    {
+        this.source = source;
+        this.sourceLoaded = true;
+        this.items = null;
+        this.page = null;
+        /* a page source replaces any previously stored list */
+        setStoredItems(null);
+        setStoredSource(source);
+    }
+
     /**
      * Sets the index of the first result in the current page
      *
@@ -268,6 +315,7 @@ public class PagerTool extends SafeConfig
             index = 0;
         }
         this.index = index;
+        this.page = null;
     }
 
     /**
@@ -283,6 +331,7 @@ public class PagerTool extends SafeConfig
             itemsPerPage = DEFAULT_ITEMS_PER_PAGE;
         }
         this.itemsPerPage = itemsPerPage;
+        this.page = null;
     }
 
     /**
@@ -345,25 +394,62 @@ public class PagerTool extends SafeConfig
      */
     public boolean hasItems()
     {
-        return !getItems().isEmpty();
+        return getTotal() > 0;
     }
 
     /**
      * Returns the item list. This is guaranteed
      * to never return <code>null</code>.
      *
+     * <p>When paging through a {@link PageSource}, this will fetch
+     * all the items from the source; use {@link #getPage()} instead
+     * whenever possible.</p>
+     *
      * @return {@link List} of all the items
      */
     public List getItems()
     {
         if (items == null)
         {
-            items = getStoredItems();
+            PageSource source = getSource();
+            if (source != null)
+            {
+                items = source.getItems(0, source.getTotal());
+            }
+            else
+            {
+                items = getStoredItems();
+            }
         }
 
         return (items != null) ? items : Collections.EMPTY_LIST;
     }
 
+    /**
+     * Returns the page source, if any. When paging through a plain
+     * item list, this will return <code>null</code>.
+     *
+     * @return current {@link PageSource} or <code>null</code>
+     * @since VelocityTools 3.1
+     */
+    public PageSource getSource()
+    {
+        if (!sourceLoaded)
+        {
+            sourceLoaded = true;
+            if (items == null)
+            {
+                source = getStoredSource();
+                if (source instanceof PageSource.QuerySource)
+                {
+                    /* count again for each request */
+                    ((PageSource.QuerySource)source).reset();
+                }
+            }
+        }
+        return source;
+    }
+
     /**
      * Returns the index of the last item on the current page of results
      * (as determined by the current index, items per page, and
@@ -466,7 +552,17 @@ public class PagerTool extends SafeConfig
         /* quietly keep the page indices to legal values for robustness' sake */
         int start = getFirstIndex().intValue();
         int end = getLastIndex().intValue() + 1;
-        return getItems().subList(start, end);
+        PageSource source = getSource();
+        if (source == null)
+        {
+            return getItems().subList(start, end);
+        }
+        /* only fetch the current page once from the source */
+        if (page == null)
+        {
+            page = source.getItems(start, end);
+        }
+        return page;
     }
 
     /**
@@ -506,11 +602,8 @@ public class PagerTool extends SafeConfig
      */
     public int getTotal()
     {
-        if (!hasItems())
-        {
-            return 0;
-        }
-        return getItems().size();
+        PageSource source = getSource();
+        return source == null ? getItems().size() : source.getTotal();
     }
 
     /**
@@ -640,4 +733,41 @@ public class PagerTool extends SafeConfig
         }
     }
 
+    /**
+     * Retrieves the stored page source (if any) from the user's
+     * session attributes.
+     *
+     * @return the {@link PageSource} retrieved from memory
+     * @since VelocityTools 3.1
+     */
+    protected PageSource getStoredSource()
+    {
+        if (session != null)
+        {
+            return (PageSource)session.getAttribute(STORED_SOURCE_KEY);
+        }
+        return null;
+    }
+
+    /**
+     * Stores the current page source in the user's session attributes
+     * (if one currently exists), so that next requests can page through
+     * it without having to provide it again. Only {@link Serializable}
+     * sources are stored; other sources remove any previously stored one.
+     *
+     * <p>Override this to store the page source somewhere besides the
+     * HttpSession or to prevent its storage across requests. In
+     * the former situation, you must also override getStoredSource().</p>
+     *
+     * @param source the {@link PageSource} to be stored
+     * @since VelocityTools 3.1
+     */
+    protected void setStoredSource(PageSource source)
+    {
+        if (session != null)
+        {
+            session.setAttribute(STORED_SOURCE_KEY, source instanceof Serializable ? source : null);
+        }
+    }
+
 }
@@ -20,6 +20,7 @@ package org.apache.velocity.tools.view;
  */
 
 import java.lang.reflect.Array;
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 import javax.servlet.ServletRequest;
@@ -49,6 +50,11 @@ import org.apache.velocity.tools.generic.ValueParser;
  * This class is, however, quite useful in your application's controller, filter,
  * or action code as well as in templates.</p>
  *
+ * <p>The request parameters are read once, into an immutable snapshot which
+ * is used by all accessors, and typed conversions are memoized, so that templates
+ * may call the same accessors repeatedly at no cost.
+ * Changing the request with {@link #setRequest(ServletRequest)} discards both.</p>
+ *
  * @author Nathan Bubna
  * @version $Revision$ $Date$
  * @since VelocityTools 2.0
@@ -59,6 +65,9 @@ public class ParameterTool extends ValueParser
 {
     private ServletRequest request;
 
+    /* snapshot of the request parameters */
+    private Map<String,String[]> parameters = null;
+
     /**
      * Constructs a new instance
      */
@@ -92,6 +101,35 @@ public class ParameterTool extends ValueParser
     public void setRequest(ServletRequest request)
     {
         this.request = request;
+        this.parameters = null;
+        super.setSource(null);
+    }
+
+    /**
+     * Returns an immutable snapshot of the request parameters,
+     * taken on first call.
+     * @return request parameters map
+     * @since VelocityTools 3.1
+     */
+    protected Map<String,String[]> getParameters()
+    {
+        if (parameters == null)
+        {
+            parameters = Collections.unmodifiableMap(new HashMap<String,String[]>(getRequest().getParameterMap()));
+        }
+        return parameters;
+    }
+
+    /**
+     * The parameters snapshot only changes with the request, so that
+     * subkeys and typed conversions can be cached.
+     * @return true
+     * @since VelocityTools 3.1
+     */
+    @Override
+    protected boolean isSnapshot()
+    {
+        return true;
     }
 
     /**
@@ -121,7 +159,8 @@ public class ParameterTool extends ValueParser
     @Override
     public Object getValue(String key)
     {
-        return getRequest().getParameter(key);
+        String[] strings = getParameters().get(key);
+        return strings == null || strings.length == 0 ? null : strings[0];
     }
 
 
@@ -137,7 +176,7 @@ public class ParameterTool extends ValueParser
     @Override
     public Object[] getValues(String key)
     {
-        String[] strings = getRequest().getParameterValues(key);
+        String[] strings = getParameters().get(key);
         if (strings == null || strings.length == 0)
         {
             return null;
@@ -147,7 +186,7 @@ public class ParameterTool extends ValueParser
 
             return parseStringList(strings[0]);
         }
-        return strings;
+        return strings.clone();
     }
 
     /**
@@ -172,7 +211,7 @@ public class ParameterTool extends ValueParser
         Map source = super.getSource(false);
         if (source == null)
         {
-            source = expandSingletonArrays(getRequest().getParameterMap());
+            source = expandSingletonArrays(getParameters());
             super.setSource(source);
         }
         return source;
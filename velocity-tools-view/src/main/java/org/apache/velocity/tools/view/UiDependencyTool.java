@@ -20,14 +20,21 @@ package org.apache.velocity.tools.view;
  */
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.velocity.tools.generic.SafeConfig;
 import org.apache.velocity.tools.generic.ValueParser;
@@ -51,8 +58,8 @@ import org.apache.velocity.tools.config.ValidScope;
  *
  * Tool to make it easier to manage usage of client-side dependencies.
  * This is essentially a simple dependency system for javascript and css.
- * This could be cleaned up to use fewer maps, use more classes,
- * and cache formatted values, but this is good enough for now.
+ * This could be cleaned up to use fewer maps and use more classes,
+ * but this is good enough for now.
  *
  * To use it, create a ui.xml file at the root of the classpath.
  * Follow the example below.  By default, it prepends the request context path
@@ -64,6 +71,35 @@ import org.apache.velocity.tools.config.ValidScope;
  *
  * This is safe in request scope, but the group info (from ui.xml)
  * should only be read once.  It is not re-parsed on every request.
+ * The printed output of each combination of groups is also kept along with
+ * the group info, so that it is only formatted once (the least recently used
+ * outputs are evicted beyond {@link #MAX_RENDERED} combinations).
+ *
+ * If the tool is configured with a <code>fingerprint</code> property set to
+ * <code>true</code>, a hash of the content of each file is computed once,
+ * from the webapp resource found at the <code>path</code> of its type
+ * (<code>/css/{file}</code> and <code>/js/{file}</code> for the default types;
+ * the least recently used hashes are evicted beyond {@link #MAX_FINGERPRINTS} files),
+ * and <code>{file}</code> is then printed as <code>file?v=hash</code>, so that
+ * assets can be served with long-lived cache headers. Custom formats can also
+ * use the <code>{hash}</code> placeholder.
+ *
+ * If the tool is configured with a <code>preload</code> property set to
+ * <code>true</code>, each file is also announced by a
+ * <code>Link: &lt;url&gt;; rel=preload; as=type</code> response header as soon
+ * as it is required, while the response is not yet committed, so that browsers
+ * can start fetching it before the page is received. Only files whose type has an
+ * <code>as</code> value and either a <code>url</code> or a <code>path</code>
+ * (<code>style</code> and <code>script</code> for the default types) are announced.
+ * The link URL is formatted from the <code>url</code> template of the type, as in
+ * <code>{context}/js/{file}</code> or <code>https://cdn.example.com/js/{file}</code>,
+ * which defaults to <code>{context}</code> followed by its <code>path</code>, and
+ * characters not allowed in a link header URL are percent-encoded. The links announced
+ * by the last request are remembered per request path (the least recently used
+ * paths are evicted beyond {@link #MAX_PRELOAD_PATHS}), so that
+ * {@link VelocityViewServlet} can send them before rendering the next requests
+ * for the same page
+ * (see its <code>org.apache.velocity.tools.preload</code> parameter).
  * <p>
  * Example of use:
  * <pre>
@@ -97,7 +133,7 @@ import org.apache.velocity.tools.config.ValidScope;
  * <p>Example ui.xml:</p>
  * <pre>
  * &lt;ui&gt;
- *   &lt;type name="style"&gt;&lt;![CDATA[&lt;link rel="stylesheet" type="text/css" href="/styles/{file}"&gt;]]&gt;&lt;/type&gt;
+ *   &lt;type name="style" path="/styles/{file}" url="{context}/styles/{file}" as="style"&gt;&lt;![CDATA[&lt;link rel="stylesheet" type="text/css" href="/styles/{file}"&gt;]]&gt;&lt;/type&gt;
  *   &lt;group name="globals"&gt;
  *     &lt;file type="style"&gt;css/globals.css&lt;file/&gt;
  *   &lt;/group&gt;
@@ -123,22 +159,77 @@ public class UiDependencyTool extends SafeConfig
 
     public static final String GROUPS_KEY_SPACE = UiDependencyTool.class.getName() + ":";
     public static final String TYPES_KEY_SPACE = UiDependencyTool.class.getName() + ":types:";
+    /**
+     * @since VelocityTools 3.1
+     */
+    public static final String RENDERED_KEY_SPACE = UiDependencyTool.class.getName() + ":rendered:";
+    /**
+     * @since VelocityTools 3.1
+     */
+    public static final String FINGERPRINTS_KEY_SPACE = UiDependencyTool.class.getName() + ":fingerprints:";
+    /**
+     * Servlet context attribute holding the preload links per request path.
+     * @since VelocityTools 3.1
+     */
+    public static final String PRELOAD_LINKS_KEY = UiDependencyTool.class.getName() + ":preload";
+    /**
+     * Request attribute holding the preload links already sent.
+     * @since VelocityTools 3.1
+     */
+    public static final String PRELOADED_KEY = UiDependencyTool.class.getName() + ":preloaded";
+    /**
+     * Request attribute holding the preload links announced while rendering.
+     */
+    private static final String ANNOUNCED_KEY = UiDependencyTool.class.getName() + ":announced";
     public static final String SOURCE_FILE_KEY = "file";
     public static final String DEFAULT_SOURCE_FILE = "ui.xml";
+    /**
+     * @since VelocityTools 3.1
+     */
+    public static final String FINGERPRINT_KEY = "fingerprint";
+    /**
+     * @since VelocityTools 3.1
+     */
+    public static final String PRELOAD_KEY = "preload";
+    /**
+     * Maximum number of kept printed outputs.
+     * @since VelocityTools 3.1
+     */
+    public static final int MAX_RENDERED = 1000;
+    /**
+     * Maximum number of kept fingerprints.
+     * @since VelocityTools 3.1
+     */
+    public static final int MAX_FINGERPRINTS = 1000;
+    /**
+     * Maximum number of request paths for which preload links are remembered
+     * (the least recently used paths are evicted beyond).
+     * @since VelocityTools 3.1
+     */
+    public static final int MAX_PRELOAD_PATHS = 1000;
     private static final List<Type> DEFAULT_TYPES;
     static {
         List<Type> types = new ArrayList<Type>();
         // start out with these two types
-        types.add(new Type("style", "<link rel=\"stylesheet\" type=\"text/css\" href=\"{context}/css/{file}\"/>"));
-        types.add(new Type("script", "<script type=\"text/javascript\" src=\"{context}/js/{file}\"></script>"));
+        types.add(new Type("style", "<link rel=\"stylesheet\" type=\"text/css\" href=\"{context}/css/{file}\"/>", "/css/{file}", "style", "{context}/css/{file}"));
+        types.add(new Type("script", "<script type=\"text/javascript\" src=\"{context}/js/{file}\"></script>", "/js/{file}", "script", "{context}/js/{file}"));
         DEFAULT_TYPES = Collections.unmodifiableList(types);
     }
+    private static final String NO_FINGERPRINT = "";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
 
     private Map<String,Group> groups = null;
     private List<Type> types = DEFAULT_TYPES;
     private Map<String,List<String>> dependencies;
     private static Logger LOG = LoggerFactory.getLogger(UiDependencyTool.class);
     private String context = "";
+    private ServletContext servletContext = null;
+    private Map<String,String> rendered = null;
+    private Map<String,String> fingerprints = null;
+    private StringBuilder combination = new StringBuilder();
+    private boolean customized = false;
+    private HttpServletRequest request = null;
+    private HttpServletResponse response = null;
 
     protected void configure(ValueParser params) {
         ServletContext app = (ServletContext)params.get(ViewContext.SERVLET_CONTEXT_KEY);
@@ -153,6 +244,12 @@ public class UiDependencyTool extends SafeConfig
             getLog().debug("UiDependencyTool: Loading file: {}", file);
         }
 
+        servletContext = app;
+        if (params.getBoolean(PRELOAD_KEY, false)) {
+            this.request = request;
+            this.response = (HttpServletResponse)params.get(ViewContext.RESPONSE);
+        }
+        boolean fingerprint = params.getBoolean(FINGERPRINT_KEY, false);
         synchronized (app) {
             // first, see if we've already read this file
             groups = (Map<String,Group>)app.getAttribute(GROUPS_KEY_SPACE+file);
@@ -171,7 +268,31 @@ public class UiDependencyTool extends SafeConfig
                     types = alt;
                 }
             }
+
+            // printed outputs, and fingerprints computed once for all groups files
+            String suffix = fingerprint ? file + ":fingerprinted" : file;
+            rendered = (Map<String,String>)app.getAttribute(RENDERED_KEY_SPACE+suffix);
+            if (rendered == null) {
+                rendered = Collections.synchronizedMap(new LruMap<String,String>(MAX_RENDERED));
+                app.setAttribute(RENDERED_KEY_SPACE+suffix, rendered);
+            }
+            if (fingerprint) {
+                fingerprints = (Map<String,String>)app.getAttribute(FINGERPRINTS_KEY_SPACE+file);
+                if (fingerprints == null) {
+                    fingerprints = Collections.synchronizedMap(new LruMap<String,String>(MAX_FINGERPRINTS));
+                    for (Group group : groups.values()) {
+                        for (Map.Entry<String,List<String>> entry : group.dependencies.entrySet()) {
+                            for (String value : entry.getValue()) {
+                                getFingerprint(entry.getKey(), value);
+                            }
+                        }
+                    }
+                    app.setAttribute(FINGERPRINTS_KEY_SPACE+file, fingerprints);
+                }
+            }
         }
+        // formats set while reading the file are shared ones
+        customized = false;
     }
 
     /**
@@ -187,6 +308,7 @@ public class UiDependencyTool extends SafeConfig
             return null;
         } else {
             addDependencies(groupDeps);
+            combination.append(name).append('\n');
             return this;
         }
     }
@@ -204,6 +326,7 @@ public class UiDependencyTool extends SafeConfig
             return null;
         } else {
             addFile(type, file);
+            customized = true;
             return this;
         }
     }
@@ -254,13 +377,19 @@ public class UiDependencyTool extends SafeConfig
             return null;
         }
 
-        String format = getFormat(type);
-        StringBuilder out = new StringBuilder();
-        for (String file : files) {
-            out.append(format(format, file));
-            out.append(delim);
+        String key = getRenderedKey(type, delim);
+        String output = key == null ? null : rendered.get(key);
+        if (output == null) {
+            Type t = getType(type);
+            StringBuilder out = new StringBuilder();
+            for (String file : files) {
+                out.append(format(t, type, file));
+                out.append(delim);
+            }
+            output = out.toString();
+            keepRendered(key, output);
         }
-        return out.toString();
+        return output;
     }
 
     /**
@@ -274,22 +403,28 @@ public class UiDependencyTool extends SafeConfig
             return null;
         }
 
-        StringBuilder out = new StringBuilder();
-        for (Type type : types) {
-            if (out.length() > 0) {
-                out.append(delim);
-            }
-            List<String> files = dependencies.get(type.name);
-            if (files != null) {
-                for (int i=0; i < files.size(); i++) {
-                    if (i > 0) {
-                        out.append(delim);
+        String key = getRenderedKey(null, delim);
+        String output = key == null ? null : rendered.get(key);
+        if (output == null) {
+            StringBuilder out = new StringBuilder();
+            for (Type type : types) {
+                if (out.length() > 0) {
+                    out.append(delim);
+                }
+                List<String> files = dependencies.get(type.name);
+                if (files != null) {
+                    for (int i=0; i < files.size(); i++) {
+                        if (i > 0) {
+                            out.append(delim);
+                        }
+                        out.append(format(type, type.name, files.get(i)));
                     }
-                    out.append(format(type.format, files.get(i)));
                 }
             }
+            output = out.toString();
+            keepRendered(key, output);
         }
-        return out.toString();
+        return output;
     }
 
     /**
@@ -299,7 +434,7 @@ public class UiDependencyTool extends SafeConfig
      */
     public UiDependencyTool context(String path)
     {
-        this.context = path;
+        this.context = path == null ? "" : path;
         return this;
     }
 
@@ -325,19 +460,215 @@ public class UiDependencyTool extends SafeConfig
         if (format == null || type == null) {
             throw new NullPointerException("Type name and format must not be null");
         }
+        copyDefaultTypes();
+        Type t = getType(type);
+        if (t == null) {
+            types.add(new Type(type, format, null, null, null));
+        } else {
+            t.format = format;
+        }
+        customized = true;
+    }
+
+    /**
+     * Sets the webapp path of files of the specified type, used to compute
+     * fingerprints, as in <code>/js/{file}</code>.
+     * @param type file type
+     * @param path webapp path
+     * @since VelocityTools 3.1
+     */
+    public void setPath(String type, String path) {
+        copyDefaultTypes();
+        Type t = getType(type);
+        if (t == null) {
+            throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        t.path = path;
+    }
+
+    /**
+     * Sets the <code>as</code> value of preload links for files of the
+     * specified type, as in <code>font</code> or <code>image</code>.
+     * @param type file type
+     * @param as preload destination
+     * @since VelocityTools 3.1
+     */
+    public void setPreloadAs(String type, String as) {
+        copyDefaultTypes();
+        Type t = getType(type);
+        if (t == null) {
+            throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        t.as = as;
+    }
+
+    /**
+     * Sets the URL template of preload links for files of the specified type,
+     * as in <code>https://cdn.example.com/js/{file}</code>. The template
+     * can use the <code>{context}</code>, <code>{file}</code> and <code>{hash}</code>
+     * placeholders.
+     * @param type file type
+     * @param url URL template
+     * @since VelocityTools 3.1
+     */
+    public void setPreloadUrl(String type, String url) {
+        copyDefaultTypes();
+        Type t = getType(type);
+        if (t == null) {
+            throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        t.url = url;
+    }
+
+    /**
+     * Copies the default types before they get altered.
+     */
+    private void copyDefaultTypes() {
         // do NOT alter the defaults, just copy them
         if (types == DEFAULT_TYPES) {
             types = new ArrayList<Type>();
             for (Type t : DEFAULT_TYPES) {
-                types.add(new Type(t.name, t.format));
+                types.add(new Type(t.name, t.format, t.path, t.as, t.url));
+            }
+        }
+    }
+
+    /**
+     * Returns the preload links remembered for a request path, that is
+     * the links announced by the last request rendering this path.
+     * @param app servlet context
+     * @param path request path
+     * @return preload links, or <code>null</code>
+     * @since VelocityTools 3.1
+     */
+    public static List<String> getPreloadLinks(ServletContext app, String path) {
+        Map<String,List<String>> paths = (Map<String,List<String>>)app.getAttribute(PRELOAD_LINKS_KEY);
+        return paths == null ? null : paths.get(path);
+    }
+
+    /**
+     * Adds preload links as <code>Link</code> response headers, skipping
+     * the ones already sent for this request.
+     * @param request servlet request
+     * @param response servlet response
+     * @param links preload links
+     * @return whether some header was added
+     * @since VelocityTools 3.1
+     */
+    public static boolean addPreloadHeaders(HttpServletRequest request, HttpServletResponse response, List<String> links) {
+        if (links == null || response == null || response.isCommitted()) {
+            return false;
+        }
+        Set<String> sent = (Set<String>)request.getAttribute(PRELOADED_KEY);
+        if (sent == null) {
+            sent = new LinkedHashSet<String>();
+            request.setAttribute(PRELOADED_KEY, sent);
+        }
+        boolean added = false;
+        for (String link : links) {
+            if (sent.add(link)) {
+                response.addHeader("Link", link);
+                added = true;
             }
         }
+        return added;
+    }
+
+    /**
+     * Announces a file with a preload link, and remembers the links announced
+     * so far by the current request for its path, replacing the previous ones.
+     * @param type file type
+     * @param file file
+     */
+    private void preload(String type, String file) {
         Type t = getType(type);
-        if (t == null) {
-            types.add(new Type(type, format));
-        } else {
-            t.format = format;
+        if (t == null || t.as == null || t.url == null && t.path == null || file.contains("//")) {
+            return;
+        }
+        String url = t.url == null ? "{context}" + t.path : t.url;
+        String fingerprint = getFingerprint(type, file);
+        if (fingerprint != null) {
+            url = url.replace("{hash}", fingerprint);
+            file = file + (file.indexOf('?') == -1 ? "?v=" : "&v=") + fingerprint;
+        }
+        String link = "<" + encodeLinkUrl(format(url, file)) + ">; rel=preload; as=" + t.as;
+        addPreloadHeaders(request, response, Collections.singletonList(link));
+
+        Set<String> announced = (Set<String>)request.getAttribute(ANNOUNCED_KEY);
+        if (announced == null) {
+            announced = new LinkedHashSet<String>();
+            request.setAttribute(ANNOUNCED_KEY, announced);
+        }
+        if (!announced.add(link)) {
+            return;
         }
+        Map<String,List<String>> paths;
+        synchronized (servletContext) {
+            paths = (Map<String,List<String>>)servletContext.getAttribute(PRELOAD_LINKS_KEY);
+            if (paths == null) {
+                paths = Collections.synchronizedMap(new LruMap<String,List<String>>(MAX_PRELOAD_PATHS));
+                servletContext.setAttribute(PRELOAD_LINKS_KEY, paths);
+            }
+        }
+        paths.put(ServletUtils.getPath(request), Collections.unmodifiableList(new ArrayList<String>(announced)));
+    }
+
+    /**
+     * Percent-encodes the characters of an URL which are not allowed in URIs
+     * or which would break a <code>Link</code> header value, that is
+     * everything but letters, digits, existing escapes and
+     * <code>-._~/?#[]@!$&amp;'()*+=:</code>.
+     * @param url URL
+     * @return encoded URL
+     */
+    private static String encodeLinkUrl(String url) {
+        StringBuilder out = null;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c < 0x80 && (Character.isLetterOrDigit(c) || "-._~/?#[]@!$&'()*+=:%".indexOf(c) != -1)) {
+                if (out != null) {
+                    out.append(c);
+                }
+                continue;
+            }
+            if (out == null) {
+                out = new StringBuilder(url.length() + 16).append(url, 0, i);
+            }
+            int end = Character.isHighSurrogate(c) && i + 1 < url.length() ? i + 2 : i + 1;
+            for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            i = end - 1;
+        }
+        return out == null ? url : out.toString();
+    }
+
+    /**
+     * Returns the fingerprint of a file, that is a hash of its content.
+     * Fingerprints are computed once, and only when the <code>fingerprint</code>
+     * property is set.
+     * @param type file type
+     * @param file file
+     * @return fingerprint, or <code>null</code> if disabled or not found
+     * @since VelocityTools 3.1
+     */
+    public String getFingerprint(String type, String file) {
+        if (fingerprints == null || type == null || file == null) {
+            return null;
+        }
+        Type t = getType(type);
+        if (t == null || t.path == null || file.contains("//")) {
+            return null;
+        }
+        String path = t.path.replace("{file}", file);
+        String fingerprint = fingerprints.get(path);
+        if (fingerprint == null) {
+            fingerprint = computeFingerprint(path);
+            fingerprints.put(path, fingerprint == null ? NO_FINGERPRINT : fingerprint);
+        } else if (fingerprint == NO_FINGERPRINT) {
+            fingerprint = null;
+        }
+        return fingerprint;
     }
 
     /**
@@ -459,6 +790,49 @@ public class UiDependencyTool extends SafeConfig
         return format.replace("{file}", value).replace("{context}", this.context);
     }
 
+    /**
+     * Computes the fingerprint of a file, by hashing the content of the webapp
+     * resource found at the path of its type. Override this method to use
+     * another hash or to find files elsewhere.
+     * @param path webapp path of the file
+     * @return fingerprint, or <code>null</code> if the file cannot be found
+     * @since VelocityTools 3.1
+     */
+    protected String computeFingerprint(String path) {
+        if (servletContext == null) {
+            return null;
+        }
+        InputStream in = servletContext.getResourceAsStream(path);
+        if (in == null) {
+            getLog().debug("UiDependencyTool: no resource at {}, no fingerprint", path);
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            byte[] hash = digest.digest();
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (IOException ioe) {
+            getLog().error("UiDependencyTool: could not read {}", path, ioe);
+            return null;
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ioe) {}
+        }
+    }
+
     /**
      * NOTE: This method may change or disappear w/o warning; don't depend
      * on it unless you're willing to update your code whenever this changes.
@@ -508,6 +882,9 @@ public class UiDependencyTool extends SafeConfig
                 if (!existing.contains(file)) {
                     getLog().trace("UiDependencyTool: Adding {}: {}", type, file);
                     existing.add(file);
+                    if (response != null) {
+                        preload(type, file);
+                    }
                 }
             }
         }
@@ -532,9 +909,49 @@ public class UiDependencyTool extends SafeConfig
         if (!files.contains(file)) {
             getLog().trace("UiDependencyTool: Adding {}: {}", type, file);
             files.add(file);
+            if (response != null) {
+                preload(type, file);
+            }
+        }
+    }
+
+
+    /**
+     * Formats a file, handling its fingerprint if any.
+     */
+    private String format(Type type, String typeName, String file) {
+        String format = type == null ? null : type.format;
+        String fingerprint = getFingerprint(typeName, file);
+        if (fingerprint != null) {
+            if (format != null) {
+                format = format.replace("{hash}", fingerprint);
+            }
+            file = file + (file.indexOf('?') == -1 ? "?v=" : "&v=") + fingerprint;
+        }
+        return format(format, file);
+    }
+
+    /**
+     * Key of the printed output of the current groups combination,
+     * or null if this instance's dependencies or formats were customized.
+     */
+    private String getRenderedKey(String type, String delim) {
+        if (customized || rendered == null || combination.length() == 0) {
+            return null;
         }
+        StringBuilder key = new StringBuilder(combination.length() + 32);
+        key.append(type == null ? "*" : type).append('\n')
+            .append(delim).append('\n')
+            .append(context).append('\n')
+            .append(combination);
+        return key.toString();
     }
 
+    private void keepRendered(String key, String output) {
+        if (key != null) {
+            rendered.put(key, output);
+        }
+    }
 
     /**
      * For internal use only. Use/override get/setFormat instead.
@@ -563,6 +980,27 @@ public class UiDependencyTool extends SafeConfig
     }
 
 
+    /**
+     * Map evicting its least recently used entries beyond a maximum size.
+     * Access ordered, so it has to be synchronized even for reads.
+     */
+    private static final class LruMap<K,V> extends LinkedHashMap<K,V> {
+
+        private static final long serialVersionUID = -3474102452837201394L;
+
+        private final int max;
+
+        LruMap(int max) {
+            super(16, 0.75f, true);
+            this.max = max;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+            return size() > max;
+        }
+    }
+
     /**
      * NOTE: This class may change or disappear w/o warning; don't depend
      * on it unless you're willing to update your code whenever this changes.
@@ -659,20 +1097,40 @@ public class UiDependencyTool extends SafeConfig
         public void begin(String ns, String el, Attributes attributes) throws Exception {
             parent = (UiDependencyTool)getDigester().peek();
 
+            String typeName = null;
+            String path = null;
+            String as = null;
+            String url = null;
             for (int i=0; i < attributes.getLength(); i++) {
                 String name = attributes.getLocalName(i);
                 if ("".equals(name)) {
                     name = attributes.getQName(i);
                 }
                 if ("name".equals(name)) {
-                    getDigester().push(attributes.getValue(i));
+                    typeName = attributes.getValue(i);
+                } else if ("path".equals(name)) {
+                    path = attributes.getValue(i);
+                } else if ("as".equals(name)) {
+                    as = attributes.getValue(i);
+                } else if ("url".equals(name)) {
+                    url = attributes.getValue(i);
                 }
             }
+            getDigester().push(new String[] { typeName, path, as, url });
         }
 
         public void body(String ns, String el, String typeFormat) throws Exception {
-            String typeName = (String)getDigester().pop();
-            parent.setFormat(typeName, typeFormat);
+            String[] type = (String[])getDigester().pop();
+            parent.setFormat(type[0], typeFormat);
+            if (type[1] != null) {
+                parent.setPath(type[0], type[1]);
+            }
+            if (type[2] != null) {
+                parent.setPreloadAs(type[0], type[2]);
+            }
+            if (type[3] != null) {
+                parent.setPreloadUrl(type[0], type[3]);
+            }
         }
     }
 
@@ -741,14 +1199,24 @@ public class UiDependencyTool extends SafeConfig
     }
 
 
+    /**
+     * NOTE: This class may change or disappear w/o warning; don't depend
+     * on it unless you're willing to update your code whenever this changes.
+     */
     private static final class Type {
 
         protected String name;
         protected String format;
+        protected String path;
+        protected String as;
+        protected String url;
 
-        Type(String n, String f) {
+        Type(String n, String f, String p, String a, String u) {
             name = n;
             format = f;
+            path = p;
+            as = a;
+            url = u;
         }
     }
 
@@ -28,6 +28,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.velocity.Template;
 import org.apache.velocity.context.Context;
 import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.tools.Instrumentation;
 
 /**
  * Extension of the VelocityViewServlet to perform "two-pass"
@@ -207,7 +208,12 @@ public class VelocityLayoutServlet extends VelocityViewServlet
         //
         // Render the screen content
         StringWriter sw = new StringWriter();
+        long start = Instrumentation.isEnabled() ? System.nanoTime() : 0L;
         template.merge(context, sw);
+        if (start != 0L)
+        {
+            Instrumentation.templateRendered(template.getName(), System.nanoTime() - start);
+        }
         // Add the resulting content to the context
         context.put(KEY_SCREEN_CONTENT, sw.toString());
 
@@ -19,12 +19,24 @@ package org.apache.velocity.tools.view;
  * under the License.
  */
 
+import java.io.BufferedReader;
+import java.io.FilterWriter;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.Writer;
+import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -38,8 +50,11 @@ import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.context.Context;
 import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.io.VelocityWriter;
+import org.apache.velocity.tools.Instrumentation;
+import org.apache.velocity.tools.ToolContext;
 import org.apache.velocity.tools.ToolboxFactory;
 import org.apache.velocity.tools.config.ConfigurationCleaner;
+import org.apache.velocity.tools.config.ConfigurationSnapshot;
 import org.apache.velocity.tools.config.ConfigurationUtils;
 import org.apache.velocity.tools.config.FactoryConfiguration;
 import org.apache.velocity.tools.view.ViewToolContext;
@@ -146,6 +161,36 @@ public class VelocityView extends ViewToolManager
     public static final String LOAD_DEFAULTS_KEY =
         "org.apache.velocity.tools.loadDefaults";
 
+    /**
+     * Path of an optional precompiled {@link ConfigurationSnapshot},
+     * specified as a servlet or webapp init parameter. When the snapshot
+     * is found and is not stale, it replaces the configuration files
+     * (including the default tools, so it should be built with them
+     * when they are needed).
+     * @since VelocityTools 3.1
+     */
+    public static final String SNAPSHOT_KEY =
+        "org.apache.velocity.tools.snapshot";
+
+    /**
+     * Optional warm-up at startup, specified as a servlet or webapp init parameter:
+     * a comma separated list of webapp folders (ending with a slash), whose templates
+     * are parsed, and of manifest files, listing one template name per line.
+     * The value {@code true} stands for the webapp root folder. Application tools
+     * are also instantiated, and other tools are resolved.
+     * @since VelocityTools 3.1
+     */
+    public static final String WARMUP_KEY =
+        "org.apache.velocity.tools.warmup";
+
+    /**
+     * Comma separated file extensions of the templates found by the warm-up
+     * in webapp folders. The default is {@code vm,vtl}.
+     * @since VelocityTools 3.1
+     */
+    public static final String WARMUP_EXTENSIONS_KEY =
+        "org.apache.velocity.tools.warmup.extensions";
+
     /**
      * Controls removal of tools or data with invalid configurations
      * before initialization is finished.
@@ -277,6 +322,175 @@ public class VelocityView extends ViewToolManager
 
         // set encoding & content-type
         setEncoding(config);
+
+        // optionally warm up tools and templates
+        String warmup = config.findInitParameter(WARMUP_KEY);
+        if (warmup != null && warmup.length() > 0 && !"false".equals(warmup))
+        {
+            warmUp(config, warmup);
+        }
+    }
+
+    /**
+     * Warms tools and templates up, and reports it.
+     * @param config configuration values container
+     * @param warmup value of the {@code org.apache.velocity.tools.warmup} init-param
+     * @since VelocityTools 3.1
+     */
+    protected void warmUp(JeeConfig config, String warmup)
+    {
+        long start = System.currentTimeMillis();
+        int tools = warmUpTools();
+        String extensions = config.findInitParameter(WARMUP_EXTENSIONS_KEY);
+        Set<String> templates = findWarmUpTemplates("true".equals(warmup) ? "/" : warmup,
+            extensions == null ? "vm,vtl" : extensions);
+        Map<String,Exception> errors = warmUpTemplates(templates);
+        getLog().info("warm-up: {} tools and {} templates in {} ms, {} errors",
+            tools, templates.size() - errors.size(), System.currentTimeMillis() - start, errors.size());
+    }
+
+    /**
+     * Lists templates to warm up.
+     * @param locations comma separated webapp folders (ending with a slash) and manifest files
+     * @param extensions comma separated extensions of templates found in folders
+     * @return template names
+     * @since VelocityTools 3.1
+     */
+    protected Set<String> findWarmUpTemplates(String locations, String extensions)
+    {
+        Collection<String> suffixes = new ArrayList<String>();
+        for (String extension : extensions.split(","))
+        {
+            extension = extension.trim();
+            if (extension.length() > 0)
+            {
+                suffixes.add('.' + extension);
+            }
+        }
+        Set<String> templates = new TreeSet<String>();
+        for (String location : locations.split(","))
+        {
+            location = location.trim();
+            if (location.length() == 0)
+            {
+                continue;
+            }
+            if (location.endsWith("/"))
+            {
+                listTemplates(location, suffixes, templates);
+            }
+            else
+            {
+                InputStream manifest = getInputStream(location, false);
+                if (manifest == null)
+                {
+                    getLog().warn("warm-up: manifest not found: {}", location);
+                    continue;
+                }
+                try
+                {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(manifest, "UTF-8"));
+                    String line;
+                    while ((line = reader.readLine()) != null)
+                    {
+                        line = line.trim();
+                        if (line.length() > 0 && !line.startsWith("#"))
+                        {
+                            templates.add(line);
+                        }
+                    }
+                }
+                catch (IOException ioe)
+                {
+                    getLog().warn("warm-up: could not read manifest {}", location, ioe);
+                }
+                finally
+                {
+                    try
+                    {
+                        manifest.close();
+                    }
+                    catch (IOException ioe) {}
+                }
+            }
+        }
+        return templates;
+    }
+
+    private void listTemplates(String folder, Collection<String> suffixes, Set<String> templates)
+    {
+        Set<String> paths = servletContext.getResourcePaths(folder);
+        if (paths == null)
+        {
+            return;
+        }
+        for (String path : paths)
+        {
+            if (path.endsWith("/"))
+            {
+                listTemplates(path, suffixes, templates);
+            }
+            else
+            {
+                for (String suffix : suffixes)
+                {
+                    if (path.endsWith(suffix))
+                    {
+                        templates.add(path);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads and parses templates in parallel, on a fork-join pool.
+     * Errors are logged.
+     * @param templates template names
+     * @return errors, by template name
+     * @since VelocityTools 3.1
+     */
+    protected Map<String,Exception> warmUpTemplates(Collection<String> templates)
+    {
+        final Map<String,Exception> errors = new TreeMap<String,Exception>();
+        if (templates.isEmpty())
+        {
+            return errors;
+        }
+        Collection<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final String name : templates)
+        {
+            tasks.add(new Callable<Void>()
+            {
+                public Void call()
+                {
+                    try
+                    {
+                        getTemplate(name);
+                    }
+                    catch (Exception e)
+                    {
+                        getLog().error("warm-up: could not load template {}", name, e);
+                        synchronized (errors)
+                        {
+                            errors.put(name, e);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(templates.size(), Runtime.getRuntime().availableProcessors()));
+        try
+        {
+            pool.invokeAll(tasks);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        return errors;
     }
 
     /**
@@ -376,7 +590,9 @@ public class VelocityView extends ViewToolManager
     }
 
     /**
-     * Here's the configuration lookup/loading order:
+     * <p>If a configuration snapshot is specified by the {@code org.apache.velocity.tools.snapshot}
+     * init-param and is up to date, it is used instead of the configuration files, and only
+     * an injected configuration is added to it. Otherwise, here's the configuration lookup/loading order:</p>
      * <ol>
      * <li>If loadDefaults is true, {@link ConfigurationUtils#getDefaultTools()}</li>
      * <li>Config file optionally specified by servletContext {@code org.apache.velocity.tools} init-param</li>
@@ -394,6 +610,25 @@ public class VelocityView extends ViewToolManager
      */
     protected void configure(final JeeConfig config, final ToolboxFactory factory)
     {
+        String snapshotPath = config.findInitParameter(SNAPSHOT_KEY);
+        if (snapshotPath != null)
+        {
+            ConfigurationSnapshot snapshot = getSnapshot(snapshotPath);
+            if (snapshot != null)
+            {
+                getLog().debug("Configuring factory with snapshot: {}", snapshotPath);
+                configure(snapshot);
+
+                FactoryConfiguration injected = ServletUtils.getConfiguration(servletContext);
+                if (injected != null)
+                {
+                    configure(injected);
+                    getLog().debug("Added configuration instance in servletContext attributes as '{}'", TOOLS_KEY);
+                }
+                return;
+            }
+        }
+
         FactoryConfiguration factoryConfig = new FactoryConfiguration("VelocityView.configure(config,factory)");
 
         String loadDefaults = config.findInitParameter(LOAD_DEFAULTS_KEY);
@@ -574,6 +809,38 @@ public class VelocityView extends ViewToolManager
     }
 
 
+    /**
+     * Reads the configuration snapshot at the specified path, checking
+     * that none of the configuration files it was built from has changed.
+     * @param path snapshot path
+     * @return the snapshot, or {@code null} if it is missing, unreadable or stale
+     * @since VelocityTools 3.1
+     */
+    protected ConfigurationSnapshot getSnapshot(String path)
+    {
+        URL url = ServletUtils.getURL(path, servletContext);
+        if (url == null)
+        {
+            getLog().warn("Did not find configuration snapshot at: {}", path);
+            return null;
+        }
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.read(url);
+        if (snapshot == null)
+        {
+            getLog().warn("Could not read configuration snapshot at: {}", path);
+            return null;
+        }
+        for (String input : snapshot.getInputs())
+        {
+            if (snapshot.isStale(input, ServletUtils.getURL(input, servletContext)))
+            {
+                getLog().warn("Configuration snapshot at {} is stale, falling back to configuration files", path);
+                return null;
+            }
+        }
+        return snapshot;
+    }
+
     protected FactoryConfiguration getConfiguration(String path)
     {
         return getConfiguration(path, false);
@@ -796,6 +1063,11 @@ public class VelocityView extends ViewToolManager
         throws IOException
     {
         VelocityWriter vw = null;
+        if (context instanceof ViewToolContext)
+        {
+            // let tools set deferred headers before the output commits the response
+            writer = new BeforeCommitWriter(writer, (ViewToolContext)context);
+        }
         try
         {
             vw = (VelocityWriter)writerPool.get();
@@ -807,13 +1079,23 @@ public class VelocityView extends ViewToolManager
             {
                 vw.recycle(writer);
             }
+            long start = Instrumentation.isEnabled() ? System.nanoTime() : 0L;
             performMerge(template, context, vw);
+            if (start != 0L)
+            {
+                Instrumentation.templateRendered(template.getName(), System.nanoTime() - start);
+            }
 
             // flush writer but don't close to allow us to play nicely with others.
             vw.flush();
         }
         finally
         {
+            // let tools release their resources
+            if (context instanceof ToolContext)
+            {
+                ((ToolContext)context).cleanup();
+            }
             if (vw != null)
             {
                 try
@@ -833,6 +1115,49 @@ public class VelocityView extends ViewToolManager
     }
 
 
+    /**
+     * Writer running the before-commit callbacks of a {@link ViewToolContext}
+     * each time it is written to or flushed.
+     */
+    private static class BeforeCommitWriter extends FilterWriter
+    {
+        private final ViewToolContext context;
+
+        BeforeCommitWriter(Writer writer, ViewToolContext context)
+        {
+            super(writer);
+            this.context = context;
+        }
+
+        @Override
+        public void write(int c) throws IOException
+        {
+            context.beforeCommit();
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException
+        {
+            context.beforeCommit();
+            super.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException
+        {
+            context.beforeCommit();
+            super.write(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            context.beforeCommit();
+            super.flush();
+        }
+    }
+
     /**
      * This is here so developers may override it and gain access to the
      * Writer which the template will be merged into.  See
@@ -24,6 +24,13 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -98,6 +105,42 @@ import org.apache.commons.lang3.StringEscapeUtils;
  *   <dt>org.apache.velocity.tools.view.class</dt>
  *   <dd>Allows to specify a custom class (inheriting from VelocityView) as
  *   the View class.</dd>
+ *   <dt>org.apache.velocity.tools.warmup</dt>
+ *   <dd>If set, templates are parsed in parallel and tools are warmed up
+ *     when the {@link VelocityView} is initialized: either {@code true} for
+ *     all the templates of the webapp, or a comma separated list of webapp
+ *     folders (ending with a slash) and of manifest files listing template names.
+ *     See {@link VelocityView#WARMUP_KEY}.</dd>
+ *   <dt>org.apache.velocity.tools.asyncOutput</dt>
+ *   <dd>By default, this is {@code false}. If set to {@code true}, requests
+ *     for which the container supports asynchronous processing are rendered
+ *     into a pooled buffer which is then written to the client by a
+ *     non-blocking {@link javax.servlet.WriteListener}, so that no thread
+ *     is held while slow clients read the response. The servlet (and any
+ *     filter in front of it) must be declared with
+ *     <code>&lt;async-supported&gt;true&lt;/async-supported&gt;</code>.</dd>
+ *   <dt>org.apache.velocity.tools.asyncExecutor</dt>
+ *   <dd>Where asynchronous requests are rendered: {@code inline} (the default)
+ *     renders on the container thread which received the request and only
+ *     writes the output asynchronously; {@code container} renders using
+ *     {@link AsyncContext#start(Runnable)}; {@code virtual} renders on a new
+ *     virtual thread per request, when the JVM provides them (or else falls
+ *     back to {@code container}); and a number renders on a dedicated thread pool
+ *     of that size.</dd>
+ *   <dt>org.apache.velocity.tools.asyncTimeout</dt>
+ *   <dd>Timeout of asynchronous requests, in milliseconds. Defaults to the
+ *     container's timeout. It should exceed the maximum rendering time: a
+ *     rendering still in progress when the request times out is interrupted,
+ *     and its output is discarded.</dd>
+ *   <dt>org.apache.velocity.tools.preload</dt>
+ *   <dd>By default, this is {@code false}. If set to {@code true}, the
+ *     <code>Link: rel=preload</code> headers emitted by a {@link UiDependencyTool}
+ *     configured with <code>preload="true"</code> are remembered per request path,
+ *     and added to the response before the next requests for the same path start
+ *     rendering. If set to {@code flush}, the response headers are also flushed
+ *     at once, so that the browser can fetch the announced files while the page
+ *     is being rendered; the response is then committed before rendering, so
+ *     rendering errors cannot change its status.</dd>
  * </dl>
  *
  * @version $Id$
@@ -107,10 +150,25 @@ public class VelocityViewServlet extends HttpServlet
 {
     public static final String BUFFER_OUTPUT_PARAM =
         "org.apache.velocity.tools.bufferOutput";
+    public static final String ASYNC_OUTPUT_PARAM =
+        "org.apache.velocity.tools.asyncOutput";
+    public static final String ASYNC_EXECUTOR_PARAM =
+        "org.apache.velocity.tools.asyncExecutor";
+    public static final String ASYNC_TIMEOUT_PARAM =
+        "org.apache.velocity.tools.asyncTimeout";
+    public static final String PRELOAD_PARAM =
+        "org.apache.velocity.tools.preload";
     private static final long serialVersionUID = -3329444102562079189L;
 
     private transient VelocityView view;
     private boolean bufferOutput = false;
+    private boolean asyncOutput = false;
+    private long asyncTimeout = -1;
+    private String asyncExecutorType = "inline";
+    private transient Executor asyncExecutor = null;
+    private transient ExecutorService ownedExecutor = null;
+    private boolean preload = false;
+    private boolean preloadFlush = false;
 
     /**
      * <p>Initializes servlet and VelocityView used to process requests.
@@ -131,6 +189,96 @@ public class VelocityViewServlet extends HttpServlet
             this.bufferOutput = true;
             getLog().debug("VelocityViewServlet will buffer mergeTemplate output.");
         }
+
+        String async = findInitParameter(config, ASYNC_OUTPUT_PARAM);
+        if (async != null && async.equals("true"))
+        {
+            this.asyncOutput = true;
+            String executor = findInitParameter(config, ASYNC_EXECUTOR_PARAM);
+            if (executor != null && executor.length() > 0)
+            {
+                this.asyncExecutorType = executor;
+            }
+            this.asyncExecutor = createAsyncExecutor(this.asyncExecutorType);
+            String timeout = findInitParameter(config, ASYNC_TIMEOUT_PARAM);
+            if (timeout != null && timeout.length() > 0)
+            {
+                try
+                {
+                    this.asyncTimeout = Long.parseLong(timeout);
+                }
+                catch (NumberFormatException nfe)
+                {
+                    getLog().error("invalid {} value: {}", ASYNC_TIMEOUT_PARAM, timeout);
+                }
+            }
+            getLog().debug("VelocityViewServlet will write output asynchronously (executor: {}).", this.asyncExecutorType);
+        }
+
+        String preload = findInitParameter(config, PRELOAD_PARAM);
+        if (preload != null && (preload.equals("true") || preload.equals("flush")))
+        {
+            this.preload = true;
+            this.preloadFlush = preload.equals("flush");
+            getLog().debug("VelocityViewServlet will send preload links before rendering (flush: {}).", this.preloadFlush);
+        }
+    }
+
+    /**
+     * Creates the executor on which asynchronous requests are rendered.
+     * @param type executor type: <code>inline</code>, <code>container</code>,
+     * <code>virtual</code> or a thread pool size
+     * @return the executor, or <code>null</code> to render on the container thread
+     * (for <code>inline</code>) or via {@link AsyncContext#start(Runnable)}
+     * (for <code>container</code>)
+     */
+    protected Executor createAsyncExecutor(String type)
+    {
+        if ("inline".equals(type) || "container".equals(type))
+        {
+            return null;
+        }
+        if ("virtual".equals(type))
+        {
+            try
+            {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ownedExecutor = (ExecutorService)factory.invoke(null);
+                return ownedExecutor;
+            }
+            catch (Exception e)
+            {
+                getLog().warn("virtual threads are not available, falling back to container threads");
+                asyncExecutorType = "container";
+                return null;
+            }
+        }
+        try
+        {
+            int threads = Integer.parseInt(type);
+            if (threads > 0)
+            {
+                ownedExecutor = Executors.newFixedThreadPool(threads);
+                return ownedExecutor;
+            }
+        }
+        catch (NumberFormatException nfe) {}
+        getLog().error("invalid {} value: {}, using inline", ASYNC_EXECUTOR_PARAM, type);
+        asyncExecutorType = "inline";
+        return null;
+    }
+
+    /**
+     * Shuts down the asynchronous rendering thread pool, if any.
+     */
+    public void destroy()
+    {
+        if (ownedExecutor != null)
+        {
+            ownedExecutor.shutdown();
+            ownedExecutor = null;
+        }
+        super.destroy();
     }
 
 
@@ -218,6 +366,11 @@ public class VelocityViewServlet extends HttpServlet
     protected void doRequest(HttpServletRequest request, HttpServletResponse response)
         throws IOException
     {
+        if (asyncOutput && !(response instanceof AsyncOutput) && request.isAsyncSupported())
+        {
+            doAsyncRequest(request, response);
+            return;
+        }
         Context context = null;
         try
         {
@@ -232,6 +385,12 @@ public class VelocityViewServlet extends HttpServlet
 
             setContentType(request, response);
 
+            // send known preload links before rendering
+            if (preload)
+            {
+                preload(request, response);
+            }
+
             // get the template
             Template template = handleRequest(request, response, context);
 
@@ -256,6 +415,82 @@ public class VelocityViewServlet extends HttpServlet
         }
     }
 
+    /**
+     * <p>Handles a request asynchronously: starts an {@link AsyncContext}, and
+     * runs {@link #doRequest} against a response wrapper buffering the output,
+     * either on the container thread or on the configured executor. The buffered
+     * output is then written to the client using non-blocking I/O.</p>
+     *
+     * @param request  HttpServletRequest object containing client request
+     * @param response HttpServletResponse object for the response
+     */
+    protected void doAsyncRequest(final HttpServletRequest request, HttpServletResponse response)
+    {
+        AsyncContext async = request.startAsync(request, response);
+        if (asyncTimeout >= 0)
+        {
+            async.setTimeout(asyncTimeout);
+        }
+        final AsyncOutput output = new AsyncOutput(async, response, getLog());
+        Runnable render = new Runnable()
+        {
+            public void run()
+            {
+                output.rendering();
+                try
+                {
+                    doRequest(request, output);
+                }
+                catch (Throwable t)
+                {
+                    // error() has already been called, and its output will be sent
+                    getLog().debug("asynchronous rendering failed", t);
+                }
+                finally
+                {
+                    output.rendered();
+                }
+            }
+        };
+        if (asyncExecutor != null)
+        {
+            try
+            {
+                asyncExecutor.execute(render);
+            }
+            catch (RejectedExecutionException ree)
+            {
+                render.run();
+            }
+        }
+        else if ("container".equals(asyncExecutorType))
+        {
+            async.start(render);
+        }
+        else
+        {
+            render.run();
+        }
+    }
+
+    /**
+     * <p>Adds the preload links remembered by {@link UiDependencyTool} for the
+     * requested path as <code>Link</code> headers, and flushes the response
+     * headers if configured to do so.</p>
+     *
+     * @param request  HttpServletRequest object containing client request
+     * @param response HttpServletResponse object for the response
+     * @throws IOException if flushing fails
+     */
+    protected void preload(HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        List<String> links = UiDependencyTool.getPreloadLinks(getServletContext(), ServletUtils.getPath(request));
+        if (UiDependencyTool.addPreloadHeaders(request, response, links) && preloadFlush)
+        {
+            response.flushBuffer();
+        }
+    }
+
     /**
      *  <p>
      *    Request and response initialization. Default version does
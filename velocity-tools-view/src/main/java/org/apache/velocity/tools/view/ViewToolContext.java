@@ -19,6 +19,7 @@ package org.apache.velocity.tools.view;
  * under the License.
  */
 
+import java.util.ArrayList;
 import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -75,6 +76,7 @@ public class ViewToolContext extends ToolContext implements ViewContext
     private final ServletContext application;
     private final VelocityEngine velocity;
     private String toolboxKey = DEFAULT_TOOLBOX_KEY;
+    private List<Runnable> commitCallbacks = null;
 
     public ViewToolContext(VelocityEngine velocity,
                            HttpServletRequest request,
@@ -97,6 +99,46 @@ public class ViewToolContext extends ToolContext implements ViewContext
         this.toolboxKey = key;
     }
 
+    /**
+     * Registers a callback to be run before the rendered output reaches the
+     * response, while headers can still be set, typically by tools which
+     * defer setting some headers.
+     * @param callback callback
+     * @see #beforeCommit()
+     * @since VelocityTools 3.1
+     */
+    public synchronized void addBeforeCommit(Runnable callback)
+    {
+        if (commitCallbacks == null)
+        {
+            commitCallbacks = new ArrayList<Runnable>();
+        }
+        commitCallbacks.add(callback);
+    }
+
+    /**
+     * Runs and forgets the registered before-commit callbacks. The {@link VelocityView}
+     * calls it each time the template writer writes to the response, and once the
+     * merge is over; other callers should call it before writing the output.
+     * @since VelocityTools 3.1
+     */
+    public void beforeCommit()
+    {
+        List<Runnable> pending;
+        synchronized (this)
+        {
+            pending = commitCallbacks;
+            commitCallbacks = null;
+        }
+        if (pending != null)
+        {
+            for (Runnable callback : pending)
+            {
+                callback.run();
+            }
+        }
+    }
+
     protected void putToolProperties()
     {
         putToolProperty(REQUEST, getRequest());
@@ -150,7 +192,7 @@ public class ViewToolContext extends ToolContext implements ViewContext
         Toolbox appTools = (Toolbox)getServletContext().getAttribute(toolboxKey);
         if (appTools != null)
         {
-            addToolbox(appTools);
+            addSharedToolbox(appTools);
         }
     }
 
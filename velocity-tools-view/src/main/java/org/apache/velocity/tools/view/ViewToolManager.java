@@ -31,6 +31,7 @@ import org.apache.velocity.tools.Toolbox;
 import org.apache.velocity.tools.ToolboxFactory;
 import org.apache.velocity.tools.ToolContext;
 import org.apache.velocity.tools.ToolManager;
+import org.apache.velocity.tools.config.ConfigurationSnapshot;
 import org.apache.velocity.tools.config.FactoryConfiguration;
 import org.apache.velocity.tools.view.ServletUtils;
 import org.apache.velocity.tools.view.ViewContext;
@@ -57,7 +58,7 @@ public class ViewToolManager extends ToolManager
     protected ServletContext servletContext;
     private boolean createSession = true;
     private boolean publishToolboxes = true;
-    private boolean appToolsPublished = false;
+    private volatile boolean appToolsPublished = false;
     private String toolboxKey = DEFAULT_TOOLBOX_KEY;
 
     /**
@@ -232,6 +233,16 @@ public class ViewToolManager extends ToolManager
         updateGlobalProperties();
     }
 
+    @Override
+    public void configure(ConfigurationSnapshot snapshot)
+    {
+        super.configure(snapshot);
+
+        // reset things as best we can
+        unpublishApplicationTools();
+        updateGlobalProperties();
+    }
+
     @Override
     protected FactoryConfiguration findConfig(String path)
     {
@@ -337,9 +348,11 @@ public class ViewToolManager extends ToolManager
         if (hasSessionTools())
         {
             HttpSession session = request.getSession(this.createSession);
-            if (session != null)
+            // the toolbox is published once per session, so only lock
+            // when it is not there yet (session attributes are thread-safe)
+            if (session != null && session.getAttribute(this.toolboxKey) == null)
             {
-                // allow only one thread per session
+                // allow only one thread per session to create it
                 synchronized(ServletUtils.getMutex(session, "session.mutex", this))
                 {
                     if (session.getAttribute(this.toolboxKey) == null)
@@ -24,7 +24,9 @@ import java.lang.reflect.InvocationHandler;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.tools.view.CookieTool;
+import org.apache.velocity.tools.view.ViewToolContext;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -118,6 +120,10 @@ public class CookieToolTests
         assertEquals("[b, bar]", all.toString());
         assertEquals("a", all.get(0).getName());
         assertEquals("foo", all.get(1).getName());
+
+        // the list is mutable, as it used to be
+        all.remove(0);
+        assertEquals(1, cookies.getAll().size());
     }
 
     public @Test void testToString()
@@ -175,4 +181,67 @@ public class CookieToolTests
         cookies = newCookieTool(requestProxy, responseProxy);
         assertNull(cookies.get("a"));
     }
+
+    public @Test void testIndexedGet()
+    {
+        Map jar = new LinkedHashMap();
+        jar.put("a", "b");
+        jar.put("foo", "bar");
+        CookieTool cookies = newCookieTool(jar);
+        Cookie foo = cookies.get("foo");
+        assertEquals("bar", foo.getValue());
+        assertSame(foo, cookies.get("foo"));
+        assertNull(cookies.get("nope"));
+        assertNull(cookies.get(null));
+        assertSame(foo, cookies.getAll().get(1));
+        assertTrue(cookies.getAll().get(0) instanceof CookieTool.SugarCookie);
+    }
+
+    public @Test void testBatchedAdd()
+    {
+        Map jar = new LinkedHashMap();
+        RequestAdaptor requestProxy = new RequestAdaptor(jar);
+        ResponseAdaptor responseProxy = new ResponseAdaptor(jar);
+        CookieTool cookies = newCookieTool(requestProxy, responseProxy);
+        cookies.setBatch(true);
+        assertEquals("", cookies.add("a", "b"));
+        assertEquals("", cookies.add("a", "c", 10));
+        assertEquals("", cookies.add("d", "e"));
+        assertTrue(jar.isEmpty());
+
+        assertEquals("", cookies.flush());
+        assertEquals(2, jar.size());
+        cookies = newCookieTool(requestProxy, responseProxy);
+        assertEquals("c", cookies.get("a").getValue());
+        assertEquals(10, cookies.get("a").getMaxAge());
+        assertEquals("e", cookies.get("d").getValue());
+    }
+
+    public @Test void testBatchedAddBeforeCommit()
+    {
+        Map jar = new LinkedHashMap();
+        RequestAdaptor requestProxy = new RequestAdaptor(jar);
+        ResponseAdaptor responseProxy = new ResponseAdaptor(jar);
+        CookieTool cookies = newCookieTool(requestProxy, responseProxy);
+        VelocityEngine engine = new VelocityEngine();
+        engine.init();
+        ViewToolContext context = new ViewToolContext(engine, null, null, null)
+        {
+            protected void putToolProperties()
+            {
+                // no request needed
+            }
+        };
+        cookies.setVelocityContext(context);
+        cookies.setBatch(true);
+        assertEquals("", cookies.add("a", "b"));
+        assertTrue(jar.isEmpty());
+
+        // pending cookies are sent before the output reaches the response
+        context.beforeCommit();
+        assertEquals("b", newCookieTool(requestProxy, responseProxy).get("a").getValue());
+        assertEquals("", cookies.add("a", "c"));
+        context.beforeCommit();
+        assertEquals("c", newCookieTool(requestProxy, responseProxy).get("a").getValue());
+    }
 }
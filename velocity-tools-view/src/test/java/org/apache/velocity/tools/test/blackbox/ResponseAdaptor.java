@@ -98,6 +98,10 @@ public class ResponseAdaptor implements InvocationHandler
         {
             return "UTF-8";
         }
+        else if ("isCommitted".equals(methodName))
+        {
+            return false;
+        }
         else if ("toString".equals(methodName))
         {
             return toString();
@@ -0,0 +1,192 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Tests for asynchronous output</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id$
+ */
+public class AsyncOutputTests
+{
+    /**
+     * Client stream accepting a limited number of writes at a time.
+     */
+    private static class SlowStream extends ServletOutputStream
+    {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        WriteListener listener = null;
+        int credit = 0;
+
+        @Override
+        public void write(int b)
+        {
+            received.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            --credit;
+            received.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady()
+        {
+            return credit > 0;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener)
+        {
+            listener = writeListener;
+        }
+    }
+
+    public @Test void testNonBlockingOutput() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 3 * AsyncOutput.CHUNK_SIZE)
+        {
+            content.append("héhé ");
+        }
+        byte[] expected = content.toString().getBytes("UTF-8");
+
+        SlowStream stream = new SlowStream();
+        AsyncContext async = createNiceMock(AsyncContext.class);
+        HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        expect(response.getCharacterEncoding()).andReturn("UTF-8").anyTimes();
+        expect(response.getOutputStream()).andReturn(stream);
+        response.setContentLength(expected.length);
+        expectLastCall();
+        async.complete();
+        expectLastCall().once();
+        replay(async, response);
+
+        AsyncOutput output = new AsyncOutput(async, response, LoggerFactory.getLogger(AsyncOutputTests.class));
+        PrintWriter writer = output.getWriter();
+        writer.write(content.toString());
+        output.rendered();
+        assertNotNull(stream.listener);
+        assertEquals(0, stream.received.size());
+
+        // the client reads one chunk at a time
+        int calls = 0;
+        while (stream.received.size() < expected.length)
+        {
+            stream.credit = 1;
+            stream.listener.onWritePossible();
+            ++calls;
+        }
+        assertEquals((expected.length + AsyncOutput.CHUNK_SIZE - 1) / AsyncOutput.CHUNK_SIZE, calls);
+        stream.credit = 1;
+        stream.listener.onWritePossible();
+        assertEquals(content.toString(), new String(stream.received.toByteArray(), "UTF-8"));
+        verify(async, response);
+
+        int pooled = AsyncOutput.getPooledBuffers();
+        output.onComplete(null);
+        assertEquals(pooled + 1, AsyncOutput.getPooledBuffers());
+    }
+
+    public @Test void testBypassedOutput() throws Exception
+    {
+        AsyncContext async = createNiceMock(AsyncContext.class);
+        HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        response.sendError(HttpServletResponse.SC_NOT_FOUND, "/missing.vm");
+        expectLastCall();
+        async.complete();
+        expectLastCall().once();
+        replay(async, response);
+
+        AsyncOutput output = new AsyncOutput(async, response, LoggerFactory.getLogger(AsyncOutputTests.class));
+        output.sendError(HttpServletResponse.SC_NOT_FOUND, "/missing.vm");
+        output.rendered();
+        verify(async, response);
+    }
+
+    public @Test void testTimeout() throws Exception
+    {
+        AsyncContext async = createNiceMock(AsyncContext.class);
+        HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        expect(response.getCharacterEncoding()).andReturn("UTF-8").anyTimes();
+        async.complete();
+        expectLastCall().once();
+        replay(async, response);
+
+        AsyncOutput output = new AsyncOutput(async, response, LoggerFactory.getLogger(AsyncOutputTests.class));
+        PrintWriter writer = output.getWriter();
+        output.rendering();
+        writer.write("before");
+        output.onTimeout(null);
+        // the rendering thread is interrupted, and the request is not completed yet
+        assertTrue(Thread.currentThread().isInterrupted());
+        try
+        {
+            writer.write("after");
+            fail("output should fail once cancelled");
+        }
+        catch (IllegalStateException ise)
+        {
+            /* expected */
+        }
+        output.rendered();
+        assertFalse(Thread.currentThread().isInterrupted());
+        verify(async, response);
+    }
+
+    public @Test void testOversizedBuffer() throws Exception
+    {
+        AsyncOutput.Buffer buffer = AsyncOutput.acquire();
+        int pooled = AsyncOutput.getPooledBuffers();
+        buffer.write(new byte[AsyncOutput.MAX_POOLED_CAPACITY + 1], 0, AsyncOutput.MAX_POOLED_CAPACITY + 1);
+        AsyncOutput.recycle(buffer);
+        assertEquals(pooled, AsyncOutput.getPooledBuffers());
+
+        buffer = AsyncOutput.acquire();
+        pooled = AsyncOutput.getPooledBuffers();
+        AsyncOutput.recycle(buffer);
+        assertEquals(pooled + 1, AsyncOutput.getPooledBuffers());
+    }
+}
@@ -0,0 +1,97 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
+import org.apache.velocity.runtime.resource.util.StringResourceRepository;
+import org.junit.Test;
+
+/**
+ * <p>Tests for IncludeTool</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id$
+ */
+public class IncludeToolTests
+{
+    private static VelocityEngine createEngine(String interval)
+    {
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty("resource.loader", "string");
+        engine.setProperty("string.resource.loader.class", StringResourceLoader.class.getName());
+        engine.setProperty("string.resource.loader.repository.static", "false");
+        if (interval != null)
+        {
+            engine.setProperty("string.resource.loader.modificationCheckInterval", interval);
+        }
+        engine.init();
+        return engine;
+    }
+
+    private static StringResourceRepository getRepository(VelocityEngine engine)
+    {
+        return (StringResourceRepository)engine.getApplicationAttribute(StringResourceLoader.REPOSITORY_NAME_DEFAULT);
+    }
+
+    public @Test void testCachedLookups() throws Exception
+    {
+        VelocityEngine engine = createEngine("60");
+        StringResourceRepository repository = getRepository(engine);
+        repository.putStringResource("header.vm.fr", "entête");
+        IncludeTool include = new IncludeTool();
+        include.engine = engine;
+        include.defaultLanguage = "en";
+        assertEquals(60000L, include.getCacheTTL());
+
+        assertEquals("header.vm.fr", include.find("header.vm", "fr"));
+        assertEquals("header.vm", include.find("header.vm", "de"));
+        assertFalse(include.exists("footer.vm"));
+
+        // lookups are cached, negative ones included, and shared between instances
+        repository.removeStringResource("header.vm.fr");
+        repository.putStringResource("footer.vm", "pied");
+        IncludeTool other = new IncludeTool();
+        other.engine = engine;
+        other.defaultLanguage = "en";
+        assertEquals("header.vm.fr", other.find("header.vm", "fr"));
+        assertFalse(other.exists("footer.vm"));
+    }
+
+    public @Test void testUncachedLookups() throws Exception
+    {
+        VelocityEngine engine = createEngine(null);
+        StringResourceRepository repository = getRepository(engine);
+        IncludeTool include = new IncludeTool();
+        include.engine = engine;
+        include.defaultLanguage = "en";
+        include.cacheTTL = 0;
+        assertFalse(include.exists("footer.vm"));
+        repository.putStringResource("footer.vm", "pied");
+        assertTrue(include.exists("footer.vm"));
+        assertEquals("footer.vm", include.find("footer.vm", "fr"));
+        repository.putStringResource("footer.vm.en", "footer");
+        assertEquals("footer.vm.en", include.find("footer.vm", "fr"));
+    }
+}
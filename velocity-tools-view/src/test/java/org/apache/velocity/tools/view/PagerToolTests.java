@@ -0,0 +1,202 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Test;
+
+/**
+ * <p>Tests for PagerTool</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id$
+ */
+public class PagerToolTests
+{
+    private static class CountingSource extends PageSource.QuerySource
+    {
+        int counts = 0;
+        int fetches = 0;
+
+        protected int count()
+        {
+            ++counts;
+            return 100000;
+        }
+
+        protected List fetch(int offset, int limit)
+        {
+            ++fetches;
+            List items = new ArrayList(limit);
+            for (int i = offset; i < offset + limit; ++i)
+            {
+                items.add(Integer.valueOf(i));
+            }
+            return items;
+        }
+    }
+
+    private static class SerializableSource extends CountingSource implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static HttpSession createSession()
+    {
+        final Map<String,Object> attributes = new HashMap<String,Object>();
+        return (HttpSession)Proxy.newProxyInstance(PagerToolTests.class.getClassLoader(),
+            new Class[] { HttpSession.class },
+            new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if ("getAttribute".equals(method.getName()))
+                    {
+                        return attributes.get((String)args[0]);
+                    }
+                    else if ("setAttribute".equals(method.getName()))
+                    {
+                        attributes.put((String)args[0], args[1]);
+                    }
+                    return null;
+                }
+            });
+    }
+
+    private static PagerTool createPager(HttpSession session)
+    {
+        PagerTool pager = new PagerTool();
+        pager.session = session;
+        return pager;
+    }
+
+    public @Test void testListItems() throws Exception
+    {
+        PagerTool pager = new PagerTool();
+        pager.setItems(Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h"));
+        pager.setItemsPerPage(5);
+        assertEquals(8, pager.getTotal());
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), pager.getPage());
+        assertEquals(Integer.valueOf(5), pager.getNextIndex());
+        assertEquals("1 - 5 of 8", pager.getPageDescription());
+        assertNull(pager.getSource());
+    }
+
+    public @Test void testQuerySource() throws Exception
+    {
+        PagerTool pager = new PagerTool();
+        CountingSource source = new CountingSource();
+        pager.setSource(source);
+        pager.setIndex(500);
+        pager.setItemsPerPage(10);
+        assertTrue(pager.hasItems());
+        assertEquals(100000, pager.getTotal());
+        assertEquals(10000, pager.getPagesAvailable());
+        assertEquals(Integer.valueOf(490), pager.getPrevIndex());
+        assertEquals(Integer.valueOf(510), pager.getNextIndex());
+        assertEquals(20, pager.getSlip().size());
+        assertEquals("501 - 510 of 100000", pager.getPageDescription());
+        List page = pager.getPage();
+        assertEquals(10, page.size());
+        assertEquals(Integer.valueOf(500), page.get(0));
+        assertEquals(page, pager.getPage());
+        assertEquals(1, source.counts);
+        assertEquals(1, source.fetches);
+    }
+
+    public @Test void testIteratorSource() throws Exception
+    {
+        List list = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h");
+        PagerTool pager = new PagerTool();
+        pager.setSource(new PageSource.IteratorSource(list.iterator(), list.size()));
+        pager.setIndex(5);
+        pager.setItemsPerPage(5);
+        assertEquals(Arrays.asList("f", "g", "h"), pager.getPage());
+        assertEquals(Integer.valueOf(0), pager.getPrevIndex());
+        assertNull(pager.getNextIndex());
+        assertEquals("6 - 8 of 8", pager.getPageDescription());
+    }
+
+    public @Test void testStoredSources() throws Exception
+    {
+        HttpSession session = createSession();
+        List list = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h");
+
+        // iterator sources are not kept in session, and cannot go backwards
+        PageSource.IteratorSource iterator = new PageSource.IteratorSource(list.iterator(), list.size());
+        PagerTool pager = createPager(session);
+        pager.setSource(iterator);
+        pager.setItemsPerPage(5);
+        pager.setIndex(5);
+        assertEquals(Arrays.asList("f", "g", "h"), pager.getPage());
+        assertEquals(Arrays.asList("f", "g", "h"), iterator.getItems(5, 8));
+        try
+        {
+            pager.getItems();
+            fail("iterator source should not seek backwards");
+        }
+        catch (IllegalStateException ise)
+        {
+            /* expected */
+        }
+        assertNull(createPager(session).getSource());
+
+        // list sources are kept
+        PageSource.ListSource listSource = new PageSource.ListSource(list);
+        createPager(session).setSource(listSource);
+        assertSame(listSource, createPager(session).getSource());
+
+        // serializable query sources are kept, and count again for each request
+        SerializableSource query = new SerializableSource();
+        pager = createPager(session);
+        pager.setSource(query);
+        assertEquals(100000, pager.getTotal());
+        pager = createPager(session);
+        assertSame(query, pager.getSource());
+        assertEquals(100000, pager.getTotal());
+        assertEquals(2, query.counts);
+
+        // other query sources replace the stored one but are not kept
+        createPager(session).setSource(new CountingSource());
+        assertNull(createPager(session).getSource());
+
+        // sources replace stored items
+        createPager(session).setItems(list);
+        assertEquals(list, createPager(session).getItems());
+        createPager(session).setSource(new CountingSource());
+        assertTrue(createPager(session).getItems().isEmpty());
+    }
+}
@@ -0,0 +1,241 @@
+package org.apache.velocity.tools.view;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * <p>Tests for UiDependencyTool</p>
+ *
+ * @since VelocityTools 3.1
+ * @version $Id$
+ */
+public class UiDependencyToolTests
+{
+    /**
+     * Servlet context or request keeping its attributes, with the
+     * <code>/app</code> context path and the <code>/page.vm</code> servlet path.
+     */
+    private static <T> T createProxy(Class<T> clazz)
+    {
+        final Map<String,Object> attributes = new HashMap<String,Object>();
+        return clazz.cast(Proxy.newProxyInstance(UiDependencyToolTests.class.getClassLoader(),
+            new Class[] { clazz },
+            new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    String name = method.getName();
+                    if ("getAttribute".equals(name))
+                    {
+                        return attributes.get((String)args[0]);
+                    }
+                    else if ("setAttribute".equals(name))
+                    {
+                        attributes.put((String)args[0], args[1]);
+                    }
+                    else if ("getResourceAsStream".equals(name))
+                    {
+                        return UiDependencyToolTests.class.getResourceAsStream("/webapp_mocking" + args[0]);
+                    }
+                    else if ("getContextPath".equals(name))
+                    {
+                        return "/app";
+                    }
+                    else if ("getServletPath".equals(name))
+                    {
+                        return "/page.vm";
+                    }
+                    return null;
+                }
+            }));
+    }
+
+    private static ServletContext createServletContext()
+    {
+        return createProxy(ServletContext.class);
+    }
+
+    private static UiDependencyTool createTool(ServletContext servletContext, boolean fingerprint)
+    {
+        return createTool(servletContext, fingerprint, createProxy(HttpServletRequest.class), null);
+    }
+
+    private static UiDependencyTool createTool(ServletContext servletContext, boolean fingerprint,
+                                               HttpServletRequest request, HttpServletResponse response)
+    {
+        Map<String,Object> params = new HashMap<String,Object>();
+        params.put(ViewContext.SERVLET_CONTEXT_KEY, servletContext);
+        params.put(ViewContext.REQUEST, request);
+        params.put(UiDependencyTool.SOURCE_FILE_KEY, "ui-test.xml");
+        params.put(UiDependencyTool.FINGERPRINT_KEY, String.valueOf(fingerprint));
+        if (response != null)
+        {
+            params.put(ViewContext.RESPONSE, response);
+            params.put(UiDependencyTool.PRELOAD_KEY, "true");
+        }
+        UiDependencyTool tool = new UiDependencyTool();
+        tool.configure(params);
+        return tool;
+    }
+
+    public @Test void testRenderedCache() throws Exception
+    {
+        ServletContext servletContext = createServletContext();
+        UiDependencyTool tool = createTool(servletContext, false);
+        String expected = "<link rel=\"stylesheet\" type=\"text/css\" href=\"/app/css/globals.css\"/>\n" +
+            "<script type=\"text/javascript\" src=\"/app/js/jquery.js\"></script>\n" +
+            "<script type=\"text/javascript\" src=\"/app/js/profile.js\"></script>";
+        String output = tool.on("profile").printAll("\n");
+        assertEquals(expected, output);
+
+        // another request gets the very same string
+        UiDependencyTool other = createTool(servletContext, false);
+        assertSame(output, other.on("profile").printAll("\n"));
+        assertEquals("<script type=\"text/javascript\" src=\"/app/js/jquery.js\"></script>\n" +
+            "<script type=\"text/javascript\" src=\"/app/js/profile.js\"></script>\n", other.print("script", "\n"));
+
+        // customized instances don't use nor alter the cache
+        UiDependencyTool custom = createTool(servletContext, false);
+        custom.setFormat("style", "[{file}]");
+        assertTrue(custom.on("profile").printAll("\n").startsWith("[globals.css]"));
+        assertSame(output, createTool(servletContext, false).on("profile").printAll("\n"));
+
+        UiDependencyTool added = createTool(servletContext, false);
+        added.on("profile").on("script", "extra.js");
+        assertTrue(added.printAll("\n").endsWith("extra.js\"></script>"));
+        assertNull(added.getFingerprint("script", "extra.js"));
+    }
+
+    public @Test void testFingerprints() throws Exception
+    {
+        ServletContext servletContext = createServletContext();
+        UiDependencyTool tool = createTool(servletContext, true);
+        String hash = tool.getFingerprint("style", "globals.css");
+        assertNotNull(hash);
+        assertEquals(16, hash.length());
+        assertTrue(tool.on("globals").print("style").contains("href=\"/app/css/globals.css?v=" + hash + "\""));
+
+        // missing files are printed as is
+        tool.on("script", "missing.js");
+        assertNull(tool.getFingerprint("script", "missing.js"));
+        assertTrue(tool.print("script").contains("src=\"/app/js/missing.js\""));
+
+        // the {hash} placeholder
+        UiDependencyTool custom = createTool(servletContext, true);
+        custom.setFormat("script", "{file}#{hash}");
+        assertEquals("jquery.js?v=" + custom.getFingerprint("script", "jquery.js") + "#" + custom.getFingerprint("script", "jquery.js"),
+            custom.on("jquery").print("script", ""));
+
+        // fingerprinted and plain outputs are cached separately
+        assertTrue(createTool(servletContext, false).on("globals").print("style").contains("href=\"/app/css/globals.css\""));
+    }
+
+    public @Test void testPreload() throws Exception
+    {
+        ServletContext servletContext = createServletContext();
+        String style = "</app/css/globals.css>; rel=preload; as=style";
+        String jquery = "</app/js/jquery.js>; rel=preload; as=script";
+        String profile = "</app/js/profile.js>; rel=preload; as=script";
+
+        HttpServletRequest request = createProxy(HttpServletRequest.class);
+        HttpServletResponse response = createMock(HttpServletResponse.class);
+        expect(response.isCommitted()).andReturn(false).anyTimes();
+        response.addHeader("Link", style);
+        response.addHeader("Link", jquery);
+        response.addHeader("Link", profile);
+        replay(response);
+        UiDependencyTool tool = createTool(servletContext, false, request, response);
+        tool.on("profile").on("globals");
+        verify(response);
+        assertEquals(Arrays.asList(jquery, profile, style), UiDependencyTool.getPreloadLinks(servletContext, "/page.vm"));
+        assertNull(UiDependencyTool.getPreloadLinks(servletContext, "/other.vm"));
+
+        // links sent before rendering are not sent again
+        request = createProxy(HttpServletRequest.class);
+        response = createMock(HttpServletResponse.class);
+        expect(response.isCommitted()).andReturn(false).anyTimes();
+        response.addHeader("Link", style);
+        response.addHeader("Link", jquery);
+        response.addHeader("Link", profile);
+        response.addHeader("Link", "</app/js/extra.js>; rel=preload; as=script");
+        replay(response);
+        assertTrue(UiDependencyTool.addPreloadHeaders(request, response, UiDependencyTool.getPreloadLinks(servletContext, "/page.vm")));
+        tool = createTool(servletContext, false, request, response);
+        tool.on("profile").on("script", "extra.js");
+        verify(response);
+        assertEquals(Arrays.asList(jquery, profile, style, "</app/js/extra.js>; rel=preload; as=script"),
+            UiDependencyTool.getPreloadLinks(servletContext, "/page.vm"));
+
+        // nothing is sent once committed
+        response = createMock(HttpServletResponse.class);
+        expect(response.isCommitted()).andReturn(true).anyTimes();
+        replay(response);
+        tool = createTool(servletContext, false, createProxy(HttpServletRequest.class), response);
+        tool.on("profile");
+        verify(response);
+
+        // the path remembers the links of the last request only
+        assertEquals(Arrays.asList(jquery, profile, style), UiDependencyTool.getPreloadLinks(servletContext, "/page.vm"));
+    }
+
+    public @Test void testPreloadUrl() throws Exception
+    {
+        HttpServletResponse response = createMock(HttpServletResponse.class);
+        expect(response.isCommitted()).andReturn(false).anyTimes();
+        response.addHeader("Link", "<https://cdn.example.com/js/a%20b%2Cc%3B%3E.js>; rel=preload; as=script");
+        response.addHeader("Link", "</app/css/caf%C3%A9.css>; rel=preload; as=style");
+        replay(response);
+        UiDependencyTool tool = createTool(createServletContext(), false, createProxy(HttpServletRequest.class), response);
+        tool.setPreloadUrl("script", "https://cdn.example.com/js/{file}");
+        tool.on("script", "a b,c;>.js");
+        tool.on("style", "caf\u00e9.css");
+        verify(response);
+
+        // the defaults are left untouched
+        response = createMock(HttpServletResponse.class);
+        expect(response.isCommitted()).andReturn(false).anyTimes();
+        response.addHeader("Link", "</app/js/x.js>; rel=preload; as=script");
+        replay(response);
+        tool = createTool(createServletContext(), false, createProxy(HttpServletRequest.class), response);
+        tool.on("script", "x.js");
+        verify(response);
+    }
+}
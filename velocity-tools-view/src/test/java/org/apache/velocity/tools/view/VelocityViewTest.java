@@ -22,10 +22,18 @@ package org.apache.velocity.tools.view;
 import static org.junit.Assert.*;
 import static org.easymock.EasyMock.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -104,6 +112,7 @@ public class VelocityViewTest
 
         expect(config.getServletContext()).andAnswer(eval(servletContext));
         expect(config.findInitParameter(VelocityView.USER_OVERWRITE_KEY)).andAnswer(eval((String)null));
+        expect(config.findInitParameter(VelocityView.SNAPSHOT_KEY)).andAnswer(eval((String)null));
         expect(config.findInitParameter(VelocityView.LOAD_DEFAULTS_KEY)).andAnswer(eval("false"));
         expect(servletContext.getInitParameter(VelocityView.PROPERTIES_KEY)).andAnswer(eval((String)null));
         expect(servletContext.getResourceAsStream(VelocityView.USER_PROPERTIES_PATH))
@@ -111,6 +120,7 @@ public class VelocityViewTest
         String root = new File(getClass().getResource("/").getFile()).getAbsolutePath();
         expect(config.getInitParameter(VelocityView.PROPERTIES_KEY)).andAnswer(eval((String)null));
         expect(config.findInitParameter(VelocityView.CLEAN_CONFIGURATION_KEY)).andAnswer(eval((String)null));
+        expect(config.findInitParameter(VelocityView.WARMUP_KEY)).andAnswer(eval((String)null));
         expect(servletContext.getInitParameter(VelocityView.TOOLS_KEY)).andAnswer(eval((String)null));
         expect(config.getInitParameter(VelocityView.TOOLS_KEY)).andAnswer(eval((String)null));
         expect(servletContext.getAttribute(ServletUtils.CONFIGURATION_KEY)).andAnswer(eval((String)null));
@@ -132,4 +142,30 @@ public class VelocityViewTest
         verify(config, servletContext, request, response, context);
     }
 
+    @Test
+    public void testWarmUp() throws Exception
+    {
+        JeeConfig config = createNiceMock(JeeConfig.class);
+        ServletContext servletContext = createNiceMock(ServletContext.class);
+        expect(config.getServletContext()).andReturn(servletContext).anyTimes();
+        expect(config.findInitParameter(VelocityView.LOAD_DEFAULTS_KEY)).andReturn("false").anyTimes();
+        expect(config.findInitParameter(VelocityView.WARMUP_KEY)).andReturn("/, /WEB-INF/warmup.txt").anyTimes();
+        expect(servletContext.getResourceAsStream(VelocityView.USER_PROPERTIES_PATH))
+            .andAnswer(eval(getClass().getResourceAsStream("/WEB-INF/velocity.properties")));
+        expect(servletContext.getResourceAsStream("/WEB-INF/warmup.txt"))
+            .andAnswer(eval((InputStream)new ByteArrayInputStream("# manifest\n\n/missing.vm\n".getBytes("UTF-8")))).anyTimes();
+        expect(servletContext.getResourcePaths("/"))
+            .andReturn(new HashSet<String>(Arrays.asList("/charset-test.vm", "/style.css", "/WEB-INF/"))).atLeastOnce();
+        expect(servletContext.getResourcePaths("/WEB-INF/"))
+            .andReturn(new HashSet<String>(Arrays.asList("/WEB-INF/VM_global_library.vm", "/WEB-INF/velocity.properties"))).atLeastOnce();
+        replay(config, servletContext);
+
+        VelocityView view = new VelocityView(config);
+        verify(servletContext);
+        Set<String> templates = view.findWarmUpTemplates("/", "vm");
+        assertEquals(new TreeSet<String>(Arrays.asList("/WEB-INF/VM_global_library.vm", "/charset-test.vm")), templates);
+        Map<String,Exception> errors = view.warmUpTemplates(Arrays.asList("/charset-test.vm", "/missing.vm"));
+        assertEquals(Collections.singleton("/missing.vm"), errors.keySet());
+        assertTrue(errors.get("/missing.vm") instanceof ResourceNotFoundException);
+    }
 }